@@ -0,0 +1,130 @@
+package com.blancocl.licensing.benchmark;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Compares two JMH JSON result files (-rf json) and exits with status 1 when any benchmark got
+// slower, or allocates more per operation, by more than the threshold percentage.
+//
+// java -cp benchmarks.jar com.blancocl.licensing.benchmark.BenchmarkComparison baseline.json current.json [thresholdPercent]
+public final class BenchmarkComparison {
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private BenchmarkComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, Result> baseline = read(Path.of(args[0]));
+        Map<String, Result> current = read(Path.of(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            Result after = entry.getValue();
+            if (before == null) {
+                System.out.printf(Locale.ROOT, "NEW        %s %.3f %s%n", entry.getKey(), after.score(), after.unit());
+                continue;
+            }
+
+            // Throughput modes regress when the score drops; time modes when it grows.
+            double change = percentChange(before.score(), after.score());
+            double slowdown = after.higherIsBetter() ? -change : change;
+            double allocationChange = before.allocation() < 0 || after.allocation() < 0
+                    ? 0.0
+                    : percentChange(before.allocation(), after.allocation());
+            boolean regressed = slowdown > threshold || allocationChange > threshold;
+            if (regressed) {
+                regressions++;
+            }
+
+            System.out.printf(Locale.ROOT, "%-10s %s %.3f -> %.3f %s (%+.1f%%)%s%n",
+                    regressed ? "REGRESSED" : "ok",
+                    entry.getKey(),
+                    before.score(),
+                    after.score(),
+                    after.unit(),
+                    change,
+                    after.allocation() < 0 ? "" : String.format(Locale.ROOT, ", alloc %.0f -> %.0f B/op (%+.1f%%)",
+                            before.allocation(), after.allocation(), allocationChange));
+        }
+        for (String missing : baseline.keySet()) {
+            if (!current.containsKey(missing)) {
+                System.out.println("MISSING    " + missing);
+            }
+        }
+
+        System.out.println(regressions + " regression(s) above " + threshold + "%.");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    private static Map<String, Result> read(Path file) throws IOException {
+        Map<String, Result> results = new TreeMap<>();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                JsonObject run = element.getAsJsonObject();
+                JsonObject primary = run.getAsJsonObject("primaryMetric");
+                String mode = run.get("mode").getAsString();
+                results.put(identity(run), new Result(
+                        primary.get("score").getAsDouble(),
+                        primary.get("scoreUnit").getAsString(),
+                        mode.equals("thrpt"),
+                        allocation(run)
+                ));
+            }
+        }
+        return results;
+    }
+
+    private static String identity(JsonObject run) {
+        StringBuilder identity = new StringBuilder(run.get("benchmark").getAsString())
+                .append(" [").append(run.get("mode").getAsString()).append(", threads=")
+                .append(run.get("threads").getAsInt());
+        JsonObject params = run.getAsJsonObject("params");
+        if (params != null) {
+            Map<String, String> sorted = new LinkedHashMap<>();
+            params.keySet().stream().sorted().forEach(name -> sorted.put(name, params.get(name).getAsString()));
+            sorted.forEach((name, value) -> identity.append(", ").append(name).append('=').append(value));
+        }
+        return identity.append(']').toString();
+    }
+
+    private static double allocation(JsonObject run) {
+        JsonObject secondary = run.getAsJsonObject("secondaryMetrics");
+        if (secondary == null) {
+            return -1.0;
+        }
+        for (String name : secondary.keySet()) {
+            if (name.endsWith(ALLOCATION_METRIC)) {
+                return secondary.getAsJsonObject(name).get("score").getAsDouble();
+            }
+        }
+        return -1.0;
+    }
+
+    private static double percentChange(double before, double after) {
+        if (before == 0.0) {
+            return after == 0.0 ? 0.0 : 100.0;
+        }
+        return (after - before) / before * 100.0;
+    }
+
+    private record Result(double score, String unit, boolean higherIsBetter, double allocation) {
+    }
+}
@@ -0,0 +1,86 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.repository.JdbcLicenseRepository;
+import com.blancocl.licensing.repository.JdbcPoolSettings;
+import com.blancocl.licensing.repository.LicenseRepository;
+import com.blancocl.licensing.repository.MappedLicenseRepository;
+import com.blancocl.licensing.repository.SqliteWalSettings;
+import com.blancocl.licensing.repository.SqliteWriteMode;
+import com.blancocl.licensing.repository.YamlLicenseRepository;
+import com.blancocl.licensing.security.HmacLicenseSigner;
+import com.blancocl.licensing.service.StorageType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+final class BenchmarkFixtures {
+    static final String SECRET = "benchmark-signing-secret-0123456789";
+    static final String PLUGIN_ID = "myplugin";
+
+    // MySQL runs against a real server when bench.mysql.url is set and against H2 in MySQL
+    // compatibility mode otherwise, which exercises the same SQL dialect without a database.
+    private static final String MYSQL_URL = System.getProperty("bench.mysql.url", "");
+    private static final String MYSQL_USERNAME = System.getProperty("bench.mysql.username", "");
+    private static final String MYSQL_PASSWORD = System.getProperty("bench.mysql.password", "");
+    private static final SqliteWalSettings SQLITE_WAL = new SqliteWalSettings(
+            Boolean.parseBoolean(System.getProperty("bench.sqlite.wal", "true")),
+            SqliteWriteMode.fromConfig(System.getProperty("bench.sqlite.writeMode", "DURABLE")),
+            SqliteWalSettings.defaults().maxBatchSize()
+    );
+
+    private BenchmarkFixtures() {
+    }
+
+    static Logger quietLogger() {
+        Logger logger = Logger.getLogger("PaperLicensing-Benchmark");
+        logger.setLevel(Level.SEVERE);
+        return logger;
+    }
+
+    static Path createDataFolder() throws IOException {
+        return Files.createTempDirectory("paper-licensing-bench");
+    }
+
+    static void deleteDataFolder(Path folder) throws IOException {
+        if (folder == null || !Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    static LicenseRepository createRepository(StorageType type, Path dataFolder, Logger logger) {
+        File folder = dataFolder.toFile();
+        return switch (type) {
+            case YAML -> new YamlLicenseRepository(logger, folder, 4L * 1024 * 1024, Duration.ofMinutes(5));
+            case SQLITE -> new JdbcLicenseRepository(logger, "jdbc:sqlite:" + new File(folder, "licenses.db").getAbsolutePath(),
+                    "", "", JdbcPoolSettings.defaults(), SQLITE_WAL);
+            case MYSQL -> MYSQL_URL.isBlank()
+                    ? new JdbcLicenseRepository(logger, "jdbc:h2:mem:" + folder.getName() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                            "", "", JdbcPoolSettings.defaults())
+                    : new JdbcLicenseRepository(logger, MYSQL_URL, MYSQL_USERNAME, MYSQL_PASSWORD, JdbcPoolSettings.defaults());
+            case MMAP -> new MappedLicenseRepository(logger, new File(folder, "licenses.dat"), true);
+        };
+    }
+
+    static LicenseRecord[] createRecords(HmacLicenseSigner signer, int count) {
+        Instant issuedAt = Instant.now();
+        LicenseRecord[] records = new LicenseRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new LicenseRecord(signer.generate(PLUGIN_ID), PLUGIN_ID, "owner-" + i, issuedAt, null, false);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,146 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.metrics.LicenseMetrics;
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.remote.CircuitBreaker;
+import com.blancocl.licensing.remote.HttpPanelLicenseClient;
+import com.blancocl.licensing.repository.LicenseRepository;
+import com.blancocl.licensing.security.HmacLicenseSigner;
+import com.blancocl.licensing.service.ExpiryScheduler;
+import com.blancocl.licensing.service.HybridLicenseService;
+import com.blancocl.licensing.service.LicenseMode;
+import com.blancocl.licensing.service.RecordWriteBehind;
+import com.blancocl.licensing.service.StaleWhileRevalidate;
+import com.blancocl.licensing.service.StorageType;
+import com.blancocl.licensing.service.ValidationResultCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Issues and revokes from several threads at once in HYBRID mode against a panel that answers
+// after latencyMs. Under a service-wide monitor every call queues behind the slowest panel round
+// trip; with per-key locks only calls for the same key stripe wait on each other.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentionBenchmark {
+    private static final int KEY_COUNT = 1024;
+
+    @Param({"SQLITE", "YAML"})
+    public String storage;
+
+    @Param({"5"})
+    public int latencyMs;
+
+    private Path dataFolder;
+    private StubPanelServer panel;
+    private ExecutorService executor;
+    private LicenseRepository repository;
+    private HybridLicenseService service;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Logger logger = BenchmarkFixtures.quietLogger();
+        HmacLicenseSigner signer = new HmacLicenseSigner(BenchmarkFixtures.SECRET);
+        LicenseRecord[] records = BenchmarkFixtures.createRecords(signer, KEY_COUNT);
+
+        dataFolder = BenchmarkFixtures.createDataFolder();
+        repository = BenchmarkFixtures.createRepository(StorageType.fromConfig(storage), dataFolder, logger);
+        repository.upsertAll(List.of(records));
+
+        panel = new StubPanelServer(latencyMs, 0);
+        for (LicenseRecord record : records) {
+            panel.put(record);
+        }
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        LicenseMetrics metrics = new LicenseMetrics();
+        HttpPanelLicenseClient panelClient = new HttpPanelLicenseClient(
+                logger,
+                panel.baseUrl(),
+                "Authorization",
+                "Bearer benchmark",
+                "benchmark",
+                1000,
+                5000,
+                250,
+                30000,
+                "/api/licenses/validate",
+                "/api/licenses/validate-batch",
+                "/api/licenses/issue",
+                "",
+                "/api/licenses/revoke",
+                "/api/licenses/get",
+                "",
+                "",
+                executor,
+                new CircuitBreaker(logger, 5, 0.5, 20, Duration.ofSeconds(30)),
+                metrics
+        );
+        service = new HybridLicenseService(
+                repository,
+                signer,
+                LicenseMode.HYBRID,
+                panelClient,
+                executor,
+                ValidationResultCache.disabled(),
+                new RecordWriteBehind(logger, repository, 256, Duration.ofSeconds(1)),
+                StaleWhileRevalidate.disabled(),
+                ExpiryScheduler.disabled(),
+                metrics
+        );
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = records[i].key();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.close();
+        executor.shutdownNow();
+        panel.close();
+        repository.close();
+        BenchmarkFixtures.deleteDataFolder(dataFolder);
+    }
+
+    @Benchmark
+    @Group("issueAndRevoke")
+    @GroupThreads(4)
+    public LicenseRecord issue() {
+        return service.issueLicense(BenchmarkFixtures.PLUGIN_ID, "owner", 30);
+    }
+
+    @Benchmark
+    @Group("issueAndRevoke")
+    @GroupThreads(4)
+    public boolean revoke() {
+        return service.revoke(keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)]);
+    }
+}
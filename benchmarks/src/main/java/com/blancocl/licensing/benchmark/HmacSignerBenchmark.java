@@ -0,0 +1,67 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.security.HmacLicenseSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HmacSignerBenchmark {
+    private static final String SECRET = "benchmark-signing-secret-0123456789";
+    private static final String PLUGIN_ID = "myplugin";
+    private static final int KEY_COUNT = 1024;
+
+    private HmacLicenseSigner signer;
+    private LegacyHmacLicenseSigner legacySigner;
+    private String[] keys;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        signer = new HmacLicenseSigner(SECRET);
+        legacySigner = new LegacyHmacLicenseSigner(SECRET);
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = signer.generate(PLUGIN_ID);
+        }
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return signer.verify(PLUGIN_ID, nextKey());
+    }
+
+    @Benchmark
+    public boolean verifyLegacy() {
+        return legacySigner.verify(PLUGIN_ID, nextKey());
+    }
+
+    @Benchmark
+    public String generate() {
+        return signer.generate(PLUGIN_ID);
+    }
+
+    @Benchmark
+    public String generateLegacy() {
+        return legacySigner.generate(PLUGIN_ID);
+    }
+
+    private String nextKey() {
+        cursor = (cursor + 1) & (KEY_COUNT - 1);
+        return keys[cursor];
+    }
+}
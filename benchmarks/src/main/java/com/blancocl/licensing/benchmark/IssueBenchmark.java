@@ -0,0 +1,107 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.api.LicenseIssueResult;
+import com.blancocl.licensing.metrics.LicenseMetrics;
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.repository.LicenseRepository;
+import com.blancocl.licensing.security.HmacLicenseSigner;
+import com.blancocl.licensing.service.ExpiryScheduler;
+import com.blancocl.licensing.service.HybridLicenseService;
+import com.blancocl.licensing.service.LicenseMode;
+import com.blancocl.licensing.service.RecordWriteBehind;
+import com.blancocl.licensing.service.StaleWhileRevalidate;
+import com.blancocl.licensing.service.StorageType;
+import com.blancocl.licensing.service.ValidationResultCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Issuing OWNERS licenses in LOCAL mode, one issueLicense call at a time versus one
+// issueLicenses call. Scores are per license.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IssueBenchmark {
+    private static final int OWNERS = 1000;
+
+    @Param({"SQLITE", "YAML", "MMAP"})
+    public String storage;
+
+    private Path dataFolder;
+    private ExecutorService executor;
+    private LicenseRepository repository;
+    private HybridLicenseService service;
+    private List<String> owners;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Logger logger = BenchmarkFixtures.quietLogger();
+        dataFolder = BenchmarkFixtures.createDataFolder();
+        repository = BenchmarkFixtures.createRepository(StorageType.fromConfig(storage), dataFolder, logger);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        service = new HybridLicenseService(
+                repository,
+                new HmacLicenseSigner(BenchmarkFixtures.SECRET),
+                LicenseMode.LOCAL,
+                null,
+                executor,
+                ValidationResultCache.disabled(),
+                new RecordWriteBehind(logger, repository, 256, Duration.ofSeconds(1)),
+                StaleWhileRevalidate.disabled(),
+                ExpiryScheduler.disabled(),
+                new LicenseMetrics()
+        );
+        owners = new ArrayList<>(OWNERS);
+        for (int i = 0; i < OWNERS; i++) {
+            owners.add("owner-" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.close();
+        executor.shutdownNow();
+        repository.close();
+        BenchmarkFixtures.deleteDataFolder(dataFolder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OWNERS)
+    public void issueOneByOne(Blackhole blackhole) {
+        for (String owner : owners) {
+            LicenseRecord record = service.issueLicense(BenchmarkFixtures.PLUGIN_ID, owner, 30);
+            blackhole.consume(record);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OWNERS)
+    public List<LicenseIssueResult> issueBulk() {
+        return service.issueLicenses(BenchmarkFixtures.PLUGIN_ID, owners, 30);
+    }
+}
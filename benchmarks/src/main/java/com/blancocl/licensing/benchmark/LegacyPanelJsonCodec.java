@@ -0,0 +1,85 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.api.LicenseValidationResult;
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.remote.RemoteValidationResponse;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Locale;
+
+// Tree-based request/response handling the panel client used before PanelJsonCodec, kept for
+// comparison. Request bodies went through JsonObject.toString() and responses were buffered as a
+// String before parsing, mirroring BodyPublishers.ofString and BodyHandlers.ofString.
+final class LegacyPanelJsonCodec {
+    private final String serverId;
+
+    LegacyPanelJsonCodec(String serverId) {
+        this.serverId = serverId;
+    }
+
+    byte[] validateRequest(String pluginId, String key) {
+        JsonObject body = new JsonObject();
+        body.addProperty("pluginId", pluginId);
+        body.addProperty("key", key);
+        body.addProperty("serverId", serverId);
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    RemoteValidationResponse readValidation(byte[] responseBody) {
+        JsonElement parsed = JsonParser.parseString(new String(responseBody, StandardCharsets.UTF_8));
+        if (!parsed.isJsonObject()) {
+            return new RemoteValidationResponse(LicenseValidationResult.REMOTE_ERROR, null);
+        }
+        JsonObject json = parsed.getAsJsonObject();
+        return new RemoteValidationResponse(parseResult(json.get("result")), parseRecord(json.getAsJsonObject("license")));
+    }
+
+    private LicenseValidationResult parseResult(JsonElement element) {
+        if (element == null || !element.isJsonPrimitive()) {
+            return LicenseValidationResult.REMOTE_ERROR;
+        }
+        try {
+            return LicenseValidationResult.valueOf(element.getAsString().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ignored) {
+            return LicenseValidationResult.REMOTE_ERROR;
+        }
+    }
+
+    private LicenseRecord parseRecord(JsonObject object) {
+        if (object == null) {
+            return null;
+        }
+
+        String key = getString(object, "key", "");
+        String pluginId = getString(object, "pluginId", "");
+        String owner = getString(object, "owner", "");
+        Instant issuedAt = Instant.ofEpochSecond(getLong(object, "issuedAt", Instant.now().getEpochSecond()));
+        long expiresAtEpoch = getLong(object, "expiresAt", -1L);
+        Instant expiresAt = expiresAtEpoch < 0 ? null : Instant.ofEpochSecond(expiresAtEpoch);
+        boolean revoked = getBoolean(object, "revoked", false);
+
+        if (key.isBlank() || pluginId.isBlank()) {
+            return null;
+        }
+        return new LicenseRecord(key, pluginId, owner, issuedAt, expiresAt, revoked);
+    }
+
+    private String getString(JsonObject object, String field, String def) {
+        JsonElement value = object.get(field);
+        return value == null || value.isJsonNull() ? def : value.getAsString();
+    }
+
+    private long getLong(JsonObject object, String field, long def) {
+        JsonElement value = object.get(field);
+        return value == null || value.isJsonNull() ? def : value.getAsLong();
+    }
+
+    private boolean getBoolean(JsonObject object, String field, boolean def) {
+        JsonElement value = object.get(field);
+        return value == null || value.isJsonNull() ? def : value.getAsBoolean();
+    }
+}
@@ -0,0 +1,78 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.remote.PanelJsonCodec;
+import com.blancocl.licensing.remote.RemoteValidationResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PanelCodecBenchmark {
+    private static final String SERVER_ID = "survival-01";
+    private static final String PLUGIN_ID = "myplugin";
+    private static final String KEY = "myplugin.Zm9vYmFyYmF6cXV4MTIzNDU2.c2lnbmF0dXJlLWJ5dGVzMTIz";
+    private static final String RESPONSE = "{\"result\":\"VALID\",\"license\":{\"key\":\"" + KEY
+            + "\",\"pluginId\":\"myplugin\",\"owner\":\"owner\",\"issuedAt\":1700000000,\"expiresAt\":-1,\"revoked\":false}}";
+
+    private PanelJsonCodec codec;
+    private LegacyPanelJsonCodec legacyCodec;
+    private byte[] responseBody;
+
+    @Setup
+    public void setUp() {
+        codec = new PanelJsonCodec(SERVER_ID);
+        legacyCodec = new LegacyPanelJsonCodec(SERVER_ID);
+        responseBody = RESPONSE.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // One validate exchange: encode the request body, then decode the response body.
+    @Benchmark
+    public RemoteValidationResponse validate(Blackhole blackhole) throws IOException {
+        blackhole.consume(codec.validateRequest(PLUGIN_ID, KEY));
+        return codec.readValidation(new ByteArrayInputStream(responseBody));
+    }
+
+    @Benchmark
+    public RemoteValidationResponse validateLegacy(Blackhole blackhole) {
+        blackhole.consume(legacyCodec.validateRequest(PLUGIN_ID, KEY));
+        return legacyCodec.readValidation(responseBody);
+    }
+
+    @Benchmark
+    public byte[] encodeValidate() {
+        return codec.validateRequest(PLUGIN_ID, KEY);
+    }
+
+    @Benchmark
+    public byte[] encodeValidateLegacy() {
+        return legacyCodec.validateRequest(PLUGIN_ID, KEY);
+    }
+
+    @Benchmark
+    public RemoteValidationResponse decodeValidate() throws IOException {
+        return codec.readValidation(new ByteArrayInputStream(responseBody));
+    }
+
+    @Benchmark
+    public RemoteValidationResponse decodeValidateLegacy() {
+        return legacyCodec.readValidation(responseBody);
+    }
+}
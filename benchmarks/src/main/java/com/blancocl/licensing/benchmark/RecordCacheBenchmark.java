@@ -0,0 +1,87 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.repository.CachedLicenseRepository;
+import com.blancocl.licensing.repository.LicenseRepository;
+import com.blancocl.licensing.repository.RecordCacheSettings;
+import com.blancocl.licensing.security.HmacLicenseSigner;
+import com.blancocl.licensing.service.StorageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordCacheBenchmark {
+    // Lookups are skewed towards a small hot set, the way a few active servers validate the same
+    // keys over and over, with scanPercent of them spent on keys read once in order.
+    private static final double SKEW = 4.0;
+
+    @Param({"SQLITE", "MYSQL"})
+    public String backend;
+
+    @Param({"100000"})
+    public int records;
+
+    @Param({"0", "5000"})
+    public int cacheEntries;
+
+    @Param({"20"})
+    public int scanPercent;
+
+    private Path dataFolder;
+    private LicenseRepository repository;
+    private LicenseRecord[] stored;
+    private final AtomicInteger scanPosition = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        HmacLicenseSigner signer = new HmacLicenseSigner(BenchmarkFixtures.SECRET);
+        dataFolder = BenchmarkFixtures.createDataFolder();
+        repository = BenchmarkFixtures.createRepository(StorageType.fromConfig(backend), dataFolder, BenchmarkFixtures.quietLogger());
+        stored = BenchmarkFixtures.createRecords(signer, records);
+        repository.upsertAll(List.of(stored));
+        if (cacheEntries > 0) {
+            repository = new CachedLicenseRepository(BenchmarkFixtures.quietLogger(), repository,
+                    new RecordCacheSettings(true, cacheEntries, 0L, Duration.ZERO));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        BenchmarkFixtures.deleteDataFolder(dataFolder);
+    }
+
+    @Benchmark
+    public Optional<LicenseRecord> find() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) < scanPercent) {
+            return repository.find(stored[Math.floorMod(scanPosition.getAndIncrement(), stored.length)].key());
+        }
+        return repository.find(stored[(int) (stored.length * Math.pow(random.nextDouble(), SKEW))].key());
+    }
+}
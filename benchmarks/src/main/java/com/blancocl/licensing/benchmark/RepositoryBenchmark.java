@@ -0,0 +1,117 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.repository.KeyFilteredLicenseRepository;
+import com.blancocl.licensing.repository.LicenseRepository;
+import com.blancocl.licensing.security.HmacLicenseSigner;
+import com.blancocl.licensing.service.StorageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+    private static final int FIND_ALL_KEYS = 32;
+
+    @Param({"YAML", "SQLITE", "MYSQL", "MMAP"})
+    public String backend;
+
+    @Param({"10000"})
+    public int records;
+
+    @Param({"false", "true"})
+    public boolean keyFilter;
+
+    private Path dataFolder;
+    private LicenseRepository repository;
+    private LicenseRecord[] stored;
+    private String[] missing;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        HmacLicenseSigner signer = new HmacLicenseSigner(BenchmarkFixtures.SECRET);
+        dataFolder = BenchmarkFixtures.createDataFolder();
+        repository = BenchmarkFixtures.createRepository(StorageType.fromConfig(backend), dataFolder, BenchmarkFixtures.quietLogger());
+        stored = BenchmarkFixtures.createRecords(signer, records);
+        repository.upsertAll(List.of(stored));
+        missing = new String[records];
+        for (int i = 0; i < missing.length; i++) {
+            missing[i] = signer.generate(BenchmarkFixtures.PLUGIN_ID);
+        }
+        if (keyFilter) {
+            repository = awaitKeyFilter(new KeyFilteredLicenseRepository(
+                    BenchmarkFixtures.quietLogger(), repository, records, 0.01));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        BenchmarkFixtures.deleteDataFolder(dataFolder);
+    }
+
+    @Benchmark
+    public Optional<LicenseRecord> find() {
+        return repository.find(randomRecord().key());
+    }
+
+    @Benchmark
+    public Optional<LicenseRecord> findMissing() {
+        return repository.find(missing[ThreadLocalRandom.current().nextInt(missing.length)]);
+    }
+
+    @Benchmark
+    public Map<String, LicenseRecord> findAll() {
+        List<String> keys = new ArrayList<>(FIND_ALL_KEYS);
+        for (int i = 0; i < FIND_ALL_KEYS; i++) {
+            keys.add(randomRecord().key());
+        }
+        return repository.findAll(keys);
+    }
+
+    @Benchmark
+    public void upsert() {
+        repository.upsert(randomRecord());
+    }
+
+    @Benchmark
+    public boolean revoke() {
+        return repository.revoke(randomRecord().key());
+    }
+
+    private static KeyFilteredLicenseRepository awaitKeyFilter(KeyFilteredLicenseRepository filtered)
+            throws InterruptedException {
+        while (!filtered.stats().ready()) {
+            Thread.sleep(10);
+        }
+        return filtered;
+    }
+
+    private LicenseRecord randomRecord() {
+        return stored[ThreadLocalRandom.current().nextInt(stored.length)];
+    }
+}
@@ -0,0 +1,178 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+// In-process panel for benchmarks. Every request waits latencyMs and then fails with a 500 at
+// errorPercent probability before answering from an in-memory license map.
+final class StubPanelServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LicenseRecord> licenses = new ConcurrentHashMap<>();
+    private final int latencyMs;
+    private final int errorPercent;
+
+    StubPanelServer(int latencyMs, int errorPercent) throws IOException {
+        this.latencyMs = Math.max(0, latencyMs);
+        this.errorPercent = Math.max(0, Math.min(100, errorPercent));
+        // Without TCP_NODELAY the separate header and body writes hit delayed ACKs (~40 ms per call).
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/licenses/validate", exchange -> handle(exchange, this::validate));
+        server.createContext("/api/licenses/validate-batch", exchange -> handle(exchange, this::validateBatch));
+        server.createContext("/api/licenses/issue", exchange -> handle(exchange, this::issue));
+        server.createContext("/api/licenses/get", exchange -> handle(exchange, this::get));
+        server.createContext("/api/licenses/revoke", exchange -> handle(exchange, this::revoke));
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    void put(LicenseRecord record) {
+        licenses.put(record.key(), record);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange, Function<JsonObject, JsonObject> handler) throws IOException {
+        try (exchange) {
+            JsonObject request;
+            try (InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                request = JsonParser.parseReader(reader).getAsJsonObject();
+            }
+
+            if (latencyMs > 0) {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (errorPercent > 0 && ThreadLocalRandom.current().nextInt(100) < errorPercent) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            byte[] body = handler.apply(request).toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private JsonObject validate(JsonObject request) {
+        return validation(request.get("pluginId").getAsString(), request.get("key").getAsString());
+    }
+
+    private JsonObject validateBatch(JsonObject request) {
+        JsonArray results = new JsonArray();
+        for (JsonElement element : request.getAsJsonArray("items")) {
+            JsonObject item = element.getAsJsonObject();
+            String pluginId = item.get("pluginId").getAsString();
+            String key = item.get("key").getAsString();
+            JsonObject result = validation(pluginId, key);
+            result.addProperty("pluginId", pluginId);
+            result.addProperty("key", key);
+            results.add(result);
+        }
+        JsonObject response = new JsonObject();
+        response.add("results", results);
+        return response;
+    }
+
+    private JsonObject issue(JsonObject request) {
+        Instant now = Instant.ofEpochSecond(Instant.now().getEpochSecond());
+        long validDays = request.get("validDays").getAsLong();
+        LicenseRecord record = new LicenseRecord(
+                "panel-" + UUID.randomUUID(),
+                request.get("pluginId").getAsString(),
+                request.get("owner").getAsString(),
+                now,
+                validDays <= 0 ? null : now.plus(validDays, ChronoUnit.DAYS),
+                false
+        );
+        licenses.put(record.key(), record);
+        JsonObject response = new JsonObject();
+        response.add("license", toJson(record));
+        return response;
+    }
+
+    private JsonObject get(JsonObject request) {
+        JsonObject response = new JsonObject();
+        LicenseRecord record = licenses.get(request.get("key").getAsString());
+        if (record != null) {
+            response.add("license", toJson(record));
+        }
+        return response;
+    }
+
+    private JsonObject revoke(JsonObject request) {
+        LicenseRecord record = licenses.computeIfPresent(request.get("key").getAsString(), (key, value) -> value.withRevoked(true));
+        JsonObject response = new JsonObject();
+        response.addProperty("success", record != null);
+        return response;
+    }
+
+    private JsonObject validation(String pluginId, String key) {
+        LicenseRecord record = licenses.get(key);
+        JsonObject response = new JsonObject();
+        String result;
+        if (record == null) {
+            result = "NOT_FOUND";
+        } else if (!record.pluginId().equalsIgnoreCase(pluginId)) {
+            result = "WRONG_PLUGIN";
+        } else if (record.revoked()) {
+            result = "REVOKED";
+        } else {
+            result = "VALID";
+        }
+        response.addProperty("result", result);
+        if (record != null) {
+            response.add("license", toJson(record));
+        }
+        return response;
+    }
+
+    private JsonObject toJson(LicenseRecord record) {
+        JsonObject json = new JsonObject();
+        json.addProperty("key", record.key());
+        json.addProperty("pluginId", record.pluginId());
+        json.addProperty("owner", record.owner());
+        json.addProperty("issuedAt", record.issuedAt().getEpochSecond());
+        json.addProperty("expiresAt", record.expiresAt() == null ? -1L : record.expiresAt().getEpochSecond());
+        json.addProperty("revoked", record.revoked());
+        return json;
+    }
+}
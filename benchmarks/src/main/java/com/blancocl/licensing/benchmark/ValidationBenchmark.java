@@ -0,0 +1,153 @@
+package com.blancocl.licensing.benchmark;
+
+import com.blancocl.licensing.api.LicenseValidationResult;
+import com.blancocl.licensing.metrics.LicenseMetrics;
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.remote.CircuitBreaker;
+import com.blancocl.licensing.remote.HttpPanelLicenseClient;
+import com.blancocl.licensing.repository.LicenseRepository;
+import com.blancocl.licensing.security.HmacLicenseSigner;
+import com.blancocl.licensing.service.ExpiryScheduler;
+import com.blancocl.licensing.service.HybridLicenseService;
+import com.blancocl.licensing.service.LicenseMode;
+import com.blancocl.licensing.service.RecordWriteBehind;
+import com.blancocl.licensing.service.StaleWhileRevalidate;
+import com.blancocl.licensing.service.StorageType;
+import com.blancocl.licensing.service.ValidationResultCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// End-to-end HybridLicenseService.validate over SQLite storage and the stub panel. The result
+// cache is off unless cacheEntries is set, so every call takes the full mode-specific path.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+    private static final int KEY_COUNT = 1024;
+
+    @Param({"LOCAL", "REMOTE", "HYBRID"})
+    public String mode;
+
+    @Param({"0"})
+    public int latencyMs;
+
+    @Param({"0"})
+    public int errorPercent;
+
+    @Param({"0"})
+    public int cacheEntries;
+
+    private Path dataFolder;
+    private StubPanelServer panel;
+    private ExecutorService executor;
+    private LicenseRepository repository;
+    private HybridLicenseService service;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Logger logger = BenchmarkFixtures.quietLogger();
+        HmacLicenseSigner signer = new HmacLicenseSigner(BenchmarkFixtures.SECRET);
+        LicenseRecord[] records = BenchmarkFixtures.createRecords(signer, KEY_COUNT);
+
+        dataFolder = BenchmarkFixtures.createDataFolder();
+        repository = BenchmarkFixtures.createRepository(StorageType.SQLITE, dataFolder, logger);
+        repository.upsertAll(List.of(records));
+
+        panel = new StubPanelServer(latencyMs, errorPercent);
+        for (LicenseRecord record : records) {
+            panel.put(record);
+        }
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        LicenseMetrics metrics = new LicenseMetrics();
+        HttpPanelLicenseClient panelClient = new HttpPanelLicenseClient(
+                logger,
+                panel.baseUrl(),
+                "Authorization",
+                "Bearer benchmark",
+                "benchmark",
+                1000,
+                5000,
+                250,
+                30000,
+                "/api/licenses/validate",
+                "/api/licenses/validate-batch",
+                "",
+                "",
+                "/api/licenses/revoke",
+                "/api/licenses/get",
+                "",
+                "",
+                executor,
+                new CircuitBreaker(logger, 5, 0.5, 20, Duration.ofSeconds(30)),
+                metrics
+        );
+
+        ValidationResultCache cache = cacheEntries <= 0
+                ? ValidationResultCache.disabled()
+                : new ValidationResultCache(cacheEntries, Duration.ofSeconds(60), Duration.ofSeconds(30));
+        RecordWriteBehind writeBehind = new RecordWriteBehind(logger, repository, 256, Duration.ofSeconds(1));
+        service = new HybridLicenseService(
+                repository,
+                signer,
+                LicenseMode.fromConfig(mode),
+                panelClient,
+                executor,
+                cache,
+                writeBehind,
+                StaleWhileRevalidate.disabled(),
+                ExpiryScheduler.disabled(),
+                metrics
+        );
+        keys = Arrays.stream(records).map(LicenseRecord::key).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.close();
+        executor.shutdownNow();
+        panel.close();
+        repository.close();
+        BenchmarkFixtures.deleteDataFolder(dataFolder);
+    }
+
+    @Benchmark
+    public LicenseValidationResult validate() {
+        return service.validate(BenchmarkFixtures.PLUGIN_ID, nextKey());
+    }
+
+    @Benchmark
+    public LicenseValidationResult validateAsync() {
+        return service.validateAsync(BenchmarkFixtures.PLUGIN_ID, nextKey()).join();
+    }
+
+    private String nextKey() {
+        return keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)];
+    }
+}
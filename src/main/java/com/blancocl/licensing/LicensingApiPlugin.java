@@ -1,28 +1,85 @@
 package com.blancocl.licensing;
 
+import com.blancocl.licensing.api.LicenseExpiredEvent;
+import com.blancocl.licensing.api.LicenseMetricsService;
 import com.blancocl.licensing.api.PluginLicenseService;
+import com.blancocl.licensing.metrics.LicenseMetrics;
+import com.blancocl.licensing.remote.CircuitBreaker;
 import com.blancocl.licensing.remote.HttpPanelLicenseClient;
 import com.blancocl.licensing.remote.PanelLicenseClient;
+import com.blancocl.licensing.repository.CachedLicenseRepository;
 import com.blancocl.licensing.repository.JdbcLicenseRepository;
+import com.blancocl.licensing.repository.InstrumentedLicenseRepository;
+import com.blancocl.licensing.repository.JdbcPoolSettings;
+import com.blancocl.licensing.repository.KeyFilteredLicenseRepository;
 import com.blancocl.licensing.repository.LicenseRepository;
+import com.blancocl.licensing.repository.MappedLicenseRepository;
+import com.blancocl.licensing.repository.RecordCacheSettings;
+import com.blancocl.licensing.repository.ReplicaSettings;
+import com.blancocl.licensing.repository.SqliteWalSettings;
+import com.blancocl.licensing.repository.SqliteWriteMode;
 import com.blancocl.licensing.repository.YamlLicenseRepository;
 import com.blancocl.licensing.security.HmacLicenseSigner;
+import com.blancocl.licensing.service.ChangeFeedSync;
+import com.blancocl.licensing.service.ExpiryScheduler;
 import com.blancocl.licensing.service.HybridLicenseService;
 import com.blancocl.licensing.service.LicenseMode;
+import com.blancocl.licensing.service.PurgeMode;
+import com.blancocl.licensing.service.RecordWriteBehind;
+import com.blancocl.licensing.service.RetentionPurge;
+import com.blancocl.licensing.service.SnapshotImport;
+import com.blancocl.licensing.service.StaleWhileRevalidate;
 import com.blancocl.licensing.service.StorageType;
+import com.blancocl.licensing.service.ValidationResultCache;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public final class LicensingApiPlugin extends JavaPlugin {
+    private static final String CHANGE_FEED_CURSOR_FILE = "change-feed.cursor";
+    private static final String PURGE_ARCHIVE_FILE = "archive/licenses-archive.jsonl";
     private static final String ENV_SIGNING_SECRET = "PAPER_LIC_SIGNING_SECRET";
     private static final String ENV_MODE = "PAPER_LIC_MODE";
     private static final String ENV_STORAGE_TYPE = "PAPER_LIC_STORAGE_TYPE";
     private static final String ENV_SQLITE_FILE = "PAPER_LIC_SQLITE_FILE";
+    private static final String ENV_SQLITE_WAL = "PAPER_LIC_SQLITE_WAL";
+    private static final String ENV_SQLITE_WRITE_MODE = "PAPER_LIC_SQLITE_WRITE_MODE";
+    private static final String ENV_SQLITE_WRITE_BATCH_SIZE = "PAPER_LIC_SQLITE_WRITE_BATCH_SIZE";
     private static final String ENV_MYSQL_JDBC_URL = "PAPER_LIC_MYSQL_JDBC_URL";
     private static final String ENV_MYSQL_USERNAME = "PAPER_LIC_MYSQL_USERNAME";
     private static final String ENV_MYSQL_PASSWORD = "PAPER_LIC_MYSQL_PASSWORD";
+    private static final String ENV_MYSQL_REPLICA_URLS = "PAPER_LIC_MYSQL_REPLICA_URLS";
+    private static final String ENV_MYSQL_REPLICA_HEALTH_INTERVAL_SECONDS = "PAPER_LIC_MYSQL_REPLICA_HEALTH_INTERVAL_SECONDS";
+    private static final String ENV_MYSQL_REPLICA_MAX_LAG_SECONDS = "PAPER_LIC_MYSQL_REPLICA_MAX_LAG_SECONDS";
+    private static final String ENV_MMAP_FILE = "PAPER_LIC_MMAP_FILE";
+    private static final String ENV_MMAP_FORCE_WRITES = "PAPER_LIC_MMAP_FORCE_WRITES";
+    private static final String ENV_YAML_JOURNAL_MAX_BYTES = "PAPER_LIC_YAML_JOURNAL_MAX_BYTES";
+    private static final String ENV_YAML_JOURNAL_MAX_AGE_SECONDS = "PAPER_LIC_YAML_JOURNAL_MAX_AGE_SECONDS";
+    private static final String ENV_KEY_FILTER_ENABLED = "PAPER_LIC_KEY_FILTER_ENABLED";
+    private static final String ENV_KEY_FILTER_EXPECTED_KEYS = "PAPER_LIC_KEY_FILTER_EXPECTED_KEYS";
+    private static final String ENV_KEY_FILTER_FALSE_POSITIVE_RATE = "PAPER_LIC_KEY_FILTER_FALSE_POSITIVE_RATE";
+    private static final String ENV_RECORD_CACHE_PREFIX = "PAPER_LIC_RECORD_CACHE_";
+    private static final String ENV_RECORD_CACHE_ENABLED = "PAPER_LIC_RECORD_CACHE_ENABLED";
+    private static final String ENV_RECORD_CACHE_MAX_ENTRIES = "PAPER_LIC_RECORD_CACHE_MAX_ENTRIES";
+    private static final String ENV_RECORD_CACHE_MAX_BYTES = "PAPER_LIC_RECORD_CACHE_MAX_BYTES";
+    private static final String ENV_RECORD_CACHE_TTL_SECONDS = "PAPER_LIC_RECORD_CACHE_TTL_SECONDS";
+    private static final String ENV_JDBC_POOL_MIN_SIZE = "PAPER_LIC_JDBC_POOL_MIN_SIZE";
+    private static final String ENV_JDBC_POOL_MAX_SIZE = "PAPER_LIC_JDBC_POOL_MAX_SIZE";
+    private static final String ENV_JDBC_POOL_IDLE_TIMEOUT_SECONDS = "PAPER_LIC_JDBC_POOL_IDLE_TIMEOUT_SECONDS";
+    private static final String ENV_JDBC_POOL_BORROW_TIMEOUT_MS = "PAPER_LIC_JDBC_POOL_BORROW_TIMEOUT_MS";
+    private static final String ENV_CACHE_MAX_ENTRIES = "PAPER_LIC_CACHE_MAX_ENTRIES";
+    private static final String ENV_CACHE_VALID_TTL_SECONDS = "PAPER_LIC_CACHE_VALID_TTL_SECONDS";
+    private static final String ENV_CACHE_TERMINAL_TTL_SECONDS = "PAPER_LIC_CACHE_TERMINAL_TTL_SECONDS";
+    private static final String ENV_WRITE_BEHIND_BATCH_SIZE = "PAPER_LIC_WRITE_BEHIND_BATCH_SIZE";
+    private static final String ENV_WRITE_BEHIND_FLUSH_MS = "PAPER_LIC_WRITE_BEHIND_FLUSH_MS";
+    private static final String ENV_SWR_FRESH_SECONDS = "PAPER_LIC_SWR_FRESH_SECONDS";
+    private static final String ENV_SWR_MAX_STALE_SECONDS = "PAPER_LIC_SWR_MAX_STALE_SECONDS";
     private static final String ENV_PANEL_ENABLED = "PAPER_LIC_PANEL_ENABLED";
     private static final String ENV_PANEL_BASE_URL = "PAPER_LIC_PANEL_BASE_URL";
     private static final String ENV_PANEL_API_TOKEN = "PAPER_LIC_PANEL_API_TOKEN";
@@ -31,12 +88,40 @@ public final class LicensingApiPlugin extends JavaPlugin {
     private static final String ENV_PANEL_AUTH_HEADER_PREFIX = "PAPER_LIC_PANEL_AUTH_HEADER_PREFIX";
     private static final String ENV_PANEL_TIMEOUT_CONNECT_MS = "PAPER_LIC_PANEL_TIMEOUT_CONNECT_MS";
     private static final String ENV_PANEL_TIMEOUT_REQUEST_MS = "PAPER_LIC_PANEL_TIMEOUT_REQUEST_MS";
+    private static final String ENV_PANEL_TIMEOUT_MIN_MS = "PAPER_LIC_PANEL_TIMEOUT_MIN_MS";
+    private static final String ENV_PANEL_TIMEOUT_BODY_MS = "PAPER_LIC_PANEL_TIMEOUT_BODY_MS";
+    private static final String ENV_PANEL_BREAKER_FAILURE_THRESHOLD = "PAPER_LIC_PANEL_BREAKER_FAILURE_THRESHOLD";
+    private static final String ENV_PANEL_BREAKER_ERROR_RATE_PERCENT = "PAPER_LIC_PANEL_BREAKER_ERROR_RATE_PERCENT";
+    private static final String ENV_PANEL_BREAKER_WINDOW = "PAPER_LIC_PANEL_BREAKER_WINDOW";
+    private static final String ENV_PANEL_BREAKER_OPEN_MS = "PAPER_LIC_PANEL_BREAKER_OPEN_MS";
     private static final String ENV_PANEL_ENDPOINT_VALIDATE = "PAPER_LIC_PANEL_ENDPOINT_VALIDATE";
+    private static final String ENV_PANEL_ENDPOINT_VALIDATE_BATCH = "PAPER_LIC_PANEL_ENDPOINT_VALIDATE_BATCH";
     private static final String ENV_PANEL_ENDPOINT_ISSUE = "PAPER_LIC_PANEL_ENDPOINT_ISSUE";
+    private static final String ENV_PANEL_ENDPOINT_ISSUE_BATCH = "PAPER_LIC_PANEL_ENDPOINT_ISSUE_BATCH";
     private static final String ENV_PANEL_ENDPOINT_REVOKE = "PAPER_LIC_PANEL_ENDPOINT_REVOKE";
     private static final String ENV_PANEL_ENDPOINT_GET = "PAPER_LIC_PANEL_ENDPOINT_GET";
+    private static final String ENV_PANEL_ENDPOINT_CHANGES = "PAPER_LIC_PANEL_ENDPOINT_CHANGES";
+    private static final String ENV_PANEL_ENDPOINT_SNAPSHOT = "PAPER_LIC_PANEL_ENDPOINT_SNAPSHOT";
+    private static final String ENV_SNAPSHOT_IMPORT_ON_START = "PAPER_LIC_SNAPSHOT_IMPORT_ON_START";
+    private static final String ENV_SNAPSHOT_PAGE_SIZE = "PAPER_LIC_SNAPSHOT_PAGE_SIZE";
+    private static final String ENV_SNAPSHOT_BATCH_SIZE = "PAPER_LIC_SNAPSHOT_BATCH_SIZE";
+    private static final String ENV_CHANGE_FEED_INTERVAL_SECONDS = "PAPER_LIC_CHANGE_FEED_INTERVAL_SECONDS";
+    private static final String ENV_CHANGE_FEED_PAGE_SIZE = "PAPER_LIC_CHANGE_FEED_PAGE_SIZE";
+    private static final String ENV_EXPIRY_HORIZON_MINUTES = "PAPER_LIC_EXPIRY_HORIZON_MINUTES";
+    private static final String ENV_PURGE_MODE = "PAPER_LIC_PURGE_MODE";
+    private static final String ENV_PURGE_RETENTION_DAYS = "PAPER_LIC_PURGE_RETENTION_DAYS";
+    private static final String ENV_PURGE_INTERVAL_MINUTES = "PAPER_LIC_PURGE_INTERVAL_MINUTES";
+    private static final String ENV_PURGE_BATCH_SIZE = "PAPER_LIC_PURGE_BATCH_SIZE";
 
-    private PluginLicenseService licenseService;
+    private HybridLicenseService licenseService;
+    private LicenseMetrics metrics;
+    private LicenseRepository repository;
+    private PanelLicenseClient panelClient;
+    private ChangeFeedSync changeFeed;
+    private SnapshotImport snapshotImport;
+    private ExpiryScheduler expiryScheduler;
+    private RetentionPurge retentionPurge;
+    private ExecutorService ioExecutor;
 
     @Override
     public void onEnable() {
@@ -47,13 +132,75 @@ public final class LicensingApiPlugin extends JavaPlugin {
             return;
         }
 
-        LicenseRepository repository = createRepository();
+        this.ioExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.metrics = new LicenseMetrics();
+        StorageType storageType = StorageType.fromConfig(readSetting(ENV_STORAGE_TYPE, "SQLITE"));
+        this.repository = createRecordCache(storageType, createKeyFilter(storageType,
+                new InstrumentedLicenseRepository(createRepository(storageType), metrics)));
         LicenseMode mode = LicenseMode.fromConfig(readSetting(ENV_MODE, "HYBRID"));
-        PanelLicenseClient panelClient = createPanelClient();
+        this.panelClient = createPanelClient();
         HmacLicenseSigner signer = new HmacLicenseSigner(signingSecret);
+        ValidationResultCache validationCache = createValidationCache();
+        RecordWriteBehind writeBehind = new RecordWriteBehind(
+                getLogger(),
+                repository,
+                readIntSetting(ENV_WRITE_BEHIND_BATCH_SIZE, 256),
+                Duration.ofMillis(Math.max(10, readIntSetting(ENV_WRITE_BEHIND_FLUSH_MS, 1000)))
+        );
 
-        this.licenseService = new HybridLicenseService(this, repository, signer, mode, panelClient);
+        this.expiryScheduler = createExpiryScheduler();
+        this.licenseService = new HybridLicenseService(
+                repository, signer, mode, panelClient, ioExecutor, validationCache, writeBehind,
+                createStaleWhileRevalidate(), expiryScheduler, metrics);
         getServer().getServicesManager().register(PluginLicenseService.class, licenseService, this, ServicePriority.Normal);
+        getServer().getServicesManager().register(LicenseMetricsService.class, metrics, this, ServicePriority.Normal);
+
+        int changeFeedSeconds = readIntSetting(ENV_CHANGE_FEED_INTERVAL_SECONDS, 0);
+        if (panelClient != null && mode != LicenseMode.LOCAL && changeFeedSeconds > 0) {
+            this.changeFeed = new ChangeFeedSync(
+                    getLogger(),
+                    panelClient,
+                    licenseService,
+                    new File(getDataFolder(), CHANGE_FEED_CURSOR_FILE),
+                    Duration.ofSeconds(changeFeedSeconds),
+                    readIntSetting(ENV_CHANGE_FEED_PAGE_SIZE, 500)
+            );
+        }
+
+        boolean importSnapshot = Boolean.parseBoolean(readSetting(ENV_SNAPSHOT_IMPORT_ON_START, "false"));
+        if (panelClient != null && mode != LicenseMode.LOCAL && importSnapshot) {
+            this.snapshotImport = new SnapshotImport(
+                    getLogger(),
+                    panelClient,
+                    licenseService,
+                    getDataFolder(),
+                    CHANGE_FEED_CURSOR_FILE,
+                    readIntSetting(ENV_SNAPSHOT_PAGE_SIZE, 5000),
+                    readIntSetting(ENV_SNAPSHOT_BATCH_SIZE, 500)
+            );
+        }
+        if (snapshotImport != null && !snapshotImport.completed()) {
+            // The change feed picks up from the snapshot's change cursor once the import is done.
+            snapshotImport.start(this::startChangeFeed);
+        } else {
+            startChangeFeed();
+        }
+        expiryScheduler.start();
+
+        PurgeMode purgeMode = PurgeMode.fromConfig(readSetting(ENV_PURGE_MODE, "OFF"));
+        if (purgeMode != PurgeMode.OFF) {
+            this.retentionPurge = new RetentionPurge(
+                    getLogger(),
+                    repository,
+                    licenseService,
+                    purgeMode,
+                    new File(getDataFolder(), PURGE_ARCHIVE_FILE),
+                    Duration.ofDays(Math.max(0, readIntSetting(ENV_PURGE_RETENTION_DAYS, 30))),
+                    Duration.ofMinutes(Math.max(1, readIntSetting(ENV_PURGE_INTERVAL_MINUTES, 60))),
+                    readIntSetting(ENV_PURGE_BATCH_SIZE, 500)
+            );
+            retentionPurge.start();
+        }
 
         getLogger().info("Licensing API enabled. mode=" + mode.name());
     }
@@ -63,17 +210,57 @@ public final class LicensingApiPlugin extends JavaPlugin {
         if (licenseService != null) {
             getServer().getServicesManager().unregister(PluginLicenseService.class, licenseService);
         }
+        if (metrics != null) {
+            getServer().getServicesManager().unregister(LicenseMetricsService.class, metrics);
+        }
+        if (snapshotImport != null) {
+            snapshotImport.close();
+        }
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+        if (retentionPurge != null) {
+            retentionPurge.close();
+        }
+        if (expiryScheduler != null) {
+            expiryScheduler.close();
+        }
+        if (ioExecutor != null) {
+            ioExecutor.shutdown();
+            try {
+                if (!ioExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    getLogger().warning("Timed out waiting for pending license operations to finish.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (licenseService != null) {
+            licenseService.close();
+        }
+        if (panelClient instanceof HttpPanelLicenseClient httpClient) {
+            getLogger().info("Panel request coalescing: " + httpClient.coalescingStats()
+                    + ", circuit: " + httpClient.circuitState());
+        }
+        if (repository != null) {
+            repository.close();
+        }
     }
 
-    private LicenseRepository createRepository() {
-        StorageType type = StorageType.fromConfig(readSetting(ENV_STORAGE_TYPE, "SQLITE"));
+    private LicenseRepository createRepository(StorageType type) {
         return switch (type) {
-            case YAML -> new YamlLicenseRepository(this);
+            case YAML -> new YamlLicenseRepository(
+                    getLogger(),
+                    getDataFolder(),
+                    readLongSetting(ENV_YAML_JOURNAL_MAX_BYTES, 4L * 1024 * 1024),
+                    Duration.ofSeconds(Math.max(1, readIntSetting(ENV_YAML_JOURNAL_MAX_AGE_SECONDS, 300)))
+            );
             case MYSQL -> {
                 String url = readSetting(ENV_MYSQL_JDBC_URL, "");
                 String username = readSetting(ENV_MYSQL_USERNAME, "");
                 String password = readSetting(ENV_MYSQL_PASSWORD, "");
-                yield new JdbcLicenseRepository(this, url, username, password);
+                yield new JdbcLicenseRepository(getLogger(), url, username, password, readPoolSettings(),
+                        SqliteWalSettings.disabled(), readReplicaSettings());
             }
             case SQLITE -> {
                 File dbFile = new File(getDataFolder(), readSetting(ENV_SQLITE_FILE, "licenses.db"));
@@ -81,11 +268,130 @@ public final class LicensingApiPlugin extends JavaPlugin {
                     getLogger().warning("Could not create plugin data directory for SQLite DB.");
                 }
                 String jdbcUrl = "jdbc:sqlite:" + dbFile.getAbsolutePath();
-                yield new JdbcLicenseRepository(this, jdbcUrl, "", "");
+                yield new JdbcLicenseRepository(getLogger(), jdbcUrl, "", "", readPoolSettings(), readWalSettings());
             }
+            case MMAP -> new MappedLicenseRepository(
+                    getLogger(),
+                    new File(getDataFolder(), readSetting(ENV_MMAP_FILE, "licenses.dat")),
+                    Boolean.parseBoolean(readSetting(ENV_MMAP_FORCE_WRITES, "true"))
+            );
         };
     }
 
+    // Off by default for MYSQL: other servers sharing the database write keys this filter never sees.
+    private LicenseRepository createKeyFilter(StorageType type, LicenseRepository delegate) {
+        boolean enabled = Boolean.parseBoolean(readSetting(ENV_KEY_FILTER_ENABLED, String.valueOf(type != StorageType.MYSQL)));
+        if (!enabled) {
+            return delegate;
+        }
+
+        KeyFilteredLicenseRepository filtered = new KeyFilteredLicenseRepository(
+                getLogger(),
+                delegate,
+                readLongSetting(ENV_KEY_FILTER_EXPECTED_KEYS, 100_000L),
+                readDoubleSetting(ENV_KEY_FILTER_FALSE_POSITIVE_RATE, 0.01)
+        );
+        metrics.keyFilterSource(filtered::stats);
+        return filtered;
+    }
+
+    // On by default for the databases, where every lookup is a query; YAML and MMAP already answer
+    // lookups from memory. MYSQL entries expire, since other servers sharing the database write
+    // records this cache never sees.
+    private LicenseRepository createRecordCache(StorageType type, LicenseRepository delegate) {
+        boolean database = type == StorageType.SQLITE || type == StorageType.MYSQL;
+        RecordCacheSettings settings = new RecordCacheSettings(
+                Boolean.parseBoolean(readSetting(recordCacheKey(type, ENV_RECORD_CACHE_ENABLED), String.valueOf(database))),
+                Math.max(1L, readLongSetting(recordCacheKey(type, ENV_RECORD_CACHE_MAX_ENTRIES), 10_000L)),
+                Math.max(0L, readLongSetting(recordCacheKey(type, ENV_RECORD_CACHE_MAX_BYTES), 0L)),
+                Duration.ofSeconds(Math.max(0L, readLongSetting(recordCacheKey(type, ENV_RECORD_CACHE_TTL_SECONDS),
+                        type == StorageType.MYSQL ? 30L : 0L)))
+        );
+        if (!settings.enabled()) {
+            return delegate;
+        }
+
+        CachedLicenseRepository cached = new CachedLicenseRepository(getLogger(), delegate, settings);
+        metrics.recordCacheSource(cached::stats);
+        return cached;
+    }
+
+    // PAPER_LIC_RECORD_CACHE_<TYPE>_<SETTING>, when set, overrides PAPER_LIC_RECORD_CACHE_<SETTING>
+    // for one storage type.
+    private String recordCacheKey(StorageType type, String key) {
+        String typed = ENV_RECORD_CACHE_PREFIX + type.name() + "_" + key.substring(ENV_RECORD_CACHE_PREFIX.length());
+        return readSetting(typed, "").isEmpty() ? key : typed;
+    }
+
+    private JdbcPoolSettings readPoolSettings() {
+        JdbcPoolSettings defaults = JdbcPoolSettings.defaults();
+        return new JdbcPoolSettings(
+                readIntSetting(ENV_JDBC_POOL_MIN_SIZE, defaults.minSize()),
+                readIntSetting(ENV_JDBC_POOL_MAX_SIZE, defaults.maxSize()),
+                Duration.ofSeconds(Math.max(1, readIntSetting(ENV_JDBC_POOL_IDLE_TIMEOUT_SECONDS, (int) defaults.idleTimeout().toSeconds()))),
+                Duration.ofMillis(Math.max(1, readIntSetting(ENV_JDBC_POOL_BORROW_TIMEOUT_MS, (int) defaults.borrowTimeout().toMillis())))
+        );
+    }
+
+    private SqliteWalSettings readWalSettings() {
+        SqliteWalSettings defaults = SqliteWalSettings.defaults();
+        return new SqliteWalSettings(
+                Boolean.parseBoolean(readSetting(ENV_SQLITE_WAL, String.valueOf(defaults.enabled()))),
+                SqliteWriteMode.fromConfig(readSetting(ENV_SQLITE_WRITE_MODE, defaults.writeMode().name())),
+                readIntSetting(ENV_SQLITE_WRITE_BATCH_SIZE, defaults.maxBatchSize())
+        );
+    }
+
+    private ReplicaSettings readReplicaSettings() {
+        ReplicaSettings defaults = ReplicaSettings.none();
+        return new ReplicaSettings(
+                List.of(readSetting(ENV_MYSQL_REPLICA_URLS, "").split(",")),
+                Duration.ofSeconds(Math.max(1, readIntSetting(ENV_MYSQL_REPLICA_HEALTH_INTERVAL_SECONDS, (int) defaults.healthCheckInterval().toSeconds()))),
+                Duration.ofSeconds(Math.max(0, readIntSetting(ENV_MYSQL_REPLICA_MAX_LAG_SECONDS, (int) defaults.maxLag().toSeconds())))
+        );
+    }
+
+    private void startChangeFeed() {
+        if (changeFeed != null) {
+            changeFeed.start();
+        }
+    }
+
+    private ValidationResultCache createValidationCache() {
+        int maxEntries = readIntSetting(ENV_CACHE_MAX_ENTRIES, 10000);
+        if (maxEntries <= 0) {
+            return ValidationResultCache.disabled();
+        }
+        return new ValidationResultCache(
+                maxEntries,
+                Duration.ofSeconds(Math.max(0, readIntSetting(ENV_CACHE_VALID_TTL_SECONDS, 60))),
+                Duration.ofSeconds(Math.max(0, readIntSetting(ENV_CACHE_TERMINAL_TTL_SECONDS, 30)))
+        );
+    }
+
+    // The listener reads licenseService when an expiry fires; the wheel only starts once the service exists.
+    private ExpiryScheduler createExpiryScheduler() {
+        int horizonMinutes = readIntSetting(ENV_EXPIRY_HORIZON_MINUTES, 60);
+        if (horizonMinutes <= 0) {
+            return ExpiryScheduler.disabled();
+        }
+        return new ExpiryScheduler(getLogger(), repository, Duration.ofMinutes(horizonMinutes), record -> {
+            licenseService.expired(record);
+            getServer().getPluginManager().callEvent(new LicenseExpiredEvent(record));
+        });
+    }
+
+    private StaleWhileRevalidate createStaleWhileRevalidate() {
+        int freshSeconds = readIntSetting(ENV_SWR_FRESH_SECONDS, 0);
+        if (freshSeconds <= 0) {
+            return StaleWhileRevalidate.disabled();
+        }
+        return new StaleWhileRevalidate(
+                Duration.ofSeconds(freshSeconds),
+                Duration.ofSeconds(Math.max(freshSeconds, readIntSetting(ENV_SWR_MAX_STALE_SECONDS, 3600)))
+        );
+    }
+
     private PanelLicenseClient createPanelClient() {
         boolean enabled = Boolean.parseBoolean(readSetting(ENV_PANEL_ENABLED, "false"));
         if (!enabled) {
@@ -102,19 +408,35 @@ public final class LicensingApiPlugin extends JavaPlugin {
         String headerName = readSetting(ENV_PANEL_AUTH_HEADER_NAME, "Authorization");
         String headerPrefix = readSetting(ENV_PANEL_AUTH_HEADER_PREFIX, "Bearer ");
         String headerValue = headerPrefix + token;
+        CircuitBreaker circuitBreaker = new CircuitBreaker(
+                getLogger(),
+                readIntSetting(ENV_PANEL_BREAKER_FAILURE_THRESHOLD, 5),
+                readIntSetting(ENV_PANEL_BREAKER_ERROR_RATE_PERCENT, 50) / 100.0,
+                readIntSetting(ENV_PANEL_BREAKER_WINDOW, 20),
+                Duration.ofMillis(Math.max(0, readIntSetting(ENV_PANEL_BREAKER_OPEN_MS, 30000)))
+        );
 
         return new HttpPanelLicenseClient(
-                this,
+                getLogger(),
                 baseUrl,
                 headerName,
                 headerValue,
                 readSetting(ENV_PANEL_SERVER_ID, "default"),
                 readIntSetting(ENV_PANEL_TIMEOUT_CONNECT_MS, 3000),
                 readIntSetting(ENV_PANEL_TIMEOUT_REQUEST_MS, 5000),
+                readIntSetting(ENV_PANEL_TIMEOUT_MIN_MS, 250),
+                readIntSetting(ENV_PANEL_TIMEOUT_BODY_MS, 30000),
                 readSetting(ENV_PANEL_ENDPOINT_VALIDATE, "/api/licenses/validate"),
+                readSetting(ENV_PANEL_ENDPOINT_VALIDATE_BATCH, "/api/licenses/validate-batch"),
                 readSetting(ENV_PANEL_ENDPOINT_ISSUE, "/api/licenses/issue"),
+                readSetting(ENV_PANEL_ENDPOINT_ISSUE_BATCH, "/api/licenses/issue-batch"),
                 readSetting(ENV_PANEL_ENDPOINT_REVOKE, "/api/licenses/revoke"),
-                readSetting(ENV_PANEL_ENDPOINT_GET, "/api/licenses/get")
+                readSetting(ENV_PANEL_ENDPOINT_GET, "/api/licenses/get"),
+                readSetting(ENV_PANEL_ENDPOINT_CHANGES, "/api/licenses/changes"),
+                readSetting(ENV_PANEL_ENDPOINT_SNAPSHOT, "/api/licenses/snapshot"),
+                ioExecutor,
+                circuitBreaker,
+                metrics
         );
     }
 
@@ -137,4 +459,20 @@ public final class LicensingApiPlugin extends JavaPlugin {
             return def;
         }
     }
+
+    private long readLongSetting(String key, long def) {
+        try {
+            return Long.parseLong(readSetting(key, String.valueOf(def)));
+        } catch (NumberFormatException ignored) {
+            return def;
+        }
+    }
+
+    private double readDoubleSetting(String key, double def) {
+        try {
+            return Double.parseDouble(readSetting(key, String.valueOf(def)));
+        } catch (NumberFormatException ignored) {
+            return def;
+        }
+    }
 }
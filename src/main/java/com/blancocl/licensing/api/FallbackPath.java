@@ -0,0 +1,11 @@
+package com.blancocl.licensing.api;
+
+public enum FallbackPath {
+    VALIDATE_LOCAL_ON_REMOTE_ERROR,
+    VALIDATE_ALL_LOCAL_ON_REMOTE_ERROR,
+    ISSUE_LOCAL_ON_REMOTE_FAILURE,
+    REVOKE_LOCAL_ON_REMOTE_FAILURE,
+    GET_LOCAL_ON_REMOTE_MISS,
+    SERVED_FRESH_LOCAL,
+    SERVED_STALE_LOCAL
+}
@@ -0,0 +1,16 @@
+package com.blancocl.licensing.api;
+
+// observedFalsePositiveRate is the share of lookups for absent keys that the filter let through
+// to storage; estimatedFalsePositiveRate is derived from how full the current filter is.
+public record KeyFilterStats(
+        boolean ready,
+        long bits,
+        int hashFunctions,
+        long approximateKeys,
+        double estimatedFalsePositiveRate,
+        double observedFalsePositiveRate,
+        long shortCircuited,
+        long falsePositives,
+        long rebuilds
+) {
+}
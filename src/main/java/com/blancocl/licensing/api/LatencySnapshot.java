@@ -0,0 +1,35 @@
+package com.blancocl.licensing.api;
+
+// bucketCounts[i] counts samples at or below bucketUpperBoundsNanos[i] and above the previous
+// bound; the last bucket is open-ended.
+public record LatencySnapshot(
+        long count,
+        long sumNanos,
+        long maxNanos,
+        long[] bucketUpperBoundsNanos,
+        long[] bucketCounts
+) {
+    public double meanNanos() {
+        return count == 0 ? 0.0 : (double) sumNanos / count;
+    }
+
+    public long percentileNanos(double percentile) {
+        long total = 0;
+        for (long bucketCount : bucketCounts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBoundsNanos[i], maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+}
@@ -0,0 +1,30 @@
+package com.blancocl.licensing.api;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+// Fired off the main thread when a stored license passes its expiry while the server is running.
+public final class LicenseExpiredEvent extends Event {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final LicenseRecord record;
+
+    public LicenseExpiredEvent(LicenseRecord record) {
+        super(true);
+        this.record = record;
+    }
+
+    public LicenseRecord record() {
+        return record;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,18 @@
+package com.blancocl.licensing.api;
+
+import com.blancocl.licensing.model.LicenseRecord;
+
+// Outcome of one owner in a bulk issue; record is null when the license could not be issued.
+public record LicenseIssueResult(String owner, LicenseRecord record, String failure) {
+    public static LicenseIssueResult issued(String owner, LicenseRecord record) {
+        return new LicenseIssueResult(owner, record, null);
+    }
+
+    public static LicenseIssueResult failed(String owner, String failure) {
+        return new LicenseIssueResult(owner, null, failure);
+    }
+
+    public boolean succeeded() {
+        return record != null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.blancocl.licensing.api;
+
+import java.util.Map;
+import java.util.Optional;
+
+public interface LicenseMetricsService {
+    Map<String, LatencySnapshot> latencies();
+
+    Map<LicenseValidationResult, Long> validationResults();
+
+    Map<FallbackPath, Long> fallbacks();
+
+    // Empty when the key filter is disabled.
+    Optional<KeyFilterStats> keyFilter();
+
+    // Empty when the record cache is disabled.
+    Optional<RecordCacheStats> recordCache();
+}
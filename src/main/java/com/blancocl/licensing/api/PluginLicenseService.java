@@ -1,15 +1,42 @@
 package com.blancocl.licensing.api;
 
 import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 public interface PluginLicenseService {
     LicenseRecord issueLicense(String pluginId, String owner, int validDays);
 
+    List<LicenseIssueResult> issueLicenses(String pluginId, List<String> owners, int validDays);
+
     LicenseValidationResult validate(String pluginId, String key);
 
+    Map<String, LicenseValidationResult> validateAll(Map<String, String> keysByPluginId);
+
     boolean revoke(String key);
 
     Optional<LicenseRecord> get(String key);
+
+    // Lazily paged listings of the licenses in local storage.
+    Stream<LicenseRecord> findByPlugin(String pluginId, LicenseStatus status);
+
+    Stream<LicenseRecord> findByOwner(String owner, LicenseStatus status);
+
+    Stream<LicenseRecord> findExpiringBefore(Instant until);
+
+    CompletableFuture<LicenseRecord> issueLicenseAsync(String pluginId, String owner, int validDays);
+
+    CompletableFuture<List<LicenseIssueResult>> issueLicensesAsync(String pluginId, List<String> owners, int validDays);
+
+    CompletableFuture<LicenseValidationResult> validateAsync(String pluginId, String key);
+
+    CompletableFuture<Boolean> revokeAsync(String key);
+
+    CompletableFuture<Optional<LicenseRecord>> getAsync(String key);
 }
@@ -0,0 +1,17 @@
+package com.blancocl.licensing.api;
+
+// weightedSize and maximumWeight count entries, or estimated bytes when weighedByBytes.
+// rejectedAdmissions counts new entries evicted because their key was read less often than the
+// entry they would have replaced.
+public record RecordCacheStats(
+        long entries,
+        boolean weighedByBytes,
+        long weightedSize,
+        long maximumWeight,
+        long hits,
+        long misses,
+        double hitRate,
+        long evictions,
+        long rejectedAdmissions
+) {
+}
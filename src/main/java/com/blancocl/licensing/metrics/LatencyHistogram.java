@@ -0,0 +1,72 @@
+package com.blancocl.licensing.metrics;
+
+import com.blancocl.licensing.api.LatencySnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free log-linear histogram: four sub-buckets per power of two from 1 µs up to ~69 s, so a
+// reported percentile is within 25% of the true value. Recording is a few atomic increments.
+public final class LatencyHistogram {
+    private static final int MIN_EXPONENT = 10;
+    private static final int MAX_EXPONENT = 36;
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = 1 + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+    private static final long[] UPPER_BOUNDS = upperBounds();
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void recordSince(long startedAtNanos) {
+        record(System.nanoTime() - startedAtNanos);
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new LatencySnapshot(count.sum(), sum.sum(), max.get(), UPPER_BOUNDS.clone(), counts);
+    }
+
+    private static int bucketIndex(long nanos) {
+        if (nanos < (1L << MIN_EXPONENT)) {
+            return 0;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long[] upperBounds() {
+        long[] bounds = new long[BUCKET_COUNT];
+        bounds[0] = (1L << MIN_EXPONENT) - 1;
+        for (int exponent = MIN_EXPONENT; exponent <= MAX_EXPONENT; exponent++) {
+            for (int subBucket = 0; subBucket < SUB_BUCKETS; subBucket++) {
+                int index = 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+                bounds[index] = ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+            }
+        }
+        bounds[BUCKET_COUNT - 1] = Long.MAX_VALUE;
+        return bounds;
+    }
+}
@@ -0,0 +1,98 @@
+package com.blancocl.licensing.metrics;
+
+import com.blancocl.licensing.api.FallbackPath;
+import com.blancocl.licensing.api.KeyFilterStats;
+import com.blancocl.licensing.api.LatencySnapshot;
+import com.blancocl.licensing.api.LicenseMetricsService;
+import com.blancocl.licensing.api.LicenseValidationResult;
+import com.blancocl.licensing.api.RecordCacheStats;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public final class LicenseMetrics implements LicenseMetricsService {
+    private static final LicenseValidationResult[] RESULTS = LicenseValidationResult.values();
+    private static final FallbackPath[] FALLBACKS = FallbackPath.values();
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final LongAdder[] results = adders(RESULTS.length);
+    private final LongAdder[] fallbacks = adders(FALLBACKS.length);
+    private volatile Supplier<KeyFilterStats> keyFilter;
+    private volatile Supplier<RecordCacheStats> recordCache;
+
+    // Callers resolve their histograms once and keep them, so the hot path never touches the map.
+    public LatencyHistogram histogram(String operation) {
+        return histograms.computeIfAbsent(operation, ignored -> new LatencyHistogram());
+    }
+
+    public void recordResult(LicenseValidationResult result) {
+        results[result.ordinal()].increment();
+    }
+
+    public void recordFallback(FallbackPath path) {
+        fallbacks[path.ordinal()].increment();
+    }
+
+    public void recordFallback(FallbackPath path, int times) {
+        fallbacks[path.ordinal()].add(times);
+    }
+
+    public void keyFilterSource(Supplier<KeyFilterStats> source) {
+        this.keyFilter = source;
+    }
+
+    public void recordCacheSource(Supplier<RecordCacheStats> source) {
+        this.recordCache = source;
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> latencies() {
+        Map<String, LatencySnapshot> snapshots = new TreeMap<>();
+        histograms.forEach((operation, histogram) -> snapshots.put(operation, histogram.snapshot()));
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    @Override
+    public Map<LicenseValidationResult, Long> validationResults() {
+        Map<LicenseValidationResult, Long> snapshot = new EnumMap<>(LicenseValidationResult.class);
+        for (LicenseValidationResult result : RESULTS) {
+            snapshot.put(result, results[result.ordinal()].sum());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    @Override
+    public Map<FallbackPath, Long> fallbacks() {
+        Map<FallbackPath, Long> snapshot = new EnumMap<>(FallbackPath.class);
+        for (FallbackPath path : FALLBACKS) {
+            snapshot.put(path, fallbacks[path.ordinal()].sum());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    @Override
+    public Optional<KeyFilterStats> keyFilter() {
+        Supplier<KeyFilterStats> source = keyFilter;
+        return source == null ? Optional.empty() : Optional.of(source.get());
+    }
+
+    @Override
+    public Optional<RecordCacheStats> recordCache() {
+        Supplier<RecordCacheStats> source = recordCache;
+        return source == null ? Optional.empty() : Optional.of(source.get());
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
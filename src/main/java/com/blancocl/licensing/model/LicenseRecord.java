@@ -68,4 +68,25 @@ public final class LicenseRecord {
     public LicenseRecord withRevoked(boolean value) {
         return new LicenseRecord(key, pluginId, owner, issuedAt, expiresAt, value);
     }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof LicenseRecord that)) {
+            return false;
+        }
+        return revoked == that.revoked
+                && Objects.equals(key, that.key)
+                && Objects.equals(pluginId, that.pluginId)
+                && Objects.equals(owner, that.owner)
+                && Objects.equals(issuedAt, that.issuedAt)
+                && Objects.equals(expiresAt, that.expiresAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, pluginId, owner, issuedAt, expiresAt, revoked);
+    }
 }
@@ -0,0 +1,24 @@
+package com.blancocl.licensing.model;
+
+import java.time.Instant;
+
+// Filter for license listings. A revoked license counts as REVOKED whether or not it has expired.
+public enum LicenseStatus {
+    ANY,
+    ACTIVE,
+    EXPIRED,
+    REVOKED;
+
+    public boolean matches(boolean revoked, boolean expired) {
+        return switch (this) {
+            case ANY -> true;
+            case ACTIVE -> !revoked && !expired;
+            case EXPIRED -> !revoked && expired;
+            case REVOKED -> revoked;
+        };
+    }
+
+    public boolean matches(LicenseRecord record, Instant now) {
+        return matches(record.revoked(), record.isExpired(now));
+    }
+}
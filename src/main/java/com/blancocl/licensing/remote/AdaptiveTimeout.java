@@ -0,0 +1,55 @@
+package com.blancocl.licensing.remote;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+// Derives the request timeout from recent successful latencies: a multiple of the observed p99,
+// clamped to [min, max]. Timeouts double the current value so a slower panel is not locked out.
+final class AdaptiveTimeout {
+    private static final int SAMPLE_SIZE = 256;
+    private static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_EVERY = 32;
+    private static final int P99_MULTIPLIER = 3;
+
+    private final long minNanos;
+    private final long maxNanos;
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private int sampleIndex;
+    private int sampleCount;
+    private int sinceRecompute;
+    private volatile long currentNanos;
+
+    AdaptiveTimeout(Duration min, Duration max) {
+        this.maxNanos = max.toNanos();
+        this.minNanos = Math.min(min.toNanos(), maxNanos);
+        this.currentNanos = maxNanos;
+    }
+
+    Duration current() {
+        return Duration.ofNanos(currentNanos);
+    }
+
+    synchronized void recordSuccess(long latencyNanos) {
+        samples[sampleIndex] = latencyNanos;
+        sampleIndex = (sampleIndex + 1) % SAMPLE_SIZE;
+        sampleCount = Math.min(SAMPLE_SIZE, sampleCount + 1);
+        if (sampleCount < MIN_SAMPLES || ++sinceRecompute < RECOMPUTE_EVERY) {
+            return;
+        }
+
+        sinceRecompute = 0;
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        long p99 = sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.99) - 1)];
+        currentNanos = clamp(p99 * P99_MULTIPLIER);
+    }
+
+    synchronized void recordTimeout() {
+        currentNanos = clamp(currentNanos * 2);
+        sinceRecompute = 0;
+    }
+
+    private long clamp(long nanos) {
+        return Math.max(minNanos, Math.min(maxNanos, nanos));
+    }
+}
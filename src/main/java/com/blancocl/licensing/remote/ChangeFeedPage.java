@@ -0,0 +1,8 @@
+package com.blancocl.licensing.remote;
+
+import com.blancocl.licensing.model.LicenseRecord;
+
+import java.util.List;
+
+public record ChangeFeedPage(List<LicenseRecord> records, String cursor, boolean hasMore) {
+}
@@ -0,0 +1,127 @@
+package com.blancocl.licensing.remote;
+
+import java.time.Duration;
+import java.util.logging.Logger;
+
+public final class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Logger logger;
+    private final int failureThreshold;
+    private final double errorRateThreshold;
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+    private long rejected;
+
+    public CircuitBreaker(Logger logger, int failureThreshold, double errorRateThreshold, int windowSize, Duration openDuration) {
+        this.logger = logger;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.errorRateThreshold = Math.min(1.0, Math.max(0.0, errorRateThreshold));
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, window.length / 2);
+        this.openNanos = Math.max(0L, openDuration.toNanos());
+    }
+
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAtNanos < openNanos) {
+                    rejected++;
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    rejected++;
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            logger.info("Panel API recovered; circuit closed.");
+            reset();
+            return;
+        }
+        consecutiveFailures = 0;
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+
+        consecutiveFailures++;
+        record(true);
+        boolean errorRateExceeded = windowCount >= minimumCalls
+                && (double) windowFailures / windowCount >= errorRateThreshold;
+        if (consecutiveFailures >= failureThreshold || errorRateExceeded) {
+            logger.warning("Panel API failing (" + consecutiveFailures + " consecutive, "
+                    + windowFailures + "/" + windowCount + " recent); circuit opened for "
+                    + Duration.ofNanos(openNanos).toMillis() + " ms.");
+            open();
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized long rejectedCalls() {
+        return rejected;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        probeInFlight = false;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        probeInFlight = false;
+        consecutiveFailures = 0;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
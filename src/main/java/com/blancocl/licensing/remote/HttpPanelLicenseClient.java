@@ -1,212 +1,374 @@
 package com.blancocl.licensing.remote;
 
 import com.blancocl.licensing.api.LicenseValidationResult;
+import com.blancocl.licensing.metrics.LatencyHistogram;
+import com.blancocl.licensing.metrics.LicenseMetrics;
 import com.blancocl.licensing.model.LicenseRecord;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
 public final class HttpPanelLicenseClient implements PanelLicenseClient {
-    private final JavaPlugin plugin;
+    private static final int MAX_DRAINED_BYTES = 8192;
+
+    private final Logger logger;
     private final HttpClient httpClient;
+    private final Executor executor;
     private final String baseUrl;
     private final String authHeaderName;
     private final String authHeaderValue;
-    private final String serverId;
+    private final PanelJsonCodec codec;
     private final Duration requestTimeout;
+    private final Duration minRequestTimeout;
+    private final Duration bodyTimeout;
+    private final CircuitBreaker circuitBreaker;
+    private final Map<String, AdaptiveTimeout> timeouts = new ConcurrentHashMap<>();
+    private final LicenseMetrics metrics;
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
     private final String validateEndpoint;
+    private final String validateBatchEndpoint;
     private final String issueEndpoint;
+    private final String issueBatchEndpoint;
     private final String revokeEndpoint;
     private final String getEndpoint;
+    private final String changesEndpoint;
+    private final String snapshotEndpoint;
+    private final SingleFlight<FlightKey, RemoteValidationResponse> validateFlights = new SingleFlight<>();
+    private final SingleFlight<FlightKey, Optional<LicenseRecord>> getFlights = new SingleFlight<>();
+    // Endpoints the panel answered with 404 or 405. A panel from before the batch routes has neither,
+    // so batches to a missing route are sent one item at a time until restart.
+    private final Set<String> missingRoutes = ConcurrentHashMap.newKeySet();
 
     public HttpPanelLicenseClient(
-            JavaPlugin plugin,
+            Logger logger,
             String baseUrl,
             String authHeaderName,
             String authHeaderValue,
             String serverId,
             int connectTimeoutMs,
             int requestTimeoutMs,
+            int minRequestTimeoutMs,
+            int bodyTimeoutMs,
             String validateEndpoint,
+            String validateBatchEndpoint,
             String issueEndpoint,
+            String issueBatchEndpoint,
             String revokeEndpoint,
-            String getEndpoint
+            String getEndpoint,
+            String changesEndpoint,
+            String snapshotEndpoint,
+            Executor executor,
+            CircuitBreaker circuitBreaker,
+            LicenseMetrics metrics
     ) {
-        this.plugin = plugin;
+        this.logger = logger;
         this.baseUrl = trimTrailingSlash(baseUrl);
         this.authHeaderName = authHeaderName;
         this.authHeaderValue = authHeaderValue;
-        this.serverId = serverId;
-        this.requestTimeout = Duration.ofMillis(Math.max(1000, requestTimeoutMs));
+        this.codec = new PanelJsonCodec(serverId);
+        this.requestTimeout = Duration.ofMillis(Math.max(1, requestTimeoutMs));
+        this.minRequestTimeout = Duration.ofMillis(Math.max(1, Math.min(minRequestTimeoutMs, requestTimeoutMs)));
+        this.bodyTimeout = Duration.ofMillis(Math.max(1, bodyTimeoutMs));
+        this.circuitBreaker = circuitBreaker;
+        this.metrics = metrics;
         this.validateEndpoint = validateEndpoint;
+        this.validateBatchEndpoint = validateBatchEndpoint;
         this.issueEndpoint = issueEndpoint;
+        this.issueBatchEndpoint = issueBatchEndpoint;
         this.revokeEndpoint = revokeEndpoint;
         this.getEndpoint = getEndpoint;
+        this.changesEndpoint = changesEndpoint;
+        this.snapshotEndpoint = snapshotEndpoint;
+        this.executor = executor;
         this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofMillis(Math.max(1000, connectTimeoutMs)))
+                .executor(executor)
+                .connectTimeout(Duration.ofMillis(Math.max(100, connectTimeoutMs)))
                 .build();
     }
 
     @Override
-    public RemoteValidationResponse validate(String pluginId, String key) {
+    public CompletableFuture<RemoteValidationResponse> validateAsync(String pluginId, String key) {
         if (isBlank(validateEndpoint)) {
-            return new RemoteValidationResponse(LicenseValidationResult.REMOTE_ERROR, null);
+            return CompletableFuture.completedFuture(new RemoteValidationResponse(LicenseValidationResult.REMOTE_ERROR, null));
         }
 
-        JsonObject body = new JsonObject();
-        body.addProperty("pluginId", pluginId);
-        body.addProperty("key", key);
-        body.addProperty("serverId", serverId);
+        return validateFlights.execute(
+                new FlightKey(validateEndpoint, pluginId, key),
+                () -> requestValidation(pluginId, key)
+        );
+    }
+
+    private CompletableFuture<RemoteValidationResponse> requestValidation(String pluginId, String key) {
+        return post(validateEndpoint, codec.validateRequest(pluginId, key),
+                stream -> Optional.of(codec.readValidation(stream)))
+                .thenApply(payload -> payload.orElseGet(() -> new RemoteValidationResponse(LicenseValidationResult.REMOTE_ERROR, null)));
+    }
 
-        Optional<JsonObject> payload = post(validateEndpoint, body);
-        if (payload.isEmpty()) {
-            return new RemoteValidationResponse(LicenseValidationResult.REMOTE_ERROR, null);
+    @Override
+    public CompletableFuture<Map<String, RemoteValidationResponse>> validateBatchAsync(Map<String, String> keysByPluginId) {
+        if (keysByPluginId.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of());
+        }
+        if (isBlank(validateBatchEndpoint) || missingRoutes.contains(validateBatchEndpoint)) {
+            return validateIndividually(keysByPluginId);
         }
 
-        JsonObject json = payload.get();
-        LicenseValidationResult result = parseResult(json.get("result"));
-        LicenseRecord record = parseRecord(json.getAsJsonObject("license"));
-        return new RemoteValidationResponse(result, record);
+        return post(validateBatchEndpoint, codec.validateBatchRequest(keysByPluginId),
+                stream -> Optional.of(codec.readValidationBatch(stream, keysByPluginId)))
+                .thenCompose(payload -> routeMissing(validateBatchEndpoint)
+                        ? validateIndividually(keysByPluginId)
+                        : CompletableFuture.completedFuture(payload.orElseGet(HashMap::new)));
+    }
+
+    private CompletableFuture<Map<String, RemoteValidationResponse>> validateIndividually(Map<String, String> keysByPluginId) {
+        Map<String, CompletableFuture<RemoteValidationResponse>> pending = new HashMap<>();
+        keysByPluginId.forEach((pluginId, key) -> pending.put(pluginId, validateAsync(pluginId, key)));
+
+        return CompletableFuture.allOf(pending.values().toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            Map<String, RemoteValidationResponse> results = new HashMap<>();
+            pending.forEach((pluginId, future) -> results.put(pluginId, future.join()));
+            return results;
+        });
     }
 
     @Override
-    public Optional<LicenseRecord> issue(String pluginId, String owner, int validDays) {
+    public CompletableFuture<Optional<LicenseRecord>> issueAsync(String pluginId, String owner, int validDays) {
         if (isBlank(issueEndpoint)) {
-            return Optional.empty();
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return post(issueEndpoint, codec.issueRequest(pluginId, owner, validDays), codec::readLicense);
+    }
+
+    @Override
+    public CompletableFuture<List<Optional<LicenseRecord>>> issueBatchAsync(String pluginId, List<String> owners, int validDays) {
+        if (owners.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        if (isBlank(issueBatchEndpoint) || missingRoutes.contains(issueBatchEndpoint)) {
+            return issueIndividually(pluginId, owners, validDays);
         }
 
-        JsonObject body = new JsonObject();
-        body.addProperty("pluginId", pluginId);
-        body.addProperty("owner", owner);
-        body.addProperty("validDays", validDays);
-        body.addProperty("serverId", serverId);
+        // A missing route issued nothing, so the owners can safely be issued one by one.
+        return post(issueBatchEndpoint, codec.issueBatchRequest(pluginId, owners, validDays),
+                stream -> Optional.of(codec.readLicenseBatch(stream, owners.size())))
+                .thenCompose(payload -> routeMissing(issueBatchEndpoint)
+                        ? issueIndividually(pluginId, owners, validDays)
+                        : CompletableFuture.completedFuture(payload.orElseGet(() -> Collections.nCopies(owners.size(), Optional.empty()))));
+    }
 
-        Optional<JsonObject> payload = post(issueEndpoint, body);
-        if (payload.isEmpty()) {
-            return Optional.empty();
+    private CompletableFuture<List<Optional<LicenseRecord>>> issueIndividually(String pluginId, List<String> owners, int validDays) {
+        List<CompletableFuture<Optional<LicenseRecord>>> pending = new ArrayList<>(owners.size());
+        for (String owner : owners) {
+            pending.add(issueAsync(pluginId, owner, validDays));
         }
 
-        return Optional.ofNullable(parseRecord(payload.get().getAsJsonObject("license")));
+        return CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            List<Optional<LicenseRecord>> results = new ArrayList<>(pending.size());
+            pending.forEach(future -> results.add(future.join()));
+            return results;
+        });
     }
 
     @Override
-    public boolean revoke(String key) {
+    public CompletableFuture<Boolean> revokeAsync(String key) {
         if (isBlank(revokeEndpoint)) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
-        JsonObject body = new JsonObject();
-        body.addProperty("key", key);
-        body.addProperty("serverId", serverId);
-
-        Optional<JsonObject> payload = post(revokeEndpoint, body);
-        return payload.map(json -> json.has("success") && json.get("success").getAsBoolean()).orElse(false);
+        return post(revokeEndpoint, codec.keyRequest(key), stream -> Optional.of(codec.readSuccess(stream)))
+                .thenApply(payload -> payload.orElse(false));
     }
 
     @Override
-    public Optional<LicenseRecord> get(String key) {
+    public CompletableFuture<Optional<LicenseRecord>> getAsync(String key) {
         if (isBlank(getEndpoint)) {
-            return Optional.empty();
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return getFlights.execute(new FlightKey(getEndpoint, "", key), () -> requestRecord(key));
+    }
+
+    @Override
+    public CompletableFuture<Optional<ChangeFeedPage>> fetchChangesAsync(String cursor, int limit) {
+        if (isBlank(changesEndpoint)) {
+            return CompletableFuture.completedFuture(Optional.empty());
         }
 
-        JsonObject body = new JsonObject();
-        body.addProperty("key", key);
-        body.addProperty("serverId", serverId);
+        return post(changesEndpoint, codec.pageRequest(cursor, limit), codec::readChangeFeedPage);
+    }
+
+    @Override
+    public CompletableFuture<Optional<SnapshotPage>> fetchSnapshotAsync(
+            String cursor,
+            int pageSize,
+            int batchSize,
+            Consumer<List<LicenseRecord>> batchSink
+    ) {
+        if (isBlank(snapshotEndpoint)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return exchange(snapshotEndpoint, codec.pageRequest(cursor, pageSize), null,
+                stream -> codec.readSnapshotPage(stream, Math.max(1, batchSize), batchSink));
+    }
+
+    public Map<String, SingleFlight.SingleFlightStats> coalescingStats() {
+        return Map.of(
+                "validate", validateFlights.stats(),
+                "get", getFlights.stats()
+        );
+    }
+
+    private CompletableFuture<Optional<LicenseRecord>> requestRecord(String key) {
+        return post(getEndpoint, codec.keyRequest(key), codec::readLicense);
+    }
 
-        Optional<JsonObject> payload = post(getEndpoint, body);
-        if (payload.isEmpty()) {
-            return Optional.empty();
+    private boolean routeMissing(String endpoint) {
+        if (!missingRoutes.contains(endpoint)) {
+            return false;
         }
+        logger.warning("Panel has no " + endpoint + " route; sending one request per item instead until restart.");
+        return true;
+    }
 
-        return Optional.ofNullable(parseRecord(payload.get().getAsJsonObject("license")));
+    private <T> CompletableFuture<Optional<T>> post(String endpoint, byte[] body, ResponseReader<T> reader) {
+        AdaptiveTimeout timeout = timeouts.computeIfAbsent(endpoint,
+                ignored -> new AdaptiveTimeout(minRequestTimeout, requestTimeout));
+        return exchange(endpoint, body, timeout, reader);
     }
 
-    private Optional<JsonObject> post(String endpoint, JsonObject body) {
+    private <T> CompletableFuture<Optional<T>> exchange(
+            String endpoint,
+            byte[] body,
+            AdaptiveTimeout timeout,
+            ResponseReader<T> reader
+    ) {
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(baseUrl + normalizeEndpoint(endpoint)))
-                .timeout(requestTimeout)
+                .timeout(timeout == null ? requestTimeout : timeout.current())
                 .header("Content-Type", "application/json")
                 .header(authHeaderName, authHeaderValue)
-                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
                 .build();
 
-        try {
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (!circuitBreaker.tryAcquire()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        LatencyHistogram latency = latencies.computeIfAbsent(endpoint, ignored -> metrics.histogram("panel" + normalizeEndpoint(endpoint)));
+        long startedAt = System.nanoTime();
+        // Bodies are read with blocking calls, and a snapshot page also stores its batches while it
+        // is read, so that work runs on the IO executor rather than on the thread completing the send.
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .handleAsync((response, error) -> {
+                    latency.recordSince(startedAt);
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        if (cause instanceof HttpTimeoutException && timeout != null) {
+                            timeout.recordTimeout();
+                        }
+                        circuitBreaker.onFailure();
+                        logger.warning("Panel API call failed: " + cause.getMessage());
+                        return Optional.empty();
+                    }
+
+                    // A call only counts as a success once its body has been read, so a panel that
+                    // sends headers and then stalls trips the breaker like any other failure.
+                    long headersNanos = System.nanoTime() - startedAt;
+                    Optional<T> result;
+                    try {
+                        result = readResponse(endpoint, response, reader);
+                    } catch (IOException | RuntimeException ex) {
+                        circuitBreaker.onFailure();
+                        logger.warning("Panel API " + endpoint + " returned an unreadable body: " + ex.getMessage());
+                        return Optional.empty();
+                    }
+                    if (response.statusCode() >= 500) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onSuccess();
+                        if (timeout != null) {
+                            timeout.recordSuccess(headersNanos);
+                        }
+                    }
+                    return result;
+                }, executor);
+    }
+
+    // The request timeout only covers the response headers, so the body has its own deadline. When
+    // it passes, the stream is closed, which ends a blocked read.
+    private <T> Optional<T> readResponse(
+            String endpoint,
+            HttpResponse<InputStream> response,
+            ResponseReader<T> reader
+    ) throws IOException {
+        InputStream stream = response.body();
+        CompletableFuture<Void> reading = new CompletableFuture<>();
+        reading.orTimeout(bodyTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        closeQuietly(stream);
+                    }
+                });
+        try (stream) {
             if (response.statusCode() < 200 || response.statusCode() >= 300) {
-                plugin.getLogger().warning("Panel API " + endpoint + " returned " + response.statusCode());
+                if (response.statusCode() == 404 || response.statusCode() == 405) {
+                    missingRoutes.add(endpoint);
+                }
+                logger.warning("Panel API " + endpoint + " returned " + response.statusCode());
                 return Optional.empty();
             }
-
-            JsonElement parsed = JsonParser.parseString(response.body());
-            if (!parsed.isJsonObject()) {
-                return Optional.empty();
+            Optional<T> result = reader.read(stream);
+            // Consume trailing whitespace so the connection can be reused. A longer tail is left to
+            // close(), which gives up the connection instead of reading on.
+            byte[] discard = new byte[512];
+            int drained = 0;
+            int read;
+            while (drained < MAX_DRAINED_BYTES && (read = stream.read(discard)) >= 0) {
+                drained += read;
             }
-            return Optional.of(parsed.getAsJsonObject());
-        } catch (IOException | InterruptedException ex) {
-            if (ex instanceof InterruptedException) {
-                Thread.currentThread().interrupt();
+            return result;
+        } catch (IOException | RuntimeException ex) {
+            if (reading.isCompletedExceptionally()) {
+                throw new IOException("body was not read within " + bodyTimeout.toMillis() + " ms", ex);
             }
-            plugin.getLogger().warning("Panel API call failed: " + ex.getMessage());
-            return Optional.empty();
+            throw ex;
+        } finally {
+            reading.complete(null);
         }
     }
 
-    private LicenseValidationResult parseResult(JsonElement element) {
-        if (element == null || !element.isJsonPrimitive()) {
-            return LicenseValidationResult.REMOTE_ERROR;
-        }
-        String raw = element.getAsString();
+    private static void closeQuietly(InputStream stream) {
         try {
-            return LicenseValidationResult.valueOf(raw.toUpperCase(Locale.ROOT));
-        } catch (IllegalArgumentException ignored) {
-            return LicenseValidationResult.REMOTE_ERROR;
+            stream.close();
+        } catch (IOException ignored) {
+            // The read it interrupts reports the failure.
         }
     }
 
-    private LicenseRecord parseRecord(JsonObject object) {
-        if (object == null) {
-            return null;
-        }
-
-        String key = getString(object, "key", "");
-        String pluginId = getString(object, "pluginId", "");
-        String owner = getString(object, "owner", "");
-        Instant issuedAt = Instant.ofEpochSecond(getLong(object, "issuedAt", Instant.now().getEpochSecond()));
-        long expiresAtEpoch = getLong(object, "expiresAt", -1L);
-        Instant expiresAt = expiresAtEpoch < 0 ? null : Instant.ofEpochSecond(expiresAtEpoch);
-        boolean revoked = getBoolean(object, "revoked", false);
-
-        if (key.isBlank() || pluginId.isBlank()) {
-            return null;
-        }
-
-        return new LicenseRecord(key, pluginId, owner, issuedAt, expiresAt, revoked);
-    }
-
-    private String getString(JsonObject object, String field, String def) {
-        JsonElement value = object.get(field);
-        return value == null || value.isJsonNull() ? def : value.getAsString();
-    }
-
-    private long getLong(JsonObject object, String field, long def) {
-        JsonElement value = object.get(field);
-        return value == null || value.isJsonNull() ? def : value.getAsLong();
-    }
-
-    private boolean getBoolean(JsonObject object, String field, boolean def) {
-        JsonElement value = object.get(field);
-        return value == null || value.isJsonNull() ? def : value.getAsBoolean();
+    public CircuitBreaker.State circuitState() {
+        return circuitBreaker.state();
     }
 
     private String trimTrailingSlash(String input) {
@@ -229,4 +391,12 @@ public final class HttpPanelLicenseClient implements PanelLicenseClient {
     private boolean isBlank(String value) {
         return value == null || value.isBlank();
     }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        Optional<T> read(InputStream body) throws IOException;
+    }
+
+    private record FlightKey(String endpoint, String pluginId, String key) {
+    }
 }
@@ -0,0 +1,136 @@
+package com.blancocl.licensing.remote;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Minimal JSON writer that encodes straight to UTF-8 bytes. Callers are expected to produce
+// well-formed documents; it only tracks whether a separator is due.
+final class JsonBytesWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int size;
+    private boolean needsComma;
+
+    JsonBytesWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    JsonBytesWriter beginObject() {
+        separator();
+        append((byte) '{');
+        needsComma = false;
+        return this;
+    }
+
+    JsonBytesWriter endObject() {
+        append((byte) '}');
+        needsComma = true;
+        return this;
+    }
+
+    JsonBytesWriter beginArray(String name) {
+        name(name);
+        append((byte) '[');
+        needsComma = false;
+        return this;
+    }
+
+    JsonBytesWriter endArray() {
+        append((byte) ']');
+        needsComma = true;
+        return this;
+    }
+
+    JsonBytesWriter field(String name, String value) {
+        name(name);
+        if (value == null) {
+            appendAscii("null");
+        } else {
+            string(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    JsonBytesWriter field(String name, long value) {
+        name(name);
+        appendAscii(Long.toString(value));
+        needsComma = true;
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void name(String name) {
+        separator();
+        string(name);
+        append((byte) ':');
+    }
+
+    private void separator() {
+        if (needsComma) {
+            append((byte) ',');
+            needsComma = false;
+        }
+    }
+
+    private void string(String value) {
+        ensureCapacity(value.length() + 2);
+        append((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    append((byte) '\\');
+                    append((byte) c);
+                } else if (c < 0x20) {
+                    appendAscii("\\u00");
+                    append(HEX[c >> 4]);
+                    append(HEX[c & 0xF]);
+                } else {
+                    append((byte) c);
+                }
+            } else if (c < 0x800) {
+                append((byte) (0xC0 | (c >> 6)));
+                append((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                append((byte) (0xF0 | (codePoint >> 18)));
+                append((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                append((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                append((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                append((byte) '?');
+            } else {
+                append((byte) (0xE0 | (c >> 12)));
+                append((byte) (0x80 | ((c >> 6) & 0x3F)));
+                append((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        append((byte) '"');
+    }
+
+    private void appendAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void append(byte value) {
+        if (size == buffer.length) {
+            ensureCapacity(1);
+        }
+        buffer[size++] = value;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+}
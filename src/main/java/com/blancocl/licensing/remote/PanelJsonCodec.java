@@ -0,0 +1,421 @@
+package com.blancocl.licensing.remote;
+
+import com.blancocl.licensing.api.LicenseValidationResult;
+import com.blancocl.licensing.model.LicenseRecord;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Encodes panel requests directly to UTF-8 bytes and decodes responses with a streaming reader,
+// without building JsonObject trees or buffering bodies as Strings.
+public final class PanelJsonCodec {
+    private static final int READ_BUFFER_BYTES = 256;
+
+    private final String serverId;
+
+    public PanelJsonCodec(String serverId) {
+        this.serverId = serverId;
+    }
+
+    public byte[] validateRequest(String pluginId, String key) {
+        return new JsonBytesWriter(64 + key.length())
+                .beginObject()
+                .field("pluginId", pluginId)
+                .field("key", key)
+                .field("serverId", serverId)
+                .endObject()
+                .toByteArray();
+    }
+
+    public byte[] validateBatchRequest(Map<String, String> keysByPluginId) {
+        JsonBytesWriter writer = new JsonBytesWriter(64 + keysByPluginId.size() * 64)
+                .beginObject()
+                .beginArray("items");
+        for (Map.Entry<String, String> entry : keysByPluginId.entrySet()) {
+            writer.beginObject()
+                    .field("pluginId", entry.getKey())
+                    .field("key", entry.getValue())
+                    .endObject();
+        }
+        return writer.endArray()
+                .field("serverId", serverId)
+                .endObject()
+                .toByteArray();
+    }
+
+    public byte[] issueRequest(String pluginId, String owner, int validDays) {
+        return new JsonBytesWriter(96)
+                .beginObject()
+                .field("pluginId", pluginId)
+                .field("owner", owner)
+                .field("validDays", validDays)
+                .field("serverId", serverId)
+                .endObject()
+                .toByteArray();
+    }
+
+    public byte[] issueBatchRequest(String pluginId, List<String> owners, int validDays) {
+        JsonBytesWriter writer = new JsonBytesWriter(96 + owners.size() * 32)
+                .beginObject()
+                .field("pluginId", pluginId)
+                .field("validDays", validDays)
+                .beginArray("items");
+        for (String owner : owners) {
+            writer.beginObject()
+                    .field("owner", owner)
+                    .endObject();
+        }
+        return writer.endArray()
+                .field("serverId", serverId)
+                .endObject()
+                .toByteArray();
+    }
+
+    public byte[] keyRequest(String key) {
+        return new JsonBytesWriter(32 + key.length())
+                .beginObject()
+                .field("key", key)
+                .field("serverId", serverId)
+                .endObject()
+                .toByteArray();
+    }
+
+    public byte[] pageRequest(String cursor, int limit) {
+        JsonBytesWriter writer = new JsonBytesWriter(64).beginObject();
+        if (cursor != null) {
+            writer.field("cursor", cursor);
+        }
+        return writer.field("limit", limit)
+                .field("serverId", serverId)
+                .endObject()
+                .toByteArray();
+    }
+
+    // {"result":"VALID","license":{...}}
+    public RemoteValidationResponse readValidation(InputStream stream) throws IOException {
+        JsonReader reader = open(stream);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return new RemoteValidationResponse(LicenseValidationResult.REMOTE_ERROR, null);
+        }
+
+        LicenseValidationResult result = LicenseValidationResult.REMOTE_ERROR;
+        LicenseRecord record = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "result" -> result = readResult(reader);
+                case "license" -> record = readRecord(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new RemoteValidationResponse(result, record);
+    }
+
+    // {"results":[{"pluginId","key","result","license"}]}; entries that do not match a requested
+    // pluginId/key pair are ignored.
+    public Map<String, RemoteValidationResponse> readValidationBatch(InputStream stream, Map<String, String> keysByPluginId) throws IOException {
+        Map<String, RemoteValidationResponse> results = new HashMap<>();
+        JsonReader reader = open(stream);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return results;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("results") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                readBatchItem(reader, keysByPluginId, results);
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return results;
+    }
+
+    // {"license":{...}}
+    public Optional<LicenseRecord> readLicense(InputStream stream) throws IOException {
+        JsonReader reader = open(stream);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return Optional.empty();
+        }
+
+        LicenseRecord record = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("license")) {
+                record = readRecord(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return Optional.ofNullable(record);
+    }
+
+    // {"licenses":[{...},null,...]} in request order; null or missing entries were not issued.
+    public List<Optional<LicenseRecord>> readLicenseBatch(InputStream stream, int expected) throws IOException {
+        List<Optional<LicenseRecord>> licenses = new ArrayList<>(expected);
+        JsonReader reader = open(stream);
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("licenses") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    LicenseRecord record = readRecord(reader);
+                    if (licenses.size() < expected) {
+                        licenses.add(Optional.ofNullable(record));
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        while (licenses.size() < expected) {
+            licenses.add(Optional.empty());
+        }
+        return licenses;
+    }
+
+    // {"success":true}
+    public boolean readSuccess(InputStream stream) throws IOException {
+        JsonReader reader = open(stream);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return false;
+        }
+
+        boolean success = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("success") && reader.peek() == JsonToken.BOOLEAN) {
+                success = reader.nextBoolean();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return success;
+    }
+
+    // {"changes":[{...}],"cursor":"...","hasMore":false}
+    public Optional<ChangeFeedPage> readChangeFeedPage(InputStream stream) throws IOException {
+        JsonReader reader = open(stream);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return Optional.empty();
+        }
+
+        List<LicenseRecord> records = new ArrayList<>();
+        String cursor = null;
+        boolean hasMore = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "changes" -> readRecords(reader, records::add);
+                case "cursor" -> cursor = nextNullableString(reader);
+                case "hasMore" -> hasMore = nextBoolean(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return Optional.of(new ChangeFeedPage(records, cursor, hasMore));
+    }
+
+    // Streams the "licenses" array and hands records to the sink in batches, so a page is never
+    // held in memory as a whole.
+    public Optional<SnapshotPage> readSnapshotPage(InputStream stream, int batchSize, Consumer<List<LicenseRecord>> batchSink) throws IOException {
+        JsonReader reader = open(stream);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return Optional.empty();
+        }
+
+        String cursor = null;
+        String changeCursor = null;
+        boolean hasMore = false;
+        int count = 0;
+        List<LicenseRecord> batch = new ArrayList<>(batchSize);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("licenses") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    LicenseRecord record = readRecord(reader);
+                    if (record == null) {
+                        continue;
+                    }
+                    batch.add(record);
+                    count++;
+                    if (batch.size() >= batchSize) {
+                        batchSink.accept(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                reader.endArray();
+                continue;
+            }
+            switch (name) {
+                case "cursor" -> cursor = nextNullableString(reader);
+                case "changeCursor" -> changeCursor = nextNullableString(reader);
+                case "hasMore" -> hasMore = nextBoolean(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!batch.isEmpty()) {
+            batchSink.accept(batch);
+        }
+        return Optional.of(new SnapshotPage(count, cursor, hasMore, changeCursor));
+    }
+
+    private JsonReader open(InputStream stream) {
+        return new JsonReader(new Utf8StreamReader(stream, READ_BUFFER_BYTES));
+    }
+
+    private void readBatchItem(JsonReader reader, Map<String, String> keysByPluginId, Map<String, RemoteValidationResponse> results) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        String pluginId = "";
+        String key = "";
+        LicenseValidationResult result = LicenseValidationResult.REMOTE_ERROR;
+        LicenseRecord record = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "pluginId" -> pluginId = nextString(reader, "");
+                case "key" -> key = nextString(reader, "");
+                case "result" -> result = readResult(reader);
+                case "license" -> record = readRecord(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (key.equals(keysByPluginId.get(pluginId))) {
+            results.put(pluginId, new RemoteValidationResponse(result, record));
+        }
+    }
+
+    private void readRecords(JsonReader reader, Consumer<LicenseRecord> sink) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            LicenseRecord record = readRecord(reader);
+            if (record != null) {
+                sink.accept(record);
+            }
+        }
+        reader.endArray();
+    }
+
+    private LicenseRecord readRecord(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String key = "";
+        String pluginId = "";
+        String owner = "";
+        long issuedAtEpoch = Long.MIN_VALUE;
+        long expiresAtEpoch = -1L;
+        boolean revoked = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "key" -> key = nextString(reader, "");
+                case "pluginId" -> pluginId = nextString(reader, "");
+                case "owner" -> owner = nextString(reader, "");
+                case "issuedAt" -> issuedAtEpoch = nextLong(reader, Long.MIN_VALUE);
+                case "expiresAt" -> expiresAtEpoch = nextLong(reader, -1L);
+                case "revoked" -> revoked = nextBoolean(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (key.isBlank() || pluginId.isBlank()) {
+            return null;
+        }
+        Instant issuedAt = issuedAtEpoch == Long.MIN_VALUE ? Instant.ofEpochSecond(Instant.now().getEpochSecond()) : Instant.ofEpochSecond(issuedAtEpoch);
+        Instant expiresAt = expiresAtEpoch < 0 ? null : Instant.ofEpochSecond(expiresAtEpoch);
+        return new LicenseRecord(key, pluginId, owner, issuedAt, expiresAt, revoked);
+    }
+
+    private LicenseValidationResult readResult(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER && token != JsonToken.BOOLEAN) {
+            reader.skipValue();
+            return LicenseValidationResult.REMOTE_ERROR;
+        }
+        String raw = token == JsonToken.BOOLEAN ? String.valueOf(reader.nextBoolean()) : reader.nextString();
+        try {
+            return LicenseValidationResult.valueOf(raw.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ignored) {
+            return LicenseValidationResult.REMOTE_ERROR;
+        }
+    }
+
+    private String nextString(JsonReader reader, String def) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return String.valueOf(reader.nextBoolean());
+        }
+        reader.skipValue();
+        return def;
+    }
+
+    private String nextNullableString(JsonReader reader) throws IOException {
+        return nextString(reader, null);
+    }
+
+    private long nextLong(JsonReader reader, long def) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            return reader.nextLong();
+        }
+        reader.skipValue();
+        return def;
+    }
+
+    private boolean nextBoolean(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(reader.nextString());
+        }
+        reader.skipValue();
+        return false;
+    }
+}
@@ -2,14 +2,69 @@ package com.blancocl.licensing.remote;
 
 import com.blancocl.licensing.model.LicenseRecord;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface PanelLicenseClient {
-    RemoteValidationResponse validate(String pluginId, String key);
+    CompletableFuture<RemoteValidationResponse> validateAsync(String pluginId, String key);
 
-    Optional<LicenseRecord> issue(String pluginId, String owner, int validDays);
+    CompletableFuture<Map<String, RemoteValidationResponse>> validateBatchAsync(Map<String, String> keysByPluginId);
 
-    boolean revoke(String key);
+    CompletableFuture<Optional<LicenseRecord>> issueAsync(String pluginId, String owner, int validDays);
 
-    Optional<LicenseRecord> get(String key);
+    // One entry per owner, in order; empty where the panel did not issue a license.
+    CompletableFuture<List<Optional<LicenseRecord>>> issueBatchAsync(String pluginId, List<String> owners, int validDays);
+
+    CompletableFuture<Boolean> revokeAsync(String key);
+
+    CompletableFuture<Optional<LicenseRecord>> getAsync(String key);
+
+    CompletableFuture<Optional<ChangeFeedPage>> fetchChangesAsync(String cursor, int limit);
+
+    CompletableFuture<Optional<SnapshotPage>> fetchSnapshotAsync(
+            String cursor,
+            int pageSize,
+            int batchSize,
+            Consumer<List<LicenseRecord>> batchSink
+    );
+
+    default RemoteValidationResponse validate(String pluginId, String key) {
+        return validateAsync(pluginId, key).join();
+    }
+
+    default Map<String, RemoteValidationResponse> validateBatch(Map<String, String> keysByPluginId) {
+        return validateBatchAsync(keysByPluginId).join();
+    }
+
+    default Optional<LicenseRecord> issue(String pluginId, String owner, int validDays) {
+        return issueAsync(pluginId, owner, validDays).join();
+    }
+
+    default List<Optional<LicenseRecord>> issueBatch(String pluginId, List<String> owners, int validDays) {
+        return issueBatchAsync(pluginId, owners, validDays).join();
+    }
+
+    default boolean revoke(String key) {
+        return revokeAsync(key).join();
+    }
+
+    default Optional<LicenseRecord> get(String key) {
+        return getAsync(key).join();
+    }
+
+    default Optional<ChangeFeedPage> fetchChanges(String cursor, int limit) {
+        return fetchChangesAsync(cursor, limit).join();
+    }
+
+    default Optional<SnapshotPage> fetchSnapshot(
+            String cursor,
+            int pageSize,
+            int batchSize,
+            Consumer<List<LicenseRecord>> batchSink
+    ) {
+        return fetchSnapshotAsync(cursor, pageSize, batchSize, batchSink).join();
+    }
 }
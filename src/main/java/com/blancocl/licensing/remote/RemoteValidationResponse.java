@@ -3,5 +3,10 @@ package com.blancocl.licensing.remote;
 import com.blancocl.licensing.api.LicenseValidationResult;
 import com.blancocl.licensing.model.LicenseRecord;
 
+import java.util.Optional;
+
 public record RemoteValidationResponse(LicenseValidationResult result, LicenseRecord record) {
+    public Optional<LicenseRecord> optionalRecord() {
+        return Optional.ofNullable(record);
+    }
 }
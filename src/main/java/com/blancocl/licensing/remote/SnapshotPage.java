@@ -0,0 +1,4 @@
+package com.blancocl.licensing.remote;
+
+public record SnapshotPage(int records, String cursor, boolean hasMore, String changeCursor) {
+}
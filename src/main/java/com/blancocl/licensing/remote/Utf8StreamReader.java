@@ -0,0 +1,118 @@
+package com.blancocl.licensing.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+// UTF-8 decoding Reader with a small fixed buffer. InputStreamReader allocates an 8 KiB byte
+// buffer plus a CharsetDecoder per instance, which dominates allocation for small panel replies.
+final class Utf8StreamReader extends Reader {
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+    private char pendingLowSurrogate;
+
+    Utf8StreamReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(8, bufferSize)];
+    }
+
+    @Override
+    public int read(char[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        int written = 0;
+        if (pendingLowSurrogate != 0) {
+            target[offset + written++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+
+        while (written < length) {
+            if (limit - position < 4 && !endOfStream) {
+                fill();
+            }
+            if (position >= limit) {
+                break;
+            }
+
+            int lead = buffer[position] & 0xFF;
+            if (lead < 0x80) {
+                target[offset + written++] = (char) lead;
+                position++;
+                continue;
+            }
+
+            int needed = lead >= 0xF0 ? 3 : lead >= 0xE0 ? 2 : lead >= 0xC0 ? 1 : -1;
+            if (needed < 0 || lead > 0xF4) {
+                target[offset + written++] = REPLACEMENT;
+                position++;
+                continue;
+            }
+            if (limit - position <= needed) {
+                // Truncated sequence at the end of the stream.
+                target[offset + written++] = REPLACEMENT;
+                position = limit;
+                continue;
+            }
+
+            int codePoint = lead & (0x3F >> needed);
+            boolean malformed = false;
+            for (int i = 1; i <= needed; i++) {
+                int next = buffer[position + i] & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    malformed = true;
+                    break;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            if (malformed) {
+                target[offset + written++] = REPLACEMENT;
+                position++;
+                continue;
+            }
+            position += needed + 1;
+
+            if (codePoint < 0x10000) {
+                target[offset + written++] = (char) codePoint;
+            } else {
+                target[offset + written++] = Character.highSurrogate(codePoint);
+                if (written < length) {
+                    target[offset + written++] = Character.lowSurrogate(codePoint);
+                } else {
+                    pendingLowSurrogate = Character.lowSurrogate(codePoint);
+                }
+            }
+        }
+        return written == 0 ? -1 : written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Moves any partial sequence to the front and reads until at least four bytes are buffered or
+    // the stream ends, so a complete code point is always available to the decoder.
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining > 0 && position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+        while (limit < 4) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfStream = true;
+                return;
+            }
+            limit += read;
+        }
+    }
+}
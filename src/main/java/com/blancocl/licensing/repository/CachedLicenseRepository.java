@@ -0,0 +1,203 @@
+package com.blancocl.licensing.repository;
+
+import com.blancocl.licensing.api.RecordCacheStats;
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Keeps frequently read license records in memory in front of any repository. Writes go to the
+// delegate first and then update the cached copy, under a per-key lock so two writes to one key
+// cannot leave the older record cached. Listings, expiry pages and key scans always go to the
+// delegate and do not populate the cache, so a scan cannot flush it. Keys that are not stored
+// are not cached; the key filter answers those.
+public final class CachedLicenseRepository implements LicenseRepository {
+    private static final int WRITE_LOCK_STRIPES = 64;
+
+    private final Logger logger;
+    private final LicenseRepository delegate;
+    private final RecordCache cache;
+    private final StripedLocks writeLocks = new StripedLocks(WRITE_LOCK_STRIPES);
+
+    public CachedLicenseRepository(Logger logger, LicenseRepository delegate, RecordCacheSettings settings) {
+        this.logger = logger;
+        this.delegate = delegate;
+        this.cache = new RecordCache(settings);
+    }
+
+    @Override
+    public void upsert(LicenseRecord record) {
+        writeLocks.forKey(record.key()).lock();
+        try {
+            delegate.upsert(record);
+            cache.update(record);
+        } finally {
+            writeLocks.forKey(record.key()).unlock();
+        }
+    }
+
+    // Like insertAll, a failed write may have stored only some of the records, so their keys are
+    // dropped instead of cached.
+    @Override
+    public boolean upsertAll(Collection<LicenseRecord> records) {
+        int[] held = writeLocks.lockAll(keys(records));
+        try {
+            boolean stored = delegate.upsertAll(records);
+            for (LicenseRecord record : records) {
+                if (stored) {
+                    cache.update(record);
+                } else {
+                    cache.invalidate(record.key());
+                }
+            }
+            return stored;
+        } finally {
+            writeLocks.unlockAll(held);
+        }
+    }
+
+    // A failed insert may have stored some of the records, so their keys are dropped rather than
+    // trusted either way.
+    @Override
+    public boolean insertAll(Collection<LicenseRecord> records) {
+        int[] held = writeLocks.lockAll(keys(records));
+        try {
+            boolean inserted = delegate.insertAll(records);
+            for (LicenseRecord record : records) {
+                if (inserted) {
+                    cache.update(record);
+                } else {
+                    cache.invalidate(record.key());
+                }
+            }
+            return inserted;
+        } finally {
+            writeLocks.unlockAll(held);
+        }
+    }
+
+    @Override
+    public Optional<LicenseRecord> find(String key) {
+        LicenseRecord cached = cache.get(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long stamp = cache.stamp(key);
+        Optional<LicenseRecord> found = delegate.find(key);
+        found.ifPresent(record -> cache.load(record, stamp));
+        return found;
+    }
+
+    @Override
+    public Map<String, LicenseRecord> findAll(Collection<String> keys) {
+        Map<String, LicenseRecord> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        Map<String, Long> stamps = new HashMap<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            LicenseRecord cached = cache.get(key);
+            if (cached != null) {
+                found.put(key, cached);
+            } else {
+                missing.add(key);
+                stamps.put(key, cache.stamp(key));
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        Map<String, LicenseRecord> loaded = delegate.findAll(missing);
+        for (Map.Entry<String, LicenseRecord> entry : loaded.entrySet()) {
+            Long stamp = stamps.get(entry.getKey());
+            if (stamp != null) {
+                cache.load(entry.getValue(), stamp);
+            }
+        }
+        found.putAll(loaded);
+        return found;
+    }
+
+    // False means the key is unknown or was already revoked; either way the cached copy, if any,
+    // is dropped rather than guessed at.
+    @Override
+    public boolean revoke(String key) {
+        writeLocks.forKey(key).lock();
+        try {
+            boolean revoked = delegate.revoke(key);
+            if (revoked) {
+                cache.revoked(key);
+            } else {
+                cache.invalidate(key);
+            }
+            return revoked;
+        } finally {
+            writeLocks.forKey(key).unlock();
+        }
+    }
+
+    @Override
+    public List<LicenseRecord> findExpiring(Instant after, String afterKey, Instant until, int limit) {
+        return delegate.findExpiring(after, afterKey, until, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByPlugin(String pluginId, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return delegate.findPageByPlugin(pluginId, status, now, afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByOwner(String owner, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return delegate.findPageByOwner(owner, status, now, afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPurgeable(Instant cutoff, int limit) {
+        return delegate.findPurgeable(cutoff, limit);
+    }
+
+    @Override
+    public int delete(Collection<String> keys) {
+        int[] held = writeLocks.lockAll(keys);
+        try {
+            int deleted = delegate.delete(keys);
+            for (String key : keys) {
+                cache.invalidate(key);
+            }
+            return deleted;
+        } finally {
+            writeLocks.unlockAll(held);
+        }
+    }
+
+    @Override
+    public boolean forEachKey(Consumer<String> action) {
+        return delegate.forEachKey(action);
+    }
+
+    public RecordCacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void close() {
+        logger.info("Closing license record cache: " + stats());
+        delegate.close();
+    }
+
+    private static List<String> keys(Collection<LicenseRecord> records) {
+        List<String> keys = new ArrayList<>(records.size());
+        for (LicenseRecord record : records) {
+            keys.add(record.key());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,776 @@
+package com.blancocl.licensing.repository;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.ObjLongConsumer;
+
+// License records packed into parallel primitive arrays. Keys live as UTF-8 in one byte arena,
+// plugin ids and owners are interned into small string tables, and lookups go through an
+// open-addressing table of record slots. A record costs roughly its key length plus ~50 bytes,
+// against several hundred for a LicenseRecord in a ConcurrentHashMap. LicenseRecord objects are
+// only built when a caller asks for one. Removing a record moves the last record into its slot; the
+// key bytes it leaves behind are reclaimed once they make up half of the arena.
+//
+// Secondary indexes group slots by plugin id and by owner in key order, and keep every slot in
+// expiry order, so listings and expiry scans start with a binary search instead of a full scan.
+// Each costs about 8 bytes per record.
+public final class CompactLicenseIndex {
+    private static final long NO_EXPIRY = Long.MIN_VALUE;
+    public static final long NOT_REVOKED = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final StringTable pluginIds = new StringTable();
+    private final StringTable owners = new StringTable();
+    private final SlotGroups byPluginId = new SlotGroups(this::compareKeys);
+    private final SlotGroups byOwner = new SlotGroups(this::compareKeys);
+    // A single group holding every slot.
+    private final SlotGroups byExpiry = new SlotGroups(this::compareExpiry);
+
+    // Per-record columns, indexed by slot.
+    private long[] keyRefs;
+    private int[] keyHashes;
+    private long[] issuedAt;
+    private long[] expiresAt;
+    private long[] revokedAt;
+    private int[] pluginIdRefs;
+    private int[] ownerRefs;
+    private long[] revokedBits;
+    private int size;
+
+    private byte[] keyArena;
+    private int arenaSize;
+    private int arenaGarbage;
+
+    // Where the last purgeable scan stopped, for the cutoff it ran with.
+    private volatile int purgeCursor;
+    private volatile long purgeCutoff = Long.MIN_VALUE;
+
+    // Open-addressing table holding slot + 1; 0 marks an empty bucket.
+    private int[] table;
+
+    public CompactLicenseIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public CompactLicenseIndex(int expectedRecords) {
+        int capacity = Math.max(16, expectedRecords);
+        this.keyRefs = new long[capacity];
+        this.keyHashes = new int[capacity];
+        this.issuedAt = new long[capacity];
+        this.expiresAt = new long[capacity];
+        this.revokedAt = new long[capacity];
+        this.pluginIdRefs = new int[capacity];
+        this.ownerRefs = new int[capacity];
+        this.revokedBits = new long[(capacity + 63) >>> 6];
+        this.keyArena = new byte[capacity * 32];
+        this.table = new int[tableSizeFor(capacity)];
+        byPluginId.grow(capacity);
+        byOwner.grow(capacity);
+        byExpiry.grow(capacity);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public LicenseRecord get(String key) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(key, hash(key));
+            return slot < 0 ? null : materialize(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(LicenseRecord record) {
+        put(record, record.revoked() ? Instant.now().getEpochSecond() : NOT_REVOKED);
+    }
+
+    // revokedAtEpoch is only used when the record is newly revoked; a record that stays revoked
+    // keeps the time it was first revoked.
+    public void put(LicenseRecord record, long revokedAtEpoch) {
+        lock.writeLock().lock();
+        try {
+            String key = record.key();
+            int hash = hash(key);
+            int slot = findSlot(key, hash);
+            boolean wasRevoked = slot >= 0 && isRevoked(slot);
+            long expires = record.expiresAt() == null ? NO_EXPIRY : record.expiresAt().getEpochSecond();
+            int pluginIdRef = pluginIds.intern(record.pluginId());
+            int ownerRef = owners.intern(record.owner());
+            if (slot < 0) {
+                slot = appendSlot(key, hash);
+                byPluginId.add(pluginIdRef, slot);
+                byOwner.add(ownerRef, slot);
+                byExpiry.add(0, slot);
+            } else {
+                if (pluginIdRefs[slot] != pluginIdRef) {
+                    byPluginId.remove(pluginIdRefs[slot], slot);
+                    byPluginId.add(pluginIdRef, slot);
+                }
+                if (ownerRefs[slot] != ownerRef) {
+                    byOwner.remove(ownerRefs[slot], slot);
+                    byOwner.add(ownerRef, slot);
+                }
+                if (expiresAt[slot] != expires) {
+                    byExpiry.unsort(0, slot);
+                }
+            }
+            issuedAt[slot] = record.issuedAt().getEpochSecond();
+            expiresAt[slot] = expires;
+            pluginIdRefs[slot] = pluginIdRef;
+            ownerRefs[slot] = ownerRef;
+            if (!record.revoked()) {
+                revokedAt[slot] = NOT_REVOKED;
+            } else if (!wasRevoked) {
+                revokedAt[slot] = revokedAtEpoch;
+            }
+            setRevoked(slot, record.revoked());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns false when the key is unknown or already revoked.
+    public boolean revoke(String key, long revokedAtEpoch) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(key, hash(key));
+            if (slot < 0 || isRevoked(slot)) {
+                return false;
+            }
+            setRevoked(slot, true);
+            revokedAt[slot] = revokedAtEpoch;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(String key) {
+        lock.writeLock().lock();
+        try {
+            int hash = hash(key);
+            int slot = findSlot(key, hash);
+            if (slot < 0) {
+                return false;
+            }
+            removeFromTable(slot, hash);
+            byPluginId.remove(pluginIdRefs[slot], slot);
+            byOwner.remove(ownerRefs[slot], slot);
+            byExpiry.remove(0, slot);
+            arenaGarbage += (int) keyRefs[slot];
+            int last = size - 1;
+            if (slot != last) {
+                moveSlot(last, slot);
+            }
+            setRevoked(last, false);
+            size--;
+            if (arenaGarbage > arenaSize / 2) {
+                compactArena();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Time the record was revoked, in epoch seconds, or NOT_REVOKED.
+    public long revokedAt(String key) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(key, hash(key));
+            return slot < 0 ? NOT_REVOKED : revokedAt[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<LicenseRecord> expiring(long afterEpoch, String afterKey, long untilEpoch, int limit) {
+        byte[] after = afterKey.getBytes(StandardCharsets.UTF_8);
+        return page(byExpiry, 0,
+                slot -> expiresAt[slot] > afterEpoch || (expiresAt[slot] == afterEpoch && compareKey(slot, after) > 0),
+                slot -> expiresAt[slot] > untilEpoch,
+                slot -> expiresAt[slot] != NO_EXPIRY && !isRevoked(slot),
+                limit);
+    }
+
+    // Licenses of one plugin, or one owner, with keys after afterKey, in UTF-8 byte order of the key.
+    public List<LicenseRecord> byPluginId(String pluginId, LicenseStatus status, long nowEpoch, String afterKey, int limit) {
+        return byGroup(byPluginId, pluginIds, pluginId, status, nowEpoch, afterKey, limit);
+    }
+
+    public List<LicenseRecord> byOwner(String owner, LicenseStatus status, long nowEpoch, String afterKey, int limit) {
+        return byGroup(byOwner, owners, owner, status, nowEpoch, afterKey, limit);
+    }
+
+    // Successive calls with the same cutoff resume where the previous one stopped instead of
+    // rescanning from the start. Slots are scanned downwards: removing a slot moves the last record
+    // into it, and that record has then already been scanned, so nothing is skipped.
+    public List<LicenseRecord> purgeable(long cutoffEpoch, int limit) {
+        List<LicenseRecord> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int slot = cutoffEpoch == purgeCutoff && purgeCursor > 0 ? Math.min(purgeCursor, size) : size;
+            while (slot > 0 && matches.size() < limit) {
+                slot--;
+                boolean expired = expiresAt[slot] != NO_EXPIRY && expiresAt[slot] < cutoffEpoch;
+                boolean revokedLongAgo = isRevoked(slot) && revokedAt[slot] != NOT_REVOKED && revokedAt[slot] < cutoffEpoch;
+                if (expired || revokedLongAgo) {
+                    matches.add(materialize(slot));
+                }
+            }
+            purgeCursor = slot;
+            purgeCutoff = cutoffEpoch;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    private List<LicenseRecord> byGroup(
+            SlotGroups groups,
+            StringTable values,
+            String value,
+            LicenseStatus status,
+            long nowEpoch,
+            String afterKey,
+            int limit
+    ) {
+        int group;
+        lock.readLock().lock();
+        try {
+            group = values.find(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (group < 0) {
+            return new ArrayList<>();
+        }
+        byte[] after = afterKey.getBytes(StandardCharsets.UTF_8);
+        return page(groups, group,
+                slot -> compareKey(slot, after) > 0,
+                slot -> false,
+                slot -> status.matches(isRevoked(slot), expiresAt[slot] != NO_EXPIRY && expiresAt[slot] < nowEpoch),
+                limit);
+    }
+
+    // Reads up to limit matching slots of a group, starting at the first slot after the cursor and
+    // stopping early at the first slot past the end of the range. Writes leave groups partly
+    // unsorted; such a group is sorted first under the write lock, which is then downgraded so the
+    // group cannot change while it is read.
+    private List<LicenseRecord> page(
+            SlotGroups groups,
+            int group,
+            IntPredicate afterCursor,
+            IntPredicate pastEnd,
+            IntPredicate matches,
+            int limit
+    ) {
+        List<LicenseRecord> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (!groups.isSorted(group)) {
+                lock.readLock().unlock();
+                lock.writeLock().lock();
+                try {
+                    groups.sort(group);
+                } finally {
+                    lock.readLock().lock();
+                    lock.writeLock().unlock();
+                }
+            }
+            int count = groups.size(group);
+            for (int i = groups.firstMatching(group, afterCursor); i < count && page.size() < limit; i++) {
+                int slot = groups.slot(group, i);
+                if (pastEnd.test(slot)) {
+                    break;
+                }
+                if (matches.test(slot)) {
+                    page.add(materialize(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    // Point-in-time view for iterating without holding the lock. Only the mutable columns are
+    // copied; the key arena and string tables are append-only, so the snapshot shares them.
+    public Snapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            return new Snapshot(
+                    size,
+                    Arrays.copyOf(keyRefs, size),
+                    Arrays.copyOf(issuedAt, size),
+                    Arrays.copyOf(expiresAt, size),
+                    Arrays.copyOf(revokedAt, size),
+                    Arrays.copyOf(pluginIdRefs, size),
+                    Arrays.copyOf(ownerRefs, size),
+                    Arrays.copyOf(revokedBits, (size + 63) >>> 6),
+                    keyArena,
+                    pluginIds.values,
+                    owners.values
+            );
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private LicenseRecord materialize(int slot) {
+        return record(slot, keyRefs, issuedAt, expiresAt, pluginIdRefs, ownerRefs, revokedBits, keyArena,
+                pluginIds.values, owners.values);
+    }
+
+    private static LicenseRecord record(
+            int slot,
+            long[] keyRefs,
+            long[] issuedAt,
+            long[] expiresAt,
+            int[] pluginIdRefs,
+            int[] ownerRefs,
+            long[] revokedBits,
+            byte[] keyArena,
+            String[] pluginIdValues,
+            String[] ownerValues
+    ) {
+        long ref = keyRefs[slot];
+        String key = new String(keyArena, (int) (ref >>> 32), (int) ref, StandardCharsets.UTF_8);
+        long expires = expiresAt[slot];
+        return new LicenseRecord(
+                key,
+                pluginIdValues[pluginIdRefs[slot]],
+                ownerValues[ownerRefs[slot]],
+                Instant.ofEpochSecond(issuedAt[slot]),
+                expires == NO_EXPIRY ? null : Instant.ofEpochSecond(expires),
+                (revokedBits[slot >>> 6] & (1L << slot)) != 0
+        );
+    }
+
+    private int findSlot(String key, int hash) {
+        int mask = table.length - 1;
+        for (int bucket = hash & mask; ; bucket = (bucket + 1) & mask) {
+            int entry = table[bucket];
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (keyHashes[slot] == hash && keyEquals(slot, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private int appendSlot(String key, int hash) {
+        if (size == keyRefs.length) {
+            growColumns();
+        }
+        // Keep the table at most half full so probe chains stay short.
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+        if (arenaSize + encoded.length > keyArena.length) {
+            keyArena = Arrays.copyOf(keyArena, Math.max(keyArena.length * 2, arenaSize + encoded.length));
+        }
+        System.arraycopy(encoded, 0, keyArena, arenaSize, encoded.length);
+
+        int slot = size++;
+        keyRefs[slot] = ((long) arenaSize << 32) | encoded.length;
+        keyHashes[slot] = hash;
+        arenaSize += encoded.length;
+        insert(table, slot, hash);
+        return slot;
+    }
+
+    private void growColumns() {
+        int capacity = keyRefs.length * 2;
+        keyRefs = Arrays.copyOf(keyRefs, capacity);
+        keyHashes = Arrays.copyOf(keyHashes, capacity);
+        issuedAt = Arrays.copyOf(issuedAt, capacity);
+        expiresAt = Arrays.copyOf(expiresAt, capacity);
+        revokedAt = Arrays.copyOf(revokedAt, capacity);
+        pluginIdRefs = Arrays.copyOf(pluginIdRefs, capacity);
+        ownerRefs = Arrays.copyOf(ownerRefs, capacity);
+        revokedBits = Arrays.copyOf(revokedBits, (capacity + 63) >>> 6);
+        byPluginId.grow(capacity);
+        byOwner.grow(capacity);
+        byExpiry.grow(capacity);
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        for (int slot = 0; slot < size; slot++) {
+            insert(rehashed, slot, keyHashes[slot]);
+        }
+        table = rehashed;
+    }
+
+    private static void insert(int[] target, int slot, int hash) {
+        int mask = target.length - 1;
+        int bucket = hash & mask;
+        while (target[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        target[bucket] = slot + 1;
+    }
+
+    // Backward-shift deletion: later entries of the probe chain move up so lookups never stop early.
+    private void removeFromTable(int slot, int hash) {
+        int mask = table.length - 1;
+        int hole = hash & mask;
+        while (table[hole] != slot + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int bucket = (hole + 1) & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int home = keyHashes[table[bucket] - 1] & mask;
+            if (((bucket - home) & mask) >= ((bucket - hole) & mask)) {
+                table[hole] = table[bucket];
+                hole = bucket;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private void moveSlot(int from, int to) {
+        int mask = table.length - 1;
+        int bucket = keyHashes[from] & mask;
+        while (table[bucket] != from + 1) {
+            bucket = (bucket + 1) & mask;
+        }
+        table[bucket] = to + 1;
+        byPluginId.move(pluginIdRefs[from], from, to);
+        byOwner.move(ownerRefs[from], from, to);
+        byExpiry.move(0, from, to);
+        keyRefs[to] = keyRefs[from];
+        keyHashes[to] = keyHashes[from];
+        issuedAt[to] = issuedAt[from];
+        expiresAt[to] = expiresAt[from];
+        revokedAt[to] = revokedAt[from];
+        pluginIdRefs[to] = pluginIdRefs[from];
+        ownerRefs[to] = ownerRefs[from];
+        setRevoked(to, isRevoked(from));
+    }
+
+    // Copies live keys into a new arena; snapshots keep reading the old one.
+    private void compactArena() {
+        byte[] compacted = new byte[Math.max(INITIAL_CAPACITY, (arenaSize - arenaGarbage) * 2)];
+        int offset = 0;
+        for (int slot = 0; slot < size; slot++) {
+            int start = (int) (keyRefs[slot] >>> 32);
+            int length = (int) keyRefs[slot];
+            System.arraycopy(keyArena, start, compacted, offset, length);
+            keyRefs[slot] = ((long) offset << 32) | length;
+            offset += length;
+        }
+        keyArena = compacted;
+        arenaSize = offset;
+        arenaGarbage = 0;
+    }
+
+    // Compares the stored UTF-8 bytes with the key without encoding it, as long as it is ASCII.
+    private boolean keyEquals(int slot, String key) {
+        long ref = keyRefs[slot];
+        int offset = (int) (ref >>> 32);
+        int length = (int) ref;
+        int keyLength = key.length();
+        if (keyLength > length) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+                return Arrays.equals(keyArena, offset, offset + length, encoded, 0, encoded.length);
+            }
+            if (keyArena[offset + i] != (byte) c) {
+                return false;
+            }
+        }
+        return keyLength == length;
+    }
+
+    private int compareKeys(int left, int right) {
+        long leftRef = keyRefs[left];
+        long rightRef = keyRefs[right];
+        int leftOffset = (int) (leftRef >>> 32);
+        int rightOffset = (int) (rightRef >>> 32);
+        return Arrays.compareUnsigned(keyArena, leftOffset, leftOffset + (int) leftRef,
+                keyArena, rightOffset, rightOffset + (int) rightRef);
+    }
+
+    private int compareKey(int slot, byte[] key) {
+        long ref = keyRefs[slot];
+        int offset = (int) (ref >>> 32);
+        return Arrays.compareUnsigned(keyArena, offset, offset + (int) ref, key, 0, key.length);
+    }
+
+    private int compareExpiry(int left, int right) {
+        int byExpiry = Long.compare(expiresAt[left], expiresAt[right]);
+        return byExpiry != 0 ? byExpiry : compareKeys(left, right);
+    }
+
+    private boolean isRevoked(int slot) {
+        return (revokedBits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void setRevoked(int slot, boolean revoked) {
+        if (revoked) {
+            revokedBits[slot >>> 6] |= 1L << slot;
+        } else {
+            revokedBits[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int records) {
+        int needed = Math.max(16, records * 2);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    public static final class Snapshot {
+        private final int size;
+        private final long[] keyRefs;
+        private final long[] issuedAt;
+        private final long[] expiresAt;
+        private final long[] revokedAt;
+        private final int[] pluginIdRefs;
+        private final int[] ownerRefs;
+        private final long[] revokedBits;
+        private final byte[] keyArena;
+        private final String[] pluginIdValues;
+        private final String[] ownerValues;
+
+        private Snapshot(
+                int size,
+                long[] keyRefs,
+                long[] issuedAt,
+                long[] expiresAt,
+                long[] revokedAt,
+                int[] pluginIdRefs,
+                int[] ownerRefs,
+                long[] revokedBits,
+                byte[] keyArena,
+                String[] pluginIdValues,
+                String[] ownerValues
+        ) {
+            this.size = size;
+            this.keyRefs = keyRefs;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.revokedAt = revokedAt;
+            this.pluginIdRefs = pluginIdRefs;
+            this.ownerRefs = ownerRefs;
+            this.revokedBits = revokedBits;
+            this.keyArena = keyArena;
+            this.pluginIdValues = pluginIdValues;
+            this.ownerValues = ownerValues;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void forEach(Consumer<LicenseRecord> action) {
+            for (int slot = 0; slot < size; slot++) {
+                action.accept(record(slot, keyRefs, issuedAt, expiresAt, pluginIdRefs, ownerRefs, revokedBits, keyArena,
+                        pluginIdValues, ownerValues));
+            }
+        }
+
+        // Passes each record with the time it was revoked, or NOT_REVOKED.
+        public void forEachWithRevokedAt(ObjLongConsumer<LicenseRecord> action) {
+            for (int slot = 0; slot < size; slot++) {
+                action.accept(record(slot, keyRefs, issuedAt, expiresAt, pluginIdRefs, ownerRefs, revokedBits, keyArena,
+                        pluginIdValues, ownerValues), revokedAt[slot]);
+            }
+        }
+
+        public void forEachKey(Consumer<String> action) {
+            for (int slot = 0; slot < size; slot++) {
+                long ref = keyRefs[slot];
+                action.accept(new String(keyArena, (int) (ref >>> 32), (int) ref, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private interface SlotOrder {
+        int compare(int left, int right);
+    }
+
+    // Slots grouped by an interned id, each group kept in a slot order. Writes never sort: an added
+    // slot joins the unsorted tail, and a removal or reordered slot shortens the sorted prefix to
+    // the position it touched. The next read sorts the tail alone and merges it into the prefix, so
+    // a burst of inserts costs one sort of the new slots. All methods run under the index lock.
+    private static final class SlotGroups {
+        private final SlotOrder order;
+        private int[][] members = new int[0][];
+        private int[] sizes = new int[0];
+        private int[] sortedSizes = new int[0];
+        // Position of each slot inside its group.
+        private int[] positions = new int[0];
+
+        SlotGroups(SlotOrder order) {
+            this.order = order;
+        }
+
+        void grow(int capacity) {
+            positions = Arrays.copyOf(positions, capacity);
+        }
+
+        void add(int group, int slot) {
+            if (group >= members.length) {
+                int groups = Math.max(group + 1, members.length * 2);
+                int oldLength = members.length;
+                members = Arrays.copyOf(members, groups);
+                for (int i = oldLength; i < groups; i++) {
+                    members[i] = new int[4];
+                }
+                sizes = Arrays.copyOf(sizes, groups);
+                sortedSizes = Arrays.copyOf(sortedSizes, groups);
+            }
+            int size = sizes[group];
+            if (size == members[group].length) {
+                members[group] = Arrays.copyOf(members[group], size * 2);
+            }
+            members[group][size] = slot;
+            positions[slot] = size;
+            sizes[group] = size + 1;
+        }
+
+        void remove(int group, int slot) {
+            int position = positions[slot];
+            int last = --sizes[group];
+            if (position != last) {
+                int moved = members[group][last];
+                members[group][position] = moved;
+                positions[moved] = position;
+            }
+            unsortFrom(group, position);
+        }
+
+        // The slot's record moved from one slot number to another; its place in the order is kept.
+        void move(int group, int from, int to) {
+            int position = positions[from];
+            members[group][position] = to;
+            positions[to] = position;
+        }
+
+        // The slot's sort key changed.
+        void unsort(int group, int slot) {
+            unsortFrom(group, positions[slot]);
+        }
+
+        boolean isSorted(int group) {
+            return group >= sizes.length || sortedSizes[group] == sizes[group];
+        }
+
+        int size(int group) {
+            return group < sizes.length ? sizes[group] : 0;
+        }
+
+        int slot(int group, int position) {
+            return members[group][position];
+        }
+
+        // First position whose slot satisfies the predicate; the predicate must hold for a suffix
+        // of the sorted group.
+        int firstMatching(int group, IntPredicate predicate) {
+            int low = 0;
+            int high = size(group);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (predicate.test(members[group][middle])) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+
+        void sort(int group) {
+            int size = sizes[group];
+            int sortedSize = sortedSizes[group];
+            if (sortedSize == size) {
+                return;
+            }
+            int[] slots = members[group];
+            Integer[] tail = new Integer[size - sortedSize];
+            for (int i = 0; i < tail.length; i++) {
+                tail[i] = slots[sortedSize + i];
+            }
+            Arrays.sort(tail, (left, right) -> order.compare(left, right));
+
+            int[] merged = new int[slots.length];
+            int prefix = 0;
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                boolean takePrefix = next == tail.length
+                        || (prefix < sortedSize && order.compare(slots[prefix], tail[next]) <= 0);
+                int slot = takePrefix ? slots[prefix++] : tail[next++];
+                merged[i] = slot;
+                positions[slot] = i;
+            }
+            members[group] = merged;
+            sortedSizes[group] = size;
+        }
+
+        private void unsortFrom(int group, int position) {
+            sortedSizes[group] = Math.min(sortedSizes[group], Math.min(position, sizes[group]));
+        }
+    }
+
+    // Append-only: ids are never reassigned and published arrays are never written at an index
+    // that a snapshot can see, so snapshots may keep referencing an old values array.
+    private static final class StringTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] values = new String[16];
+        private int count;
+
+        int find(String value) {
+            Integer existing = ids.get(value);
+            return existing == null ? -1 : existing;
+        }
+
+        int intern(String value) {
+            Integer existing = ids.get(value);
+            if (existing != null) {
+                return existing;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            int id = count++;
+            values[id] = value;
+            ids.put(value, id);
+            return id;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.blancocl.licensing.repository;
+
+// Count-min sketch of recent access frequency: four rows of 4-bit counters packed sixteen to a
+// long. Once the sample size worth of increments has been recorded every counter is halved, so
+// the estimates follow the current workload rather than all history. Not thread-safe; the cache
+// calls it under its lock.
+final class FrequencySketch {
+    private static final int ROWS = 4;
+    private static final int MAX_COUNTER = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {
+            0x97CB3127D2B7B5DBL, 0xA9D2E1C6F0B2D5A9L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L
+    };
+
+    private final long[] table;
+    private final int rowCounters;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long expectedEntries) {
+        long wanted = Math.max(64L, Math.min(1L << 24, expectedEntries));
+        this.rowCounters = (int) Long.highestOneBit(wanted - 1) << 1;
+        this.table = new long[ROWS * rowCounters / 16];
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * rowCounters);
+    }
+
+    void increment(String key) {
+        long hash = hash(key);
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int counter = counter(hash, row);
+            int slot = counter >>> 4;
+            int shift = (counter & 15) << 2;
+            if (((table[slot] >>> shift) & MAX_COUNTER) != MAX_COUNTER) {
+                table[slot] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(String key) {
+        long hash = hash(key);
+        int frequency = MAX_COUNTER;
+        for (int row = 0; row < ROWS; row++) {
+            int counter = counter(hash, row);
+            frequency = Math.min(frequency, (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & MAX_COUNTER));
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int counter(long hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 32;
+        return row * rowCounters + (int) (h & (rowCounters - 1));
+    }
+
+    private static long hash(String key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,163 @@
+package com.blancocl.licensing.repository;
+
+import com.blancocl.licensing.metrics.LatencyHistogram;
+import com.blancocl.licensing.metrics.LicenseMetrics;
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public final class InstrumentedLicenseRepository implements LicenseRepository {
+    private final LicenseRepository delegate;
+    private final LatencyHistogram upsertLatency;
+    private final LatencyHistogram upsertAllLatency;
+    private final LatencyHistogram insertAllLatency;
+    private final LatencyHistogram findLatency;
+    private final LatencyHistogram findAllLatency;
+    private final LatencyHistogram revokeLatency;
+    private final LatencyHistogram findExpiringLatency;
+    private final LatencyHistogram findByPluginLatency;
+    private final LatencyHistogram findByOwnerLatency;
+    private final LatencyHistogram findPurgeableLatency;
+    private final LatencyHistogram deleteLatency;
+
+    public InstrumentedLicenseRepository(LicenseRepository delegate, LicenseMetrics metrics) {
+        this.delegate = delegate;
+        this.upsertLatency = metrics.histogram("repository.upsert");
+        this.upsertAllLatency = metrics.histogram("repository.upsertAll");
+        this.insertAllLatency = metrics.histogram("repository.insertAll");
+        this.findLatency = metrics.histogram("repository.find");
+        this.findAllLatency = metrics.histogram("repository.findAll");
+        this.revokeLatency = metrics.histogram("repository.revoke");
+        this.findExpiringLatency = metrics.histogram("repository.findExpiring");
+        this.findByPluginLatency = metrics.histogram("repository.findByPlugin");
+        this.findByOwnerLatency = metrics.histogram("repository.findByOwner");
+        this.findPurgeableLatency = metrics.histogram("repository.findPurgeable");
+        this.deleteLatency = metrics.histogram("repository.delete");
+    }
+
+    @Override
+    public void upsert(LicenseRecord record) {
+        long startedAt = System.nanoTime();
+        try {
+            delegate.upsert(record);
+        } finally {
+            upsertLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public boolean upsertAll(Collection<LicenseRecord> records) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.upsertAll(records);
+        } finally {
+            upsertAllLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public boolean insertAll(Collection<LicenseRecord> records) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.insertAll(records);
+        } finally {
+            insertAllLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public Optional<LicenseRecord> find(String key) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.find(key);
+        } finally {
+            findLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public Map<String, LicenseRecord> findAll(Collection<String> keys) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.findAll(keys);
+        } finally {
+            findAllLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public boolean revoke(String key) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.revoke(key);
+        } finally {
+            revokeLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public List<LicenseRecord> findExpiring(Instant after, String afterKey, Instant until, int limit) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.findExpiring(after, afterKey, until, limit);
+        } finally {
+            findExpiringLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByPlugin(String pluginId, LicenseStatus status, Instant now, String afterKey, int limit) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.findPageByPlugin(pluginId, status, now, afterKey, limit);
+        } finally {
+            findByPluginLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByOwner(String owner, LicenseStatus status, Instant now, String afterKey, int limit) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.findPageByOwner(owner, status, now, afterKey, limit);
+        } finally {
+            findByOwnerLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public List<LicenseRecord> findPurgeable(Instant cutoff, int limit) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.findPurgeable(cutoff, limit);
+        } finally {
+            findPurgeableLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public int delete(Collection<String> keys) {
+        long startedAt = System.nanoTime();
+        try {
+            return delegate.delete(keys);
+        } finally {
+            deleteLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public boolean forEachKey(Consumer<String> action) {
+        return delegate.forEachKey(action);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,222 @@
+package com.blancocl.licensing.repository;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+public final class JdbcConnectionPool implements AutoCloseable {
+    private static final long VALIDATE_AFTER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final Logger logger;
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final JdbcPoolSettings settings;
+    // Run on every new connection, e.g. per-connection SQLite pragmas.
+    private final List<String> initStatements;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder borrowTimeouts = new LongAdder();
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed;
+
+    public JdbcConnectionPool(Logger logger, String jdbcUrl, String username, String password, JdbcPoolSettings settings) {
+        this(logger, jdbcUrl, username, password, settings, List.of());
+    }
+
+    public JdbcConnectionPool(
+            Logger logger,
+            String jdbcUrl,
+            String username,
+            String password,
+            JdbcPoolSettings settings,
+            List<String> initStatements
+    ) {
+        this.logger = logger;
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.settings = settings;
+        this.initStatements = List.copyOf(initStatements);
+        this.permits = new Semaphore(settings.maxSize(), true);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("PaperLicensing-JdbcPool").daemon().factory());
+
+        long intervalMs = Math.max(1000L, settings.idleTimeout().toMillis() / 2);
+        maintenance.scheduleWithFixedDelay(this::maintain, 0L, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("connection pool is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(settings.borrowTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.increment();
+                throw new SQLException("timed out waiting for a pooled connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a pooled connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    borrows.increment();
+                    return pooled;
+                }
+                validationFailures.increment();
+                discard(pooled);
+            }
+
+            pooled = openConnection();
+            borrows.increment();
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public JdbcPoolStats stats() {
+        int idleCount = idle.size();
+        return new JdbcPoolStats(
+                open.get(),
+                idleCount,
+                settings.maxSize() - permits.availablePermits(),
+                settings.maxSize(),
+                borrows.sum(),
+                created.sum(),
+                evicted.sum(),
+                validationFailures.sum(),
+                borrowTimeouts.sum()
+        );
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    void release(PooledConnection pooled) {
+        try {
+            if (closed || open.get() > settings.maxSize() || !resetState(pooled)) {
+                discard(pooled);
+            } else {
+                pooled.touch();
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection connection = username == null || username.isBlank()
+                ? DriverManager.getConnection(jdbcUrl)
+                : DriverManager.getConnection(jdbcUrl, username, password == null ? "" : password);
+        if (!initStatements.isEmpty()) {
+            try (Statement st = connection.createStatement()) {
+                for (String sql : initStatements) {
+                    st.execute(sql);
+                }
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+        open.incrementAndGet();
+        created.increment();
+        return new PooledConnection(this, connection);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.connection().isClosed()) {
+                return false;
+            }
+            if (System.nanoTime() - pooled.lastUsedNanos() < VALIDATE_AFTER_IDLE_NANOS) {
+                return true;
+            }
+            return pooled.connection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean resetState(PooledConnection pooled) {
+        try {
+            Connection connection = pooled.connection();
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        open.decrementAndGet();
+        pooled.closePhysical();
+    }
+
+    private void maintain() {
+        long now = System.nanoTime();
+        long idleTimeoutNanos = settings.idleTimeout().toNanos();
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && open.get() > settings.minSize()) {
+            PooledConnection pooled = iterator.next();
+            if (now - pooled.lastUsedNanos() >= idleTimeoutNanos && idle.removeFirstOccurrence(pooled)) {
+                evicted.increment();
+                discard(pooled);
+            }
+        }
+
+        // Each replacement is opened under a permit, like a borrow, so refilling never pushes the
+        // pool past maxSize while callers hold every other connection.
+        while (!closed && open.get() < settings.minSize() && permits.tryAcquire()) {
+            try {
+                if (open.get() >= settings.minSize()) {
+                    break;
+                }
+                idle.offerLast(openConnection());
+            } catch (SQLException e) {
+                logger.warning("Failed to open pooled database connection: " + e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
@@ -1,101 +1,534 @@
 package com.blancocl.licensing.repository;
 
 import com.blancocl.licensing.model.LicenseRecord;
-import org.bukkit.plugin.java.JavaPlugin;
+import com.blancocl.licensing.model.LicenseStatus;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
 public final class JdbcLicenseRepository implements LicenseRepository {
-    private final JavaPlugin plugin;
-    private final String jdbcUrl;
-    private final String username;
-    private final String password;
+    private static final String SELECT_COLUMNS =
+            "SELECT license_key, plugin_id, owner_name, issued_at, expires_at, revoked FROM licenses";
+    private static final String INSERT_SQL =
+            "INSERT INTO licenses (license_key, plugin_id, owner_name, issued_at, expires_at, revoked, revoked_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final int MAX_IN_PARAMETERS = 512;
+    private static final int KEY_SCAN_FETCH_SIZE = 1000;
 
-    public JdbcLicenseRepository(JavaPlugin plugin, String jdbcUrl, String username, String password) {
-        this.plugin = plugin;
-        this.jdbcUrl = jdbcUrl;
-        this.username = username;
-        this.password = password;
-        createTableIfNeeded();
+    private final Logger logger;
+    private final String upsertSql;
+    private final JdbcConnectionPool pool;
+    // SQLite in WAL mode: every write goes through the single writer thread, and the pool only
+    // serves reads on query-only connections.
+    private final SqliteWriteQueue writeQueue;
+    private final boolean queueRecordWrites;
+    private final int keyScanFetchSize;
+    // Records accepted by a QUEUED write that have not committed yet. find and findAll answer from
+    // here first, so this server reads its own writes.
+    private final Map<String, LicenseRecord> queued = new ConcurrentHashMap<>();
+    // SQLite without WAL admits one writer at a time, and queueing writers here is cheaper than
+    // leaving them to SQLite's busy handler. MySQL orders concurrent writes with its own row
+    // locks, so it gets no in-process lock at all.
+    private final ReentrantLock sqliteWriter;
+    // MySQL with read replicas: point reads and listings are routed here, everything else stays on
+    // the primary pool.
+    private final ReplicaRouter replicas;
+
+    public JdbcLicenseRepository(
+            Logger logger,
+            String jdbcUrl,
+            String username,
+            String password,
+            JdbcPoolSettings poolSettings
+    ) {
+        this(logger, jdbcUrl, username, password, poolSettings, SqliteWalSettings.disabled());
     }
 
-    @Override
-    public synchronized void upsert(LicenseRecord record) {
-        String sql = "INSERT INTO licenses (license_key, plugin_id, owner_name, issued_at, expires_at, revoked) " +
-                "VALUES (?, ?, ?, ?, ?, ?) " +
-                "ON CONFLICT(license_key) DO UPDATE SET " +
-                "plugin_id = excluded.plugin_id, " +
-                "owner_name = excluded.owner_name, " +
-                "issued_at = excluded.issued_at, " +
-                "expires_at = excluded.expires_at, " +
-                "revoked = excluded.revoked";
+    public JdbcLicenseRepository(
+            Logger logger,
+            String jdbcUrl,
+            String username,
+            String password,
+            JdbcPoolSettings poolSettings,
+            SqliteWalSettings walSettings
+    ) {
+        this(logger, jdbcUrl, username, password, poolSettings, walSettings, ReplicaSettings.none());
+    }
 
+    // walSettings only apply to SQLite URLs, replicaSettings only to the others.
+    public JdbcLicenseRepository(
+            Logger logger,
+            String jdbcUrl,
+            String username,
+            String password,
+            JdbcPoolSettings poolSettings,
+            SqliteWalSettings walSettings,
+            ReplicaSettings replicaSettings
+    ) {
+        this.logger = logger;
+        this.upsertSql = upsertSql(jdbcUrl);
         boolean sqlite = jdbcUrl.startsWith("jdbc:sqlite:");
-        if (!sqlite) {
-            sql = "INSERT INTO licenses (license_key, plugin_id, owner_name, issued_at, expires_at, revoked) " +
-                    "VALUES (?, ?, ?, ?, ?, ?) " +
-                    "ON DUPLICATE KEY UPDATE plugin_id = VALUES(plugin_id), owner_name = VALUES(owner_name), " +
-                    "issued_at = VALUES(issued_at), expires_at = VALUES(expires_at), revoked = VALUES(revoked)";
-        }
-
-        try (Connection connection = getConnection();
-             PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, record.key());
-            ps.setString(2, record.pluginId());
-            ps.setString(3, record.owner());
-            ps.setLong(4, record.issuedAt().getEpochSecond());
-            if (record.expiresAt() == null) {
-                ps.setNull(5, java.sql.Types.BIGINT);
-            } else {
-                ps.setLong(5, record.expiresAt().getEpochSecond());
-            }
-            ps.setBoolean(6, record.revoked());
-            ps.executeUpdate();
+        // MySQL Connector/J buffers the whole result unless the fetch size is Integer.MIN_VALUE,
+        // which streams it row by row without needing useCursorFetch in the URL.
+        this.keyScanFetchSize = jdbcUrl.startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : KEY_SCAN_FETCH_SIZE;
+        boolean wal = sqlite && walSettings.enabled();
+        this.sqliteWriter = sqlite && !wal ? new ReentrantLock() : null;
+        this.queueRecordWrites = wal && walSettings.writeMode() == SqliteWriteMode.QUEUED;
+        if (wal) {
+            JdbcConnectionPool writer = new JdbcConnectionPool(logger, jdbcUrl, username, password,
+                    new JdbcPoolSettings(1, 1, poolSettings.idleTimeout(), poolSettings.borrowTimeout()));
+            enableWal(writer);
+            createTableIfNeeded(writer);
+            this.writeQueue = new SqliteWriteQueue(logger, writer, walSettings.maxBatchSize());
+            this.pool = new JdbcConnectionPool(logger, jdbcUrl, username, password, poolSettings,
+                    List.of("PRAGMA query_only = 1"));
+        } else {
+            this.writeQueue = null;
+            this.pool = new JdbcConnectionPool(logger, jdbcUrl, username, password, poolSettings);
+            createTableIfNeeded(pool);
+        }
+        this.replicas = !sqlite && replicaSettings.enabled()
+                ? new ReplicaRouter(logger, pool, username, password, poolSettings, replicaSettings)
+                : null;
+    }
+
+    @Override
+    public void upsert(LicenseRecord record) {
+        if (queueRecordWrites) {
+            queue(List.of(record));
+            return;
+        }
+        try {
+            write(false, connection -> {
+                PreparedStatement ps = connection.prepare(upsertSql);
+                bindUpsert(ps, record);
+                return ps.executeUpdate();
+            });
+            wrote(List.of(record.key()));
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to upsert license: " + e.getMessage());
+            logger.severe("Failed to upsert license: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean upsertAll(Collection<LicenseRecord> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+        try {
+            write(true, connection -> executeBatch(connection, upsertSql, records));
+            wrote(records.stream().map(LicenseRecord::key).toList());
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Failed to upsert " + records.size() + " licenses: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Issued keys are new, so a plain INSERT batch is enough and a duplicate fails the whole batch
+    // instead of overwriting a stored license.
+    @Override
+    public boolean insertAll(Collection<LicenseRecord> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+        try {
+            write(true, connection -> executeBatch(connection, INSERT_SQL, records));
+            wrote(records.stream().map(LicenseRecord::key).toList());
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Failed to insert " + records.size() + " licenses: " + e.getMessage());
+            return false;
         }
     }
 
     @Override
     public Optional<LicenseRecord> find(String key) {
-        String sql = "SELECT license_key, plugin_id, owner_name, issued_at, expires_at, revoked FROM licenses WHERE license_key = ?";
-        try (Connection connection = getConnection();
-             PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, key);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (!rs.next()) {
-                    return Optional.empty();
+        LicenseRecord pending = queued.get(key);
+        if (pending != null) {
+            return Optional.of(pending);
+        }
+        String sql = SELECT_COLUMNS + " WHERE license_key = ?";
+        try {
+            return read(List.of(key), connection -> {
+                PreparedStatement ps = connection.prepare(sql);
+                ps.setString(1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? Optional.of(mapRecord(rs)) : Optional.<LicenseRecord>empty();
                 }
-                return Optional.of(mapRecord(rs));
-            }
+            });
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to query license: " + e.getMessage());
+            logger.severe("Failed to query license: " + e.getMessage());
             return Optional.empty();
         }
     }
 
+    // Lookups are chunked and each chunk is padded to a power-of-two parameter count, so only a
+    // handful of distinct IN statements end up in the per-connection statement cache.
     @Override
-    public synchronized boolean revoke(String key) {
-        String sql = "UPDATE licenses SET revoked = ? WHERE license_key = ? AND revoked = ?";
-        try (Connection connection = getConnection();
-             PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setBoolean(1, true);
-            ps.setString(2, key);
-            ps.setBoolean(3, false);
-            return ps.executeUpdate() > 0;
+    public Map<String, LicenseRecord> findAll(Collection<String> keys) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        if (distinct.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Map<String, LicenseRecord> found;
+        try {
+            found = read(distinct, connection -> {
+                Map<String, LicenseRecord> records = new HashMap<>();
+                for (int start = 0; start < distinct.size(); start += MAX_IN_PARAMETERS) {
+                    List<String> chunk = distinct.subList(start, Math.min(distinct.size(), start + MAX_IN_PARAMETERS));
+                    int parameters = paddedParameterCount(chunk.size());
+                    PreparedStatement ps = connection.prepare(SELECT_COLUMNS + " WHERE license_key IN ("
+                            + String.join(", ", Collections.nCopies(parameters, "?")) + ")");
+                    for (int i = 0; i < parameters; i++) {
+                        ps.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            LicenseRecord record = mapRecord(rs);
+                            records.put(record.key(), record);
+                        }
+                    }
+                }
+                return records;
+            });
+        } catch (SQLException e) {
+            logger.severe("Failed to query licenses: " + e.getMessage());
+            found = new HashMap<>();
+        }
+        if (!queued.isEmpty()) {
+            for (String key : distinct) {
+                LicenseRecord pending = queued.get(key);
+                if (pending != null) {
+                    found.put(key, pending);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public boolean revoke(String key) {
+        String sql = "UPDATE licenses SET revoked = ?, revoked_at = ? WHERE license_key = ? AND revoked = ?";
+        try {
+            boolean revoked = write(false, connection -> {
+                PreparedStatement ps = connection.prepare(sql);
+                ps.setBoolean(1, true);
+                ps.setLong(2, Instant.now().getEpochSecond());
+                ps.setString(3, key);
+                ps.setBoolean(4, false);
+                return ps.executeUpdate() > 0;
+            });
+            wrote(List.of(key));
+            return revoked;
+        } catch (SQLException e) {
+            logger.severe("Failed to revoke license: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public List<LicenseRecord> findExpiring(Instant after, String afterKey, Instant until, int limit) {
+        String sql = SELECT_COLUMNS + " WHERE revoked = ? AND expires_at <= ? "
+                + "AND (expires_at > ? OR (expires_at = ? AND license_key > ?)) "
+                + "ORDER BY expires_at, license_key LIMIT ?";
+        try {
+            return read(List.of(), connection -> {
+                PreparedStatement ps = connection.prepare(sql);
+                ps.setBoolean(1, false);
+                ps.setLong(2, until.getEpochSecond());
+                ps.setLong(3, after.getEpochSecond());
+                ps.setLong(4, after.getEpochSecond());
+                ps.setString(5, afterKey);
+                ps.setInt(6, limit);
+                return mapRecords(ps);
+            });
+        } catch (SQLException e) {
+            logger.severe("Failed to query expiring licenses: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByPlugin(String pluginId, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return findPage("plugin_id", pluginId, status, now, afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByOwner(String owner, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return findPage("owner_name", owner, status, now, afterKey, limit);
+    }
+
+    // Each side of the OR is served by its own index, so neither query scans the table. Always read
+    // from the primary: a lagging replica could still report a license that was renewed since, and
+    // the result is deleted.
+    @Override
+    public List<LicenseRecord> findPurgeable(Instant cutoff, int limit) {
+        String sql = SELECT_COLUMNS + " WHERE expires_at < ? OR revoked_at < ? LIMIT ?";
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement ps = connection.prepare(sql);
+            ps.setLong(1, cutoff.getEpochSecond());
+            ps.setLong(2, cutoff.getEpochSecond());
+            ps.setInt(3, limit);
+            return mapRecords(ps);
+        } catch (SQLException e) {
+            logger.severe("Failed to query purgeable licenses: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // Deletes in chunks. Outside the SQLite writer each chunk autocommits, so no chunk holds its row
+    // locks for long.
+    @Override
+    public int delete(Collection<String> keys) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        if (distinct.isEmpty()) {
+            return 0;
+        }
+        try {
+            int removed = write(false, connection -> {
+                int deleted = 0;
+                for (int start = 0; start < distinct.size(); start += MAX_IN_PARAMETERS) {
+                    List<String> chunk = distinct.subList(start, Math.min(distinct.size(), start + MAX_IN_PARAMETERS));
+                    int parameters = paddedParameterCount(chunk.size());
+                    PreparedStatement ps = connection.prepare("DELETE FROM licenses WHERE license_key IN ("
+                            + String.join(", ", Collections.nCopies(parameters, "?")) + ")");
+                    for (int i = 0; i < parameters; i++) {
+                        ps.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    deleted += ps.executeUpdate();
+                }
+                return deleted;
+            });
+            wrote(distinct);
+            return removed;
+        } catch (SQLException e) {
+            logger.severe("Failed to delete licenses: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Always scans the primary, since a key missing from a lagging replica would be missing from
+    // whatever is built from the scan.
+    @Override
+    public boolean forEachKey(Consumer<String> action) {
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement ps = connection.prepare("SELECT license_key FROM licenses");
+            ps.setFetchSize(keyScanFetchSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    action.accept(rs.getString(1));
+                }
+            }
+            return true;
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to revoke license: " + e.getMessage());
+            logger.severe("Failed to list license keys: " + e.getMessage());
             return false;
         }
     }
 
+    @Override
+    public void close() {
+        if (writeQueue != null) {
+            writeQueue.close();
+        }
+        if (replicas != null) {
+            replicas.close();
+        }
+        logger.info("Closing license database pool: " + pool.stats());
+        pool.close();
+    }
+
+    public JdbcPoolStats poolStats() {
+        return pool.stats();
+    }
+
+    public Optional<String> replicaStats() {
+        return Optional.ofNullable(replicas).map(ReplicaRouter::stats);
+    }
+
+    private void bindUpsert(PreparedStatement ps, LicenseRecord record) throws SQLException {
+        ps.setString(1, record.key());
+        ps.setString(2, record.pluginId());
+        ps.setString(3, record.owner());
+        ps.setLong(4, record.issuedAt().getEpochSecond());
+        if (record.expiresAt() == null) {
+            ps.setNull(5, java.sql.Types.BIGINT);
+        } else {
+            ps.setLong(5, record.expiresAt().getEpochSecond());
+        }
+        ps.setBoolean(6, record.revoked());
+        if (record.revoked()) {
+            ps.setLong(7, Instant.now().getEpochSecond());
+        } else {
+            ps.setNull(7, java.sql.Types.BIGINT);
+        }
+    }
+
+    // The (column, license_key) index serves both the filter and the key order, so every page is
+    // one index range read no matter how deep into the listing it is.
+    private List<LicenseRecord> findPage(String column, String value, LicenseStatus status, Instant now, String afterKey, int limit) {
+        String sql = SELECT_COLUMNS + " WHERE " + column + " = ? AND license_key > ?" + statusCondition(status)
+                + " ORDER BY license_key LIMIT ?";
+        try {
+            return read(List.of(), connection -> {
+                PreparedStatement ps = connection.prepare(sql);
+                int index = 1;
+                ps.setString(index++, value);
+                ps.setString(index++, afterKey);
+                if (status != LicenseStatus.ANY) {
+                    ps.setBoolean(index++, status == LicenseStatus.REVOKED);
+                }
+                if (status == LicenseStatus.ACTIVE || status == LicenseStatus.EXPIRED) {
+                    ps.setLong(index++, now.getEpochSecond());
+                }
+                ps.setInt(index, limit);
+                return mapRecords(ps);
+            });
+        } catch (SQLException e) {
+            logger.severe("Failed to list licenses by " + column + ": " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private static String statusCondition(LicenseStatus status) {
+        return switch (status) {
+            case ANY -> "";
+            case ACTIVE -> " AND revoked = ? AND (expires_at IS NULL OR expires_at >= ?)";
+            case EXPIRED -> " AND revoked = ? AND expires_at < ?";
+            case REVOKED -> " AND revoked = ?";
+        };
+    }
+
+    // A record that stays revoked keeps its original revoked_at, so re-syncing it does not restart the
+    // retention window.
+    private static String upsertSql(String jdbcUrl) {
+        if (jdbcUrl.startsWith("jdbc:sqlite:")) {
+            return "INSERT INTO licenses (license_key, plugin_id, owner_name, issued_at, expires_at, revoked, revoked_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT(license_key) DO UPDATE SET " +
+                    "plugin_id = excluded.plugin_id, " +
+                    "owner_name = excluded.owner_name, " +
+                    "issued_at = excluded.issued_at, " +
+                    "expires_at = excluded.expires_at, " +
+                    "revoked_at = CASE WHEN excluded.revoked THEN COALESCE(licenses.revoked_at, excluded.revoked_at) ELSE NULL END, " +
+                    "revoked = excluded.revoked";
+        }
+        return "INSERT INTO licenses (license_key, plugin_id, owner_name, issued_at, expires_at, revoked, revoked_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE plugin_id = VALUES(plugin_id), owner_name = VALUES(owner_name), " +
+                "issued_at = VALUES(issued_at), expires_at = VALUES(expires_at), " +
+                "revoked_at = CASE WHEN VALUES(revoked) THEN COALESCE(revoked_at, VALUES(revoked_at)) ELSE NULL END, " +
+                "revoked = VALUES(revoked)";
+    }
+
+    // Runs a write on the SQLite writer thread in WAL mode, which wraps every batch in one
+    // transaction. Otherwise it runs on a pooled connection, in its own transaction when
+    // `transactional`.
+    private <T> T write(boolean transactional, JdbcWork<T> work) throws SQLException {
+        if (writeQueue != null) {
+            return writeQueue.await(work);
+        }
+        if (sqliteWriter != null) {
+            sqliteWriter.lock();
+        }
+        try (PooledConnection connection = pool.borrow()) {
+            if (!transactional) {
+                return work.apply(connection);
+            }
+            Connection raw = connection.connection();
+            raw.setAutoCommit(false);
+            try {
+                T result = work.apply(connection);
+                raw.commit();
+                return result;
+            } catch (SQLException e) {
+                raw.rollback();
+                throw e;
+            } finally {
+                raw.setAutoCommit(true);
+            }
+        } finally {
+            if (sqliteWriter != null) {
+                sqliteWriter.unlock();
+            }
+        }
+    }
+
+    // Runs a read on a replica when replicas are configured, or on the pool otherwise. `keys` are the
+    // license keys the read is about; any of them written here recently sends it to the primary.
+    private <T> T read(Collection<String> keys, JdbcWork<T> work) throws SQLException {
+        if (replicas != null) {
+            return replicas.read(keys, work);
+        }
+        try (PooledConnection connection = pool.borrow()) {
+            return work.apply(connection);
+        }
+    }
+
+    private void wrote(Collection<String> keys) {
+        if (replicas != null) {
+            replicas.wrote(keys);
+        }
+    }
+
+    // Returns once the records are queued; a failed commit can only be logged.
+    private void queue(List<LicenseRecord> records) {
+        for (LicenseRecord record : records) {
+            queued.put(record.key(), record);
+        }
+        writeQueue.submit(connection -> executeBatch(connection, upsertSql, records), (ignored, error) -> {
+            for (LicenseRecord record : records) {
+                queued.remove(record.key(), record);
+            }
+            if (error != null) {
+                logger.severe("Failed to write " + records.size() + " queued licenses: " + error.getMessage());
+            }
+        });
+    }
+
+    private int[] executeBatch(PooledConnection connection, String sql, Collection<LicenseRecord> records) throws SQLException {
+        PreparedStatement ps = connection.prepare(sql);
+        for (LicenseRecord record : records) {
+            bindUpsert(ps, record);
+            ps.addBatch();
+        }
+        return ps.executeBatch();
+    }
+
+    private List<LicenseRecord> mapRecords(PreparedStatement ps) throws SQLException {
+        List<LicenseRecord> records = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                records.add(mapRecord(rs));
+            }
+        }
+        return records;
+    }
+
+    private static int paddedParameterCount(int size) {
+        int parameters = Integer.highestOneBit(size);
+        return parameters < size ? parameters << 1 : parameters;
+    }
+
     private LicenseRecord mapRecord(ResultSet rs) throws SQLException {
         String key = rs.getString("license_key");
         String pluginId = rs.getString("plugin_id");
@@ -107,28 +540,87 @@ public final class JdbcLicenseRepository implements LicenseRepository {
         return new LicenseRecord(key, pluginId, owner, issuedAt, expiresAt, revoked);
     }
 
-    private void createTableIfNeeded() {
+    // SQLite keeps the journal mode in the database file, so this only changes anything on the
+    // first start in WAL mode.
+    private void enableWal(JdbcConnectionPool writer) {
+        try (PooledConnection connection = writer.borrow();
+             Statement st = connection.connection().createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA journal_mode = WAL")) {
+            String mode = rs.next() ? rs.getString(1) : "";
+            if (!"wal".equalsIgnoreCase(mode)) {
+                logger.warning("SQLite kept journal_mode " + mode + " instead of switching to WAL.");
+            }
+        } catch (SQLException e) {
+            logger.severe("Failed to enable SQLite WAL mode: " + e.getMessage());
+        }
+    }
+
+    private void createTableIfNeeded(JdbcConnectionPool target) {
         String sql = "CREATE TABLE IF NOT EXISTS licenses (" +
                 "license_key VARCHAR(128) PRIMARY KEY," +
                 "plugin_id VARCHAR(64) NOT NULL," +
                 "owner_name VARCHAR(128) NOT NULL," +
                 "issued_at BIGINT NOT NULL," +
                 "expires_at BIGINT NULL," +
-                "revoked BOOLEAN NOT NULL DEFAULT FALSE" +
+                "revoked BOOLEAN NOT NULL DEFAULT FALSE," +
+                "revoked_at BIGINT NULL" +
                 ")";
 
-        try (Connection connection = getConnection();
-             Statement st = connection.createStatement()) {
+        try (PooledConnection connection = target.borrow();
+             Statement st = connection.connection().createStatement()) {
             st.executeUpdate(sql);
+            addRevokedAtIfMissing(connection.connection(), st);
+            createIndexIfMissing(connection.connection(), st, "idx_licenses_expires_at", "expires_at");
+            createIndexIfMissing(connection.connection(), st, "idx_licenses_revoked_at", "revoked_at");
+            createIndexIfMissing(connection.connection(), st, "idx_licenses_plugin_id", "plugin_id, license_key");
+            createIndexIfMissing(connection.connection(), st, "idx_licenses_owner_name", "owner_name, license_key");
         } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to create licenses table: " + e.getMessage());
+            logger.severe("Failed to create licenses table: " + e.getMessage());
         }
     }
 
-    private Connection getConnection() throws SQLException {
-        if (username == null || username.isBlank()) {
-            return DriverManager.getConnection(jdbcUrl);
+    // Tables created before revoked_at existed get the column; licenses already revoked start their
+    // retention window now.
+    private void addRevokedAtIfMissing(Connection connection, Statement st) throws SQLException {
+        if (hasColumn(connection, "revoked_at")) {
+            return;
+        }
+        st.executeUpdate("ALTER TABLE licenses ADD COLUMN revoked_at BIGINT NULL");
+        try (PreparedStatement ps = connection.prepareStatement(
+                "UPDATE licenses SET revoked_at = ? WHERE revoked = ? AND revoked_at IS NULL")) {
+            ps.setLong(1, Instant.now().getEpochSecond());
+            ps.setBoolean(2, true);
+            int stamped = ps.executeUpdate();
+            logger.info("Added revoked_at to the licenses table; " + stamped + " revoked licenses were stamped with the current time.");
+        }
+    }
+
+    // MySQL has no CREATE INDEX IF NOT EXISTS, so existing indexes are looked up in the metadata.
+    private void createIndexIfMissing(Connection connection, Statement st, String name, String columns) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String table : List.of("licenses", "LICENSES")) {
+            try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+                while (rs.next()) {
+                    if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return;
+                    }
+                }
+            }
+        }
+        st.executeUpdate("CREATE INDEX " + name + " ON licenses (" + columns + ")");
+    }
+
+    private boolean hasColumn(Connection connection, String column) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String table : List.of("licenses", "LICENSES")) {
+            try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, table, null)) {
+                while (rs.next()) {
+                    if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                        return true;
+                    }
+                }
+            }
         }
-        return DriverManager.getConnection(jdbcUrl, username, password == null ? "" : password);
+        return false;
     }
 }
@@ -0,0 +1,14 @@
+package com.blancocl.licensing.repository;
+
+import java.time.Duration;
+
+public record JdbcPoolSettings(int minSize, int maxSize, Duration idleTimeout, Duration borrowTimeout) {
+    public JdbcPoolSettings {
+        maxSize = Math.max(1, maxSize);
+        minSize = Math.max(0, Math.min(minSize, maxSize));
+    }
+
+    public static JdbcPoolSettings defaults() {
+        return new JdbcPoolSettings(1, 8, Duration.ofMinutes(10), Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,14 @@
+package com.blancocl.licensing.repository;
+
+public record JdbcPoolStats(
+        int open,
+        int idle,
+        int active,
+        int maxSize,
+        long borrows,
+        long created,
+        long evicted,
+        long validationFailures,
+        long borrowTimeouts
+) {
+}
@@ -0,0 +1,11 @@
+package com.blancocl.licensing.repository;
+
+import java.sql.SQLException;
+
+// A unit of work on a borrowed connection. Writes run inside a transaction that the caller opens
+// and commits, so they must not commit or roll back themselves. Reads may be retried on another
+// connection, so they must build their result from scratch on every call.
+@FunctionalInterface
+interface JdbcWork<T> {
+    T apply(PooledConnection connection) throws SQLException;
+}
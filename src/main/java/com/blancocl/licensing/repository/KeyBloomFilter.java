@@ -0,0 +1,104 @@
+package com.blancocl.licensing.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free Bloom filter over license keys. The bit count is rounded up to a power of two so
+// probes are a mask rather than a division; the k probe positions come from two 64-bit hashes
+// (h1 + i * h2), so a key is hashed once per operation.
+final class KeyBloomFilter {
+    private static final int MAX_HASH_FUNCTIONS = 16;
+    // 64 MiB, enough for about 56 million keys at a 1% false-positive rate.
+    private static final long MAX_BITS = 1L << 29;
+
+    private final AtomicLongArray words;
+    private final long mask;
+    private final int hashFunctions;
+    private final AtomicLong setBits = new AtomicLong();
+
+    private KeyBloomFilter(long bits, int hashFunctions) {
+        this.words = new AtomicLongArray((int) (bits >>> 6));
+        this.mask = bits - 1;
+        this.hashFunctions = hashFunctions;
+    }
+
+    static KeyBloomFilter create(long expectedKeys, double falsePositiveRate) {
+        long keys = Math.max(1L, expectedKeys);
+        long bits = bitsFor(keys, falsePositiveRate);
+        int hashFunctions = (int) Math.round((double) bits / keys * Math.log(2));
+        return new KeyBloomFilter(bits, Math.min(MAX_HASH_FUNCTIONS, Math.max(1, hashFunctions)));
+    }
+
+    static long bitsFor(long expectedKeys, double falsePositiveRate) {
+        double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        double optimalBits = -Math.max(1L, expectedKeys) * Math.log(rate) / (Math.log(2) * Math.log(2));
+        return Math.min(MAX_BITS, Math.max(64L, Long.highestOneBit((long) Math.ceil(optimalBits) - 1) << 1));
+    }
+
+    void add(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = (h1 + i * h2) & mask;
+            int word = (int) (bit >>> 6);
+            long flag = 1L << bit;
+            long current = words.get(word);
+            while ((current & flag) == 0) {
+                long witness = words.compareAndExchange(word, current, current | flag);
+                if (witness == current) {
+                    setBits.incrementAndGet();
+                    break;
+                }
+                current = witness;
+            }
+        }
+    }
+
+    boolean mightContain(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = (h1 + i * h2) & mask;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long bits() {
+        return mask + 1;
+    }
+
+    int hashFunctions() {
+        return hashFunctions;
+    }
+
+    // The chance that an absent key hits k set bits, from the current fill ratio.
+    double estimatedFalsePositiveRate() {
+        return Math.pow((double) setBits.get() / bits(), hashFunctions);
+    }
+
+    // Distinct keys implied by the fill ratio: n = -(m / k) * ln(1 - X / m).
+    long approximateKeys() {
+        double fill = (double) setBits.get() / bits();
+        if (fill >= 1.0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.round(-(double) bits() / hashFunctions * Math.log1p(-fill));
+    }
+
+    private static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h ^ key.length());
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,319 @@
+package com.blancocl.licensing.repository;
+
+import com.blancocl.licensing.api.KeyFilterStats;
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Answers lookups for keys that were never stored without touching the delegate. The filter is
+// built from the delegate's keys in the background and lookups pass straight through until the
+// first build finishes. Writes add their key before reaching the delegate, so the filter never
+// misses a stored key. It is rebuilt when its estimated false-positive rate drifts past twice the
+// target, or when most of its keys have been deleted.
+public final class KeyFilteredLicenseRepository implements LicenseRepository {
+    private static final double REBUILD_DRIFT_FACTOR = 2.0;
+
+    private final Logger logger;
+    private final LicenseRepository delegate;
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+    // Writers hold the read lock from adding their key until the delegate write returns; a build
+    // takes the write lock only to install its filter, so every write either lands in the new
+    // filter or is visible to the key scan.
+    private final ReadWriteLock writes = new ReentrantReadWriteLock();
+    private final ExecutorService builder;
+    private final AtomicBoolean buildQueued = new AtomicBoolean();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final AtomicLong rebuilds = new AtomicLong();
+    // Keys seen by the last scan plus keys written since it started; re-upserts count twice, which
+    // only errs towards a larger filter.
+    private final AtomicLong scannedKeys = new AtomicLong();
+    private final LongAdder writtenKeys = new LongAdder();
+    private final LongAdder deletedKeys = new LongAdder();
+    private volatile KeyBloomFilter active;
+    private volatile KeyBloomFilter building;
+
+    public KeyFilteredLicenseRepository(
+            Logger logger,
+            LicenseRepository delegate,
+            long expectedKeys,
+            double falsePositiveRate
+    ) {
+        this.logger = logger;
+        this.delegate = delegate;
+        this.expectedKeys = Math.max(1L, expectedKeys);
+        this.falsePositiveRate = falsePositiveRate;
+        this.builder = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("PaperLicensing-KeyFilter").daemon().factory());
+        scheduleBuild(this.expectedKeys);
+    }
+
+    @Override
+    public void upsert(LicenseRecord record) {
+        writes.readLock().lock();
+        try {
+            remember(record.key());
+            delegate.upsert(record);
+        } finally {
+            writes.readLock().unlock();
+        }
+        rebuildIfDrifted();
+    }
+
+    @Override
+    public boolean upsertAll(Collection<LicenseRecord> records) {
+        boolean stored;
+        writes.readLock().lock();
+        try {
+            for (LicenseRecord record : records) {
+                remember(record.key());
+            }
+            stored = delegate.upsertAll(records);
+        } finally {
+            writes.readLock().unlock();
+        }
+        rebuildIfDrifted();
+        return stored;
+    }
+
+    // Keys of a failed insert stay in the filter; they only cost a storage lookup.
+    @Override
+    public boolean insertAll(Collection<LicenseRecord> records) {
+        boolean inserted;
+        writes.readLock().lock();
+        try {
+            for (LicenseRecord record : records) {
+                remember(record.key());
+            }
+            inserted = delegate.insertAll(records);
+        } finally {
+            writes.readLock().unlock();
+        }
+        rebuildIfDrifted();
+        return inserted;
+    }
+
+    @Override
+    public Optional<LicenseRecord> find(String key) {
+        KeyBloomFilter filter = active;
+        if (filter != null && !filter.mightContain(key)) {
+            shortCircuited.increment();
+            return Optional.empty();
+        }
+
+        Optional<LicenseRecord> found = delegate.find(key);
+        if (filter != null && found.isEmpty()) {
+            falsePositives.increment();
+        }
+        return found;
+    }
+
+    @Override
+    public Map<String, LicenseRecord> findAll(Collection<String> keys) {
+        KeyBloomFilter filter = active;
+        if (filter == null) {
+            return delegate.findAll(keys);
+        }
+
+        List<String> candidates = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (filter.mightContain(key)) {
+                candidates.add(key);
+            } else {
+                shortCircuited.increment();
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Map<String, LicenseRecord> found = delegate.findAll(candidates);
+        for (String key : candidates) {
+            if (!found.containsKey(key)) {
+                falsePositives.increment();
+            }
+        }
+        return found;
+    }
+
+    // Revoked records stay stored, so their keys stay in the filter.
+    @Override
+    public boolean revoke(String key) {
+        return delegate.revoke(key);
+    }
+
+    @Override
+    public List<LicenseRecord> findExpiring(Instant after, String afterKey, Instant until, int limit) {
+        return delegate.findExpiring(after, afterKey, until, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByPlugin(String pluginId, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return delegate.findPageByPlugin(pluginId, status, now, afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByOwner(String owner, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return delegate.findPageByOwner(owner, status, now, afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPurgeable(Instant cutoff, int limit) {
+        return delegate.findPurgeable(cutoff, limit);
+    }
+
+    // Bloom filters cannot drop keys; deleted keys linger as false positives until the next rebuild.
+    @Override
+    public int delete(Collection<String> keys) {
+        int deleted = delegate.delete(keys);
+        deletedKeys.add(deleted);
+        rebuildIfDrifted();
+        return deleted;
+    }
+
+    @Override
+    public boolean forEachKey(Consumer<String> action) {
+        return delegate.forEachKey(action);
+    }
+
+    public KeyFilterStats stats() {
+        KeyBloomFilter filter = active;
+        long misses = shortCircuited.sum();
+        long passedThrough = falsePositives.sum();
+        long absentLookups = misses + passedThrough;
+        return new KeyFilterStats(
+                filter != null,
+                filter == null ? 0L : filter.bits(),
+                filter == null ? 0 : filter.hashFunctions(),
+                filter == null ? 0L : filter.approximateKeys(),
+                filter == null ? 0.0 : filter.estimatedFalsePositiveRate(),
+                absentLookups == 0 ? 0.0 : (double) passedThrough / absentLookups,
+                misses,
+                passedThrough,
+                rebuilds.get()
+        );
+    }
+
+    @Override
+    public void close() {
+        builder.shutdownNow();
+        try {
+            if (!builder.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for the license key filter build to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    private void remember(String key) {
+        writtenKeys.increment();
+        KeyBloomFilter current = active;
+        if (current != null) {
+            current.add(key);
+        }
+        KeyBloomFilter next = building;
+        if (next != null) {
+            next.add(key);
+        }
+    }
+
+    private void rebuildIfDrifted() {
+        KeyBloomFilter filter = active;
+        if (filter == null) {
+            return;
+        }
+        long population = Math.max(0L, scannedKeys.get() + writtenKeys.sum() - deletedKeys.sum());
+        boolean saturated = filter.estimatedFalsePositiveRate() > falsePositiveRate * REBUILD_DRIFT_FACTOR;
+        boolean stale = deletedKeys.sum() > population;
+        // Size the replacement for twice the current population so it does not drift again soon.
+        long keys = Math.max(expectedKeys, population * 2);
+        if (stale || (saturated && KeyBloomFilter.bitsFor(keys, falsePositiveRate) > filter.bits())) {
+            scheduleBuild(keys);
+        }
+    }
+
+    private void scheduleBuild(long keys) {
+        if (!buildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            builder.execute(() -> {
+                try {
+                    build(keys);
+                } finally {
+                    buildQueued.set(false);
+                }
+                // The store may have outgrown the configured size before the first build.
+                rebuildIfDrifted();
+            });
+        } catch (RejectedExecutionException e) {
+            buildQueued.set(false);
+        }
+    }
+
+    private void build(long keys) {
+        long startedAt = System.nanoTime();
+        KeyBloomFilter next = KeyBloomFilter.create(keys, falsePositiveRate);
+        writes.writeLock().lock();
+        try {
+            building = next;
+            writtenKeys.reset();
+            deletedKeys.reset();
+        } finally {
+            writes.writeLock().unlock();
+        }
+
+        LongAdder scanned = new LongAdder();
+        boolean complete = delegate.forEachKey(key -> {
+            next.add(key);
+            scanned.increment();
+        }) && !Thread.currentThread().isInterrupted();
+        boolean rebuilt;
+        writes.writeLock().lock();
+        try {
+            building = null;
+            rebuilt = active != null;
+            if (complete) {
+                active = next;
+                scannedKeys.set(scanned.sum());
+            }
+        } finally {
+            writes.writeLock().unlock();
+        }
+
+        if (!complete) {
+            logger.warning("License key filter was not " + (rebuilt ? "rebuilt; lookups keep using the previous filter."
+                    : "built; lookups go to storage."));
+            return;
+        }
+        if (rebuilt) {
+            rebuilds.incrementAndGet();
+        }
+        logger.info("License key filter " + (rebuilt ? "rebuilt" : "built") + ": " + scanned.sum()
+                + " keys in " + (next.bits() >>> 13) + " KiB, estimated false-positive rate "
+                + String.format(Locale.ROOT, "%.5f", next.estimatedFalsePositiveRate()) + ", took "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms.");
+    }
+}
@@ -0,0 +1,55 @@
+package com.blancocl.licensing.repository;
+
+import com.blancocl.licensing.model.LicenseRecord;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Walks a keyset-paged query one page at a time. The next page is fetched with the last record of
+// the previous one (null for the first page) only once the previous page is used up, so at most one
+// page is held in memory and nothing stays open between pages.
+public final class LicenseCursor implements Iterator<LicenseRecord> {
+    public static final int PAGE_SIZE = 500;
+
+    private final Function<LicenseRecord, List<LicenseRecord>> nextPage;
+    private List<LicenseRecord> page = List.of();
+    private int position;
+    private boolean exhausted;
+
+    public LicenseCursor(Function<LicenseRecord, List<LicenseRecord>> nextPage) {
+        this.nextPage = nextPage;
+    }
+
+    public static Stream<LicenseRecord> stream(Function<LicenseRecord, List<LicenseRecord>> nextPage) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new LicenseCursor(nextPage),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position == page.size()) {
+            if (exhausted) {
+                return false;
+            }
+            page = nextPage.apply(page.isEmpty() ? null : page.get(page.size() - 1));
+            position = 0;
+            // A short page is the last one, which saves a final query that would come back empty.
+            exhausted = page.size() < PAGE_SIZE;
+        }
+        return true;
+    }
+
+    @Override
+    public LicenseRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.get(position++);
+    }
+}
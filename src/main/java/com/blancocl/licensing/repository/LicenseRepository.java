@@ -1,13 +1,89 @@
 package com.blancocl.licensing.repository;
 
 import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface LicenseRepository {
     void upsert(LicenseRecord record);
 
+    // Returns false when the write failed, so callers can keep the records and retry them. A record
+    // the backend can never store is rejected with an error instead, since retrying cannot help.
+    default boolean upsertAll(Collection<LicenseRecord> records) {
+        for (LicenseRecord record : records) {
+            upsert(record);
+        }
+        return true;
+    }
+
+    // Stores newly issued licenses as one unit. Returns false when the write failed; backends that
+    // write transactionally have then stored none of them.
+    default boolean insertAll(Collection<LicenseRecord> records) {
+        return upsertAll(records);
+    }
+
     Optional<LicenseRecord> find(String key);
 
+    default Map<String, LicenseRecord> findAll(Collection<String> keys) {
+        Map<String, LicenseRecord> found = new HashMap<>();
+        for (String key : keys) {
+            find(key).ifPresent(record -> found.put(key, record));
+        }
+        return found;
+    }
+
     boolean revoke(String key);
+
+    // Unrevoked licenses expiring after (after, afterKey) and no later than until, ordered by expiry
+    // and then key, so the last record of a page is the cursor for the next one.
+    List<LicenseRecord> findExpiring(Instant after, String afterKey, Instant until, int limit);
+
+    // Licenses of one plugin, or one owner, in the given status with keys after afterKey, in key
+    // order, so the last record of a page is the cursor for the next one. A license counts as
+    // expired once now is past its expiry.
+    List<LicenseRecord> findPageByPlugin(String pluginId, LicenseStatus status, Instant now, String afterKey, int limit);
+
+    List<LicenseRecord> findPageByOwner(String owner, LicenseStatus status, Instant now, String afterKey, int limit);
+
+    // The streams below fetch one page at a time as they are consumed, so memory stays bounded by
+    // the page size however many licenses match. Pages are separate queries: a license written
+    // while a stream is open shows up only if its position is still ahead of the cursor.
+    default Stream<LicenseRecord> findByPlugin(String pluginId, LicenseStatus status) {
+        Instant now = Instant.ofEpochSecond(Instant.now().getEpochSecond());
+        return LicenseCursor.stream(last -> findPageByPlugin(
+                pluginId, status, now, last == null ? "" : last.key(), LicenseCursor.PAGE_SIZE));
+    }
+
+    default Stream<LicenseRecord> findByOwner(String owner, LicenseStatus status) {
+        Instant now = Instant.ofEpochSecond(Instant.now().getEpochSecond());
+        return LicenseCursor.stream(last -> findPageByOwner(
+                owner, status, now, last == null ? "" : last.key(), LicenseCursor.PAGE_SIZE));
+    }
+
+    // Unrevoked licenses expiring no later than until, already expired ones included, in expiry
+    // order.
+    default Stream<LicenseRecord> findExpiringBefore(Instant until) {
+        return LicenseCursor.stream(last -> last == null
+                ? findExpiring(Instant.MIN, "", until, LicenseCursor.PAGE_SIZE)
+                : findExpiring(last.expiresAt(), last.key(), until, LicenseCursor.PAGE_SIZE));
+    }
+
+    // Licenses that expired, or were revoked, before the cutoff.
+    List<LicenseRecord> findPurgeable(Instant cutoff, int limit);
+
+    int delete(Collection<String> keys);
+
+    // Streams every stored key to the action. Returns false when the keys could not be read in full.
+    boolean forEachKey(Consumer<String> action);
+
+    default void close() {
+    }
 }
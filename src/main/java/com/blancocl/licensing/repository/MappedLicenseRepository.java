@@ -0,0 +1,1030 @@
+package com.blancocl.licensing.repository;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+// Fixed-size license records in a memory-mapped file, plus a mapped open-addressing index from key
+// hash to record slot.
+//
+// Writes only ever append: an upsert writes a new record after the last committed one, forces it,
+// and then bumps the committed count in the header. Records past that count are ignored, and every
+// record carries a CRC, so a crash mid-write loses at most the unacknowledged write. When a key is
+// written again the newer slot wins, and the older one becomes garbage. Once garbage outnumbers the
+// live records, at startup or after a write, the file is compacted. Deleting appends a tombstone record for the key. Revoking flips a byte in
+// place and stamps the revocation time; both fields are outside the CRC, so no other byte changes.
+//
+// The index is derived data. It is flagged clean only after a graceful close; otherwise startup
+// rebuilds it by scanning the records.
+//
+// Windows refuses to replace or delete a file that is still mapped, and the JDK only unmaps a
+// buffer once it is garbage collected. Every mapping of a file is therefore released explicitly,
+// under the write lock, before that file is swapped out.
+public final class MappedLicenseRepository implements LicenseRepository {
+    private static final long DATA_MAGIC = 0x504C494344415431L;
+    private static final long INDEX_MAGIC = 0x504C494349445831L;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int RECORD_BYTES = 512;
+    private static final int HEADER_BYTES = RECORD_BYTES;
+    private static final int SEGMENT_RECORDS = 16_384;
+    private static final long SEGMENT_BYTES = (long) SEGMENT_RECORDS * RECORD_BYTES;
+
+    // Data header.
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 8;
+    private static final int HEADER_RECORD_BYTES = 12;
+    private static final int HEADER_COUNT = 16;
+    private static final int HEADER_CRC = 24;
+
+    // Record layout. The CRC covers the lengths, the timestamps and the string data.
+    private static final int STATE = 0;
+    private static final int REVOKED = 1;
+    private static final int KEY_LENGTH = 2;
+    private static final int PLUGIN_ID_LENGTH = 4;
+    private static final int OWNER_LENGTH = 6;
+    private static final int ISSUED_AT = 8;
+    private static final int EXPIRES_AT = 16;
+    private static final int CRC = 24;
+    private static final int REVOKED_AT = 28;
+    // 36..43 is reserved for later fields.
+    private static final int DATA = 44;
+    private static final int DATA_CAPACITY = RECORD_BYTES - DATA;
+    private static final byte LIVE = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final long NO_EXPIRY = Long.MIN_VALUE;
+    private static final long NOT_REVOKED = Long.MIN_VALUE;
+
+    // Index header, followed by buckets of (slot + 1, key hash); slot + 1 == 0 marks an empty bucket.
+    private static final int INDEX_HEADER_BYTES = 64;
+    private static final int INDEX_BUCKET_COUNT = 8;
+    private static final int INDEX_CLEAN = 12;
+    private static final int INDEX_COVERED_RECORDS = 16;
+    private static final int INDEX_KEYS = 24;
+    private static final int INDEX_CRC = 32;
+    private static final int BUCKET_BYTES = 8;
+    private static final int MIN_BUCKETS = 1024;
+    private static final int MAX_BUCKETS = 1 << 27;
+    // The index stops growing at MAX_BUCKETS and is never filled past half, so probes always end.
+    private static final long MAX_KEYS = MAX_BUCKETS / 2;
+    private static final MethodHandle UNMAPPER = unmapper();
+
+    private record PageCandidate(byte[] key, int slot) {
+    }
+
+    private record ExpiringCandidate(long expiresAt, byte[] key, int slot) {
+    }
+
+    private final Logger logger;
+    private final Path dataPath;
+    private final Path indexPath;
+    private final boolean forceWrites;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private FileChannel dataChannel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer index;
+    private int bucketCount;
+    private int recordCount;
+    private long keyCount;
+
+    public MappedLicenseRepository(Logger logger, File dataFile, boolean forceWrites) {
+        this.logger = logger;
+        this.dataPath = dataFile.toPath();
+        this.indexPath = dataFile.toPath().resolveSibling(dataFile.getName() + ".idx");
+        this.forceWrites = forceWrites;
+
+        try {
+            open();
+            compactIfNeeded();
+        } catch (IOException e) {
+            logger.severe("Failed to open " + dataPath.getFileName() + ": " + e.getMessage());
+            closeChannel();
+        }
+    }
+
+    @Override
+    public void upsert(LicenseRecord record) {
+        upsertAll(List.of(record));
+    }
+
+    @Override
+    public boolean upsertAll(Collection<LicenseRecord> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!available()) {
+                logger.severe("License storage is not open; " + records.size() + " license(s) were not persisted.");
+                return false;
+            }
+
+            if (keyCount + records.size() > MAX_KEYS) {
+                requireIndexRoom(records);
+            }
+
+            int firstSlot = recordCount;
+            int slot = firstSlot;
+            List<byte[]> keys = new ArrayList<>(records.size());
+            long now = Instant.now().getEpochSecond();
+            for (LicenseRecord record : records) {
+                if (!fits(record)) {
+                    continue;
+                }
+                byte[] key = record.key().getBytes(StandardCharsets.UTF_8);
+                writeRecord(slot, record, key, revokedAtFor(record, key, now));
+                keys.add(key);
+                slot++;
+            }
+            if (slot == firstSlot) {
+                return true;
+            }
+
+            if (forceWrites) {
+                forceRecords(firstSlot, slot);
+            }
+            commit(slot);
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] key = keys.get(i);
+                indexPut(key, hash(key), firstSlot + i);
+            }
+            compactIfNeeded();
+            return true;
+        } catch (IOException e) {
+            logger.severe("Failed to upsert " + records.size() + " license(s): " + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Issued keys are stored all or nothing, so one record that can never fit fails the whole batch.
+    @Override
+    public boolean insertAll(Collection<LicenseRecord> records) {
+        boolean fit = true;
+        for (LicenseRecord record : records) {
+            fit &= fits(record);
+        }
+        return fit && upsertAll(records);
+    }
+
+    @Override
+    public Optional<LicenseRecord> find(String key) {
+        byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(encoded);
+        lock.readLock().lock();
+        try {
+            if (!available()) {
+                return Optional.empty();
+            }
+            int slot = indexFind(encoded, hash);
+            return slot < 0 ? Optional.empty() : Optional.of(readRecord(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean revoke(String key) {
+        byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(encoded);
+        lock.writeLock().lock();
+        try {
+            if (!available()) {
+                return false;
+            }
+            int slot = indexFind(encoded, hash);
+            if (slot < 0) {
+                return false;
+            }
+            MappedByteBuffer segment = segment(slot);
+            int base = base(slot);
+            if (segment.get(base + REVOKED) != 0) {
+                return false;
+            }
+            segment.putLong(base + REVOKED_AT, Instant.now().getEpochSecond());
+            segment.put(base + REVOKED, (byte) 1);
+            if (forceWrites) {
+                segment.force(base, REVOKED_AT + 8);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    // Like findPage, keeps only the limit earliest matches in a bounded heap and materializes those.
+    public List<LicenseRecord> findExpiring(Instant after, String afterKey, Instant until, int limit) {
+        long afterEpoch = after.getEpochSecond();
+        long untilEpoch = until.getEpochSecond();
+        byte[] afterBytes = afterKey.getBytes(StandardCharsets.UTF_8);
+        Comparator<ExpiringCandidate> byExpiry = Comparator.comparingLong(ExpiringCandidate::expiresAt)
+                .thenComparing(ExpiringCandidate::key, Arrays::compareUnsigned);
+        PriorityQueue<ExpiringCandidate> earliest = new PriorityQueue<>(byExpiry.reversed());
+        List<LicenseRecord> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (!available() || limit <= 0) {
+                return page;
+            }
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                int entry = index.getInt(INDEX_HEADER_BYTES + bucket * BUCKET_BYTES);
+                if (entry == 0) {
+                    continue;
+                }
+                int slot = entry - 1;
+                MappedByteBuffer segment = segment(slot);
+                int base = base(slot);
+                long expires = segment.getLong(base + EXPIRES_AT);
+                if (expires == NO_EXPIRY || expires < afterEpoch || expires > untilEpoch || segment.get(base + REVOKED) != 0) {
+                    continue;
+                }
+                byte[] key = readKey(slot);
+                if (expires == afterEpoch && Arrays.compareUnsigned(key, afterBytes) <= 0) {
+                    continue;
+                }
+                ExpiringCandidate candidate = new ExpiringCandidate(expires, key, slot);
+                if (earliest.size() == limit) {
+                    if (byExpiry.compare(candidate, earliest.peek()) >= 0) {
+                        continue;
+                    }
+                    earliest.poll();
+                }
+                earliest.add(candidate);
+            }
+            List<ExpiringCandidate> ordered = new ArrayList<>(earliest);
+            ordered.sort(byExpiry);
+            for (ExpiringCandidate candidate : ordered) {
+                page.add(readRecord(candidate.slot()));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByPlugin(String pluginId, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return findPage(false, pluginId, status, now, afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByOwner(String owner, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return findPage(true, owner, status, now, afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPurgeable(Instant cutoff, int limit) {
+        long cutoffEpoch = cutoff.getEpochSecond();
+        List<LicenseRecord> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (!available()) {
+                return matches;
+            }
+            for (int bucket = 0; bucket < bucketCount && matches.size() < limit; bucket++) {
+                int entry = index.getInt(INDEX_HEADER_BYTES + bucket * BUCKET_BYTES);
+                if (entry == 0) {
+                    continue;
+                }
+                MappedByteBuffer segment = segment(entry - 1);
+                int base = base(entry - 1);
+                long expires = segment.getLong(base + EXPIRES_AT);
+                long revokedAt = segment.getLong(base + REVOKED_AT);
+                boolean expired = expires != NO_EXPIRY && expires < cutoffEpoch;
+                boolean revokedLongAgo = segment.get(base + REVOKED) != 0 && revokedAt != NOT_REVOKED && revokedAt < cutoffEpoch;
+                if (expired || revokedLongAgo) {
+                    matches.add(readRecord(entry - 1));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    @Override
+    public int delete(Collection<String> keys) {
+        lock.writeLock().lock();
+        try {
+            if (!available()) {
+                return 0;
+            }
+            int firstSlot = recordCount;
+            int slot = firstSlot;
+            List<byte[]> deleted = new ArrayList<>();
+            for (String key : new LinkedHashSet<>(keys)) {
+                byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+                if (indexFind(encoded, hash(encoded)) >= 0) {
+                    writeTombstone(slot++, encoded);
+                    deleted.add(encoded);
+                }
+            }
+            if (deleted.isEmpty()) {
+                return 0;
+            }
+
+            if (forceWrites) {
+                forceRecords(firstSlot, slot);
+            }
+            commit(slot);
+            for (byte[] key : deleted) {
+                indexRemove(key, hash(key));
+            }
+            compactIfNeeded();
+            return deleted.size();
+        } catch (IOException e) {
+            logger.severe("Failed to delete " + keys.size() + " license(s): " + e.getMessage());
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Walks the records a chunk at a time so writers are never blocked for the whole scan. Only the
+    // slot the index points at is reported, so superseded copies of a key are skipped.
+    @Override
+    public boolean forEachKey(Consumer<String> action) {
+        int slot = 0;
+        while (true) {
+            List<String> keys = new ArrayList<>(SEGMENT_RECORDS);
+            lock.readLock().lock();
+            try {
+                if (!available()) {
+                    return false;
+                }
+                int end = Math.min(recordCount, slot + SEGMENT_RECORDS);
+                if (slot >= end) {
+                    return true;
+                }
+                for (; slot < end; slot++) {
+                    byte[] key = readKey(slot);
+                    if (indexFind(key, hash(key)) == slot) {
+                        keys.add(new String(key, StandardCharsets.UTF_8));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            keys.forEach(action);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!available()) {
+                return;
+            }
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            header.force();
+            writeIndexHeader(true);
+            index.force();
+        } finally {
+            closeChannel();
+            lock.writeLock().unlock();
+        }
+    }
+
+    // There is no secondary index on disk, so each page scans the key index. Fields are compared in
+    // place, and only the limit smallest keys after the cursor are kept, in a bounded heap.
+    private List<LicenseRecord> findPage(boolean byOwner, String value, LicenseStatus status, Instant now, String afterKey, int limit) {
+        byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+        byte[] after = afterKey.getBytes(StandardCharsets.UTF_8);
+        long nowEpoch = now.getEpochSecond();
+        Comparator<PageCandidate> byKey = (left, right) -> Arrays.compareUnsigned(left.key(), right.key());
+        PriorityQueue<PageCandidate> smallest = new PriorityQueue<>(byKey.reversed());
+        List<LicenseRecord> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (!available() || limit <= 0) {
+                return page;
+            }
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                int entry = index.getInt(INDEX_HEADER_BYTES + bucket * BUCKET_BYTES);
+                if (entry == 0) {
+                    continue;
+                }
+                int slot = entry - 1;
+                MappedByteBuffer segment = segment(slot);
+                int base = base(slot);
+                if (!fieldEquals(segment, base, byOwner, expected)) {
+                    continue;
+                }
+                long expires = segment.getLong(base + EXPIRES_AT);
+                if (!status.matches(segment.get(base + REVOKED) != 0, expires != NO_EXPIRY && expires < nowEpoch)) {
+                    continue;
+                }
+                byte[] key = readKey(slot);
+                if (Arrays.compareUnsigned(key, after) <= 0) {
+                    continue;
+                }
+                if (smallest.size() == limit) {
+                    if (Arrays.compareUnsigned(key, smallest.peek().key()) >= 0) {
+                        continue;
+                    }
+                    smallest.poll();
+                }
+                smallest.add(new PageCandidate(key, slot));
+            }
+            List<PageCandidate> ordered = new ArrayList<>(smallest);
+            ordered.sort(byKey);
+            for (PageCandidate candidate : ordered) {
+                page.add(readRecord(candidate.slot()));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Compares the record's plugin id, or owner, with the expected bytes in place.
+    private boolean fieldEquals(MappedByteBuffer segment, int base, boolean owner, byte[] expected) {
+        int keyLength = segment.getShort(base + KEY_LENGTH) & 0xFFFF;
+        int pluginIdLength = segment.getShort(base + PLUGIN_ID_LENGTH) & 0xFFFF;
+        int length = owner ? segment.getShort(base + OWNER_LENGTH) & 0xFFFF : pluginIdLength;
+        if (length != expected.length) {
+            return false;
+        }
+        int offset = base + DATA + keyLength + (owner ? pluginIdLength : 0);
+        for (int i = 0; i < length; i++) {
+            if (segment.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean available() {
+        return dataChannel != null;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(dataPath.toAbsolutePath().getParent());
+        dataChannel = FileChannel.open(dataPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = dataChannel.size() == 0;
+        header = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        segments.clear();
+
+        if (created) {
+            header.putLong(HEADER_MAGIC, DATA_MAGIC);
+            header.putInt(HEADER_VERSION, FORMAT_VERSION);
+            header.putInt(HEADER_RECORD_BYTES, RECORD_BYTES);
+            commit(0);
+            header.force();
+        } else if (header.getLong(HEADER_MAGIC) != DATA_MAGIC) {
+            throw new IOException("not a license data file");
+        } else if (header.getInt(HEADER_VERSION) != FORMAT_VERSION || header.getInt(HEADER_RECORD_BYTES) != RECORD_BYTES) {
+            throw new IOException("unsupported format version " + header.getInt(HEADER_VERSION));
+        } else if (header.getInt(HEADER_CRC) != crc(header, 0, HEADER_CRC)) {
+            recordCount = recoverRecordCount();
+            logger.warning(dataPath.getFileName() + " header is damaged; recovered " + recordCount + " records.");
+            commit(recordCount);
+        } else {
+            recordCount = (int) Math.min(header.getLong(HEADER_COUNT), maxRecordsInFile());
+        }
+        mapSegments(recordCount);
+
+        if (!openIndex()) {
+            rebuildIndex();
+        }
+        // Until close marks it clean again, a crash leaves the index flagged for a rebuild.
+        writeIndexHeader(false);
+        index.force();
+    }
+
+    // Header is unreadable: count records from the start until the first one that does not check out.
+    private int recoverRecordCount() throws IOException {
+        long available = maxRecordsInFile();
+        mapSegments((int) Math.min(Integer.MAX_VALUE, available));
+        int slot = 0;
+        while (slot < available && isValidRecord(slot)) {
+            slot++;
+        }
+        return slot;
+    }
+
+    private long maxRecordsInFile() throws IOException {
+        return Math.max(0L, (dataChannel.size() - HEADER_BYTES) / RECORD_BYTES);
+    }
+
+    private boolean openIndex() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < INDEX_HEADER_BYTES) {
+                return false;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int buckets = mapped.getInt(INDEX_BUCKET_COUNT);
+            boolean usable = mapped.getLong(0) == INDEX_MAGIC
+                    && mapped.getInt(INDEX_CRC) == crc(mapped, 0, INDEX_CRC)
+                    && mapped.getInt(INDEX_CLEAN) == 1
+                    && mapped.getLong(INDEX_COVERED_RECORDS) == recordCount
+                    && Integer.bitCount(buckets) == 1
+                    && channel.size() == INDEX_HEADER_BYTES + (long) buckets * BUCKET_BYTES;
+            if (!usable) {
+                logger.info("Rebuilding " + indexPath.getFileName() + " after an unclean shutdown.");
+                unmap(mapped);
+                return false;
+            }
+            index = mapped;
+            bucketCount = buckets;
+            keyCount = mapped.getLong(INDEX_KEYS);
+            return true;
+        }
+    }
+
+    private void rebuildIndex() throws IOException {
+        long startedAt = System.nanoTime();
+        replaceIndex(bucketsFor(recordCount));
+        keyCount = 0;
+        int damaged = 0;
+        for (int slot = 0; slot < recordCount; slot++) {
+            if (!isValidRecord(slot)) {
+                damaged++;
+                continue;
+            }
+            byte[] key = readKey(slot);
+            if (segment(slot).get(base(slot) + STATE) == TOMBSTONE) {
+                indexRemove(key, hash(key));
+            } else {
+                indexPut(key, hash(key), slot);
+            }
+        }
+        if (damaged > 0) {
+            logger.warning("Skipped " + damaged + " damaged records in " + dataPath.getFileName() + ".");
+        }
+        logger.info("Indexed " + keyCount + " licenses from " + dataPath.getFileName() + " in "
+                + (System.nanoTime() - startedAt) / 1_000_000 + " ms.");
+    }
+
+    // Superseded records and tombstones only cost disk space, so they are dropped once they
+    // outnumber the live records. That keeps the file under about twice the live data, and each
+    // compaction, one pass under the write lock, is paid for by as many writes as there are keys.
+    // The writes that triggered it are already committed, so a failed compaction is only logged.
+    private void compactIfNeeded() {
+        if (recordCount - keyCount <= Math.max(SEGMENT_RECORDS, keyCount)) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            logger.severe("Failed to compact " + dataPath.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    // Writes the current records into a fresh file and swaps it in before the index is rebuilt.
+    private void compact() throws IOException {
+        int superseded = (int) (recordCount - keyCount);
+        Path compacting = dataPath.resolveSibling(dataPath.getFileName() + ".compacting");
+        int written = 0;
+        MappedByteBuffer targetHeader = null;
+        try (FileChannel target = FileChannel.open(compacting, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            targetHeader = target.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            long position = HEADER_BYTES;
+            for (int slot = 0; slot < recordCount; slot++) {
+                byte[] key = readKey(slot);
+                if (indexFind(key, hash(key)) != slot) {
+                    continue;
+                }
+                record.clear();
+                record.put(0, segment(slot), base(slot), RECORD_BYTES);
+                while (record.hasRemaining()) {
+                    position += target.write(record, position);
+                }
+                written++;
+            }
+            targetHeader.putLong(HEADER_MAGIC, DATA_MAGIC);
+            targetHeader.putInt(HEADER_VERSION, FORMAT_VERSION);
+            targetHeader.putInt(HEADER_RECORD_BYTES, RECORD_BYTES);
+            targetHeader.putLong(HEADER_COUNT, written);
+            targetHeader.putInt(HEADER_CRC, crc(targetHeader, 0, HEADER_CRC));
+            target.force(true);
+        } finally {
+            unmap(targetHeader);
+        }
+
+        closeChannel();
+        try {
+            Files.deleteIfExists(indexPath);
+            Files.move(compacting, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open();
+        } catch (IOException e) {
+            closeChannel();
+            throw e;
+        }
+        logger.info("Compacted " + dataPath.getFileName() + ": dropped " + superseded + " superseded records, kept "
+                + written + ".");
+    }
+
+    private void mapSegments(int records) throws IOException {
+        while ((long) segments.size() * SEGMENT_RECORDS < records) {
+            long offset = HEADER_BYTES + segments.size() * SEGMENT_BYTES;
+            segments.add(dataChannel.map(FileChannel.MapMode.READ_WRITE, offset, SEGMENT_BYTES));
+        }
+    }
+
+    // A record that stays revoked keeps the time it was first revoked.
+    private long revokedAtFor(LicenseRecord record, byte[] key, long now) {
+        if (!record.revoked()) {
+            return NOT_REVOKED;
+        }
+        int existing = indexFind(key, hash(key));
+        if (existing < 0 || segment(existing).get(base(existing) + REVOKED) == 0) {
+            return now;
+        }
+        return segment(existing).getLong(base(existing) + REVOKED_AT);
+    }
+
+    // A record larger than one slot can never be stored, so it is rejected rather than retried.
+    private boolean fits(LicenseRecord record) {
+        int dataLength = record.key().getBytes(StandardCharsets.UTF_8).length
+                + record.pluginId().getBytes(StandardCharsets.UTF_8).length
+                + record.owner().getBytes(StandardCharsets.UTF_8).length;
+        if (dataLength <= DATA_CAPACITY) {
+            return true;
+        }
+        logger.severe("Rejected license " + record.key() + " for " + record.pluginId()
+                + ": it is too large for memory-mapped storage (" + dataLength + " > " + DATA_CAPACITY
+                + " bytes of key, plugin id and owner).");
+        return false;
+    }
+
+    private void writeRecord(int slot, LicenseRecord record, byte[] key, long revokedAt) throws IOException {
+        byte[] pluginId = record.pluginId().getBytes(StandardCharsets.UTF_8);
+        byte[] owner = record.owner().getBytes(StandardCharsets.UTF_8);
+        int dataLength = key.length + pluginId.length + owner.length;
+        mapSegments(slot + 1);
+        MappedByteBuffer segment = segment(slot);
+        int base = base(slot);
+        segment.put(base + STATE, LIVE);
+        segment.put(base + REVOKED, (byte) (record.revoked() ? 1 : 0));
+        segment.putShort(base + KEY_LENGTH, (short) key.length);
+        segment.putShort(base + PLUGIN_ID_LENGTH, (short) pluginId.length);
+        segment.putShort(base + OWNER_LENGTH, (short) owner.length);
+        segment.putLong(base + ISSUED_AT, record.issuedAt().getEpochSecond());
+        segment.putLong(base + EXPIRES_AT, record.expiresAt() == null ? NO_EXPIRY : record.expiresAt().getEpochSecond());
+        segment.put(base + DATA, key);
+        segment.put(base + DATA + key.length, pluginId);
+        segment.put(base + DATA + key.length + pluginId.length, owner);
+        segment.putInt(base + CRC, recordCrc(segment, base, dataLength));
+        segment.putLong(base + REVOKED_AT, revokedAt);
+    }
+
+    private void writeTombstone(int slot, byte[] key) throws IOException {
+        mapSegments(slot + 1);
+        MappedByteBuffer segment = segment(slot);
+        int base = base(slot);
+        segment.put(base + STATE, TOMBSTONE);
+        segment.put(base + REVOKED, (byte) 0);
+        segment.putShort(base + KEY_LENGTH, (short) key.length);
+        segment.putShort(base + PLUGIN_ID_LENGTH, (short) 0);
+        segment.putShort(base + OWNER_LENGTH, (short) 0);
+        segment.putLong(base + ISSUED_AT, 0L);
+        segment.putLong(base + EXPIRES_AT, NO_EXPIRY);
+        segment.put(base + DATA, key);
+        segment.putInt(base + CRC, recordCrc(segment, base, key.length));
+        segment.putLong(base + REVOKED_AT, NOT_REVOKED);
+    }
+
+    private LicenseRecord readRecord(int slot) {
+        MappedByteBuffer segment = segment(slot);
+        int base = base(slot);
+        int keyLength = segment.getShort(base + KEY_LENGTH) & 0xFFFF;
+        int pluginIdLength = segment.getShort(base + PLUGIN_ID_LENGTH) & 0xFFFF;
+        int ownerLength = segment.getShort(base + OWNER_LENGTH) & 0xFFFF;
+        byte[] data = new byte[keyLength + pluginIdLength + ownerLength];
+        segment.get(base + DATA, data);
+
+        long expiresAt = segment.getLong(base + EXPIRES_AT);
+        return new LicenseRecord(
+                new String(data, 0, keyLength, StandardCharsets.UTF_8),
+                new String(data, keyLength, pluginIdLength, StandardCharsets.UTF_8),
+                new String(data, keyLength + pluginIdLength, ownerLength, StandardCharsets.UTF_8),
+                Instant.ofEpochSecond(segment.getLong(base + ISSUED_AT)),
+                expiresAt == NO_EXPIRY ? null : Instant.ofEpochSecond(expiresAt),
+                segment.get(base + REVOKED) != 0
+        );
+    }
+
+    private byte[] readKey(int slot) {
+        MappedByteBuffer segment = segment(slot);
+        int base = base(slot);
+        byte[] key = new byte[segment.getShort(base + KEY_LENGTH) & 0xFFFF];
+        segment.get(base + DATA, key);
+        return key;
+    }
+
+    private boolean isValidRecord(int slot) {
+        MappedByteBuffer segment = segment(slot);
+        int base = base(slot);
+        byte state = segment.get(base + STATE);
+        if (state != LIVE && state != TOMBSTONE) {
+            return false;
+        }
+        int dataLength = (segment.getShort(base + KEY_LENGTH) & 0xFFFF)
+                + (segment.getShort(base + PLUGIN_ID_LENGTH) & 0xFFFF)
+                + (segment.getShort(base + OWNER_LENGTH) & 0xFFFF);
+        return dataLength <= DATA_CAPACITY && segment.getInt(base + CRC) == recordCrc(segment, base, dataLength);
+    }
+
+    // Compares the stored key with the lookup key in place, without copying it out of the mapping.
+    private boolean keyEquals(int slot, byte[] key) {
+        MappedByteBuffer segment = segment(slot);
+        int base = base(slot);
+        if ((segment.getShort(base + KEY_LENGTH) & 0xFFFF) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (segment.get(base + DATA + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void forceRecords(int fromSlot, int toSlot) {
+        for (int slot = fromSlot; slot < toSlot; ) {
+            int end = Math.min(toSlot, (slot / SEGMENT_RECORDS + 1) * SEGMENT_RECORDS);
+            segment(slot).force(base(slot), (end - slot) * RECORD_BYTES);
+            slot = end;
+        }
+    }
+
+    private void commit(int records) {
+        recordCount = records;
+        header.putLong(HEADER_COUNT, records);
+        header.putInt(HEADER_CRC, crc(header, 0, HEADER_CRC));
+        if (forceWrites) {
+            header.force(0, HEADER_CRC + 4);
+        }
+    }
+
+    private int indexFind(byte[] key, int hash) {
+        int mask = bucketCount - 1;
+        for (int bucket = hash & mask; ; bucket = (bucket + 1) & mask) {
+            int position = INDEX_HEADER_BYTES + bucket * BUCKET_BYTES;
+            int entry = index.getInt(position);
+            if (entry == 0) {
+                return -1;
+            }
+            if (index.getInt(position + 4) == hash && keyEquals(entry - 1, key)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    // Refuses a batch whose new keys would not fit before any of it is written, so no committed
+    // record is left without an index entry.
+    private void requireIndexRoom(Collection<LicenseRecord> records) throws IOException {
+        Set<String> added = new HashSet<>();
+        for (LicenseRecord record : records) {
+            byte[] key = record.key().getBytes(StandardCharsets.UTF_8);
+            if (indexFind(key, hash(key)) < 0) {
+                added.add(record.key());
+            }
+        }
+        if (keyCount + added.size() > MAX_KEYS) {
+            throw new IOException("the license index is full at " + MAX_KEYS + " keys");
+        }
+    }
+
+    private void indexPut(byte[] key, int hash, int slot) throws IOException {
+        if ((keyCount + 1) * 2 > bucketCount && bucketCount < MAX_BUCKETS) {
+            growIndex();
+        }
+        int mask = bucketCount - 1;
+        for (int bucket = hash & mask; ; bucket = (bucket + 1) & mask) {
+            int position = INDEX_HEADER_BYTES + bucket * BUCKET_BYTES;
+            int entry = index.getInt(position);
+            if (entry == 0) {
+                if (keyCount >= MAX_KEYS) {
+                    throw new IOException("the license index is full at " + MAX_KEYS + " keys");
+                }
+                index.putInt(position, slot + 1);
+                index.putInt(position + 4, hash);
+                keyCount++;
+                return;
+            }
+            if (index.getInt(position + 4) == hash && keyEquals(entry - 1, key)) {
+                index.putInt(position, slot + 1);
+                return;
+            }
+        }
+    }
+
+    // Backward-shift deletion: later entries of the probe chain move up so lookups never stop early.
+    private void indexRemove(byte[] key, int hash) {
+        int mask = bucketCount - 1;
+        int hole = hash & mask;
+        while (true) {
+            int entry = index.getInt(INDEX_HEADER_BYTES + hole * BUCKET_BYTES);
+            if (entry == 0) {
+                return;
+            }
+            if (index.getInt(INDEX_HEADER_BYTES + hole * BUCKET_BYTES + 4) == hash && keyEquals(entry - 1, key)) {
+                break;
+            }
+            hole = (hole + 1) & mask;
+        }
+        for (int bucket = (hole + 1) & mask; ; bucket = (bucket + 1) & mask) {
+            int position = INDEX_HEADER_BYTES + bucket * BUCKET_BYTES;
+            int entry = index.getInt(position);
+            if (entry == 0) {
+                break;
+            }
+            int bucketHash = index.getInt(position + 4);
+            int home = bucketHash & mask;
+            if (((bucket - home) & mask) >= ((bucket - hole) & mask)) {
+                index.putInt(INDEX_HEADER_BYTES + hole * BUCKET_BYTES, entry);
+                index.putInt(INDEX_HEADER_BYTES + hole * BUCKET_BYTES + 4, bucketHash);
+                hole = bucket;
+            }
+        }
+        index.putInt(INDEX_HEADER_BYTES + hole * BUCKET_BYTES, 0);
+        index.putInt(INDEX_HEADER_BYTES + hole * BUCKET_BYTES + 4, 0);
+        keyCount--;
+    }
+
+    private void growIndex() throws IOException {
+        replaceIndex(bucketCount * 2);
+    }
+
+    // Builds the new index in a separate file, moving every bucket of the current one over; stored
+    // hashes mean no key is read again. Both mappings are released before the new file replaces
+    // the old one, and the result is mapped again afterwards.
+    private void replaceIndex(int buckets) throws IOException {
+        MappedByteBuffer previous = index;
+        int previousBuckets = bucketCount;
+        Path building = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        long size = INDEX_HEADER_BYTES + (long) buckets * BUCKET_BYTES;
+        try {
+            try (FileChannel channel = FileChannel.open(building, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                index = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            bucketCount = buckets;
+            int mask = buckets - 1;
+            for (int i = 0; previous != null && i < previousBuckets; i++) {
+                int entry = previous.getInt(INDEX_HEADER_BYTES + i * BUCKET_BYTES);
+                if (entry == 0) {
+                    continue;
+                }
+                int hash = previous.getInt(INDEX_HEADER_BYTES + i * BUCKET_BYTES + 4);
+                int bucket = hash & mask;
+                while (index.getInt(INDEX_HEADER_BYTES + bucket * BUCKET_BYTES) != 0) {
+                    bucket = (bucket + 1) & mask;
+                }
+                index.putInt(INDEX_HEADER_BYTES + bucket * BUCKET_BYTES, entry);
+                index.putInt(INDEX_HEADER_BYTES + bucket * BUCKET_BYTES + 4, hash);
+            }
+            writeIndexHeader(false);
+            index.force();
+
+            unmap(previous);
+            unmap(index);
+            index = null;
+            Files.move(building, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                index = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        } catch (IOException e) {
+            // Without an index nothing can be found, so the store stops serving until a restart
+            // rebuilds it.
+            closeChannel();
+            throw e;
+        }
+    }
+
+    private void writeIndexHeader(boolean clean) {
+        index.putLong(0, INDEX_MAGIC);
+        index.putInt(INDEX_BUCKET_COUNT, bucketCount);
+        index.putInt(INDEX_CLEAN, clean ? 1 : 0);
+        index.putLong(INDEX_COVERED_RECORDS, recordCount);
+        index.putLong(INDEX_KEYS, keyCount);
+        index.putInt(INDEX_CRC, crc(index, 0, INDEX_CRC));
+    }
+
+    private void closeChannel() {
+        if (dataChannel != null) {
+            try {
+                dataChannel.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close " + dataPath.getFileName() + ": " + e.getMessage());
+            }
+        }
+        dataChannel = null;
+        for (MappedByteBuffer segment : segments) {
+            unmap(segment);
+        }
+        unmap(header);
+        unmap(index);
+        header = null;
+        index = null;
+        segments.clear();
+    }
+
+    private MappedByteBuffer segment(int slot) {
+        return segments.get(slot / SEGMENT_RECORDS);
+    }
+
+    private static int base(int slot) {
+        return (slot % SEGMENT_RECORDS) * RECORD_BYTES;
+    }
+
+    private static int bucketsFor(int records) {
+        int needed = Math.max(MIN_BUCKETS, records * 2);
+        return Math.min(MAX_BUCKETS, Integer.highestOneBit(needed - 1) << 1);
+    }
+
+    private static int recordCrc(ByteBuffer segment, int base, int dataLength) {
+        CRC32C crc = new CRC32C();
+        crc.update(segment.slice(base + KEY_LENGTH, CRC - KEY_LENGTH));
+        crc.update(segment.slice(base + DATA, dataLength));
+        return (int) crc.getValue();
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    // Callers must drop every reference to the buffer; touching it afterwards crashes the JVM.
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || UNMAPPER == null) {
+            return;
+        }
+        try {
+            UNMAPPER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable ignored) {
+            // The buffer stays mapped until it is garbage collected.
+        }
+    }
+
+    private static MethodHandle unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0x811C9DC5;
+        for (byte b : key) {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,355 @@
+package com.blancocl.licensing.repository;
+
+import com.blancocl.licensing.api.RecordCacheStats;
+import com.blancocl.licensing.model.LicenseRecord;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// W-TinyLFU: new entries go into a small LRU window, and an entry leaving the window is only
+// admitted to the main region if the frequency sketch has seen its key more often than the key it
+// would evict. The main region is a segmented LRU; a second hit promotes an entry from probation
+// to protected. A burst of one-off lookups therefore cycles through the window and probation
+// without displacing the keys that are read all the time.
+//
+// Lookups read the map without locking. The policy is updated under one lock, and a hit that
+// finds the lock taken skips its reordering instead of waiting, so the policy only samples
+// accesses under contention and never slows down a read.
+final class RecordCache {
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    // Record, three strings, two instants, the node and its map entry; the characters come on top.
+    private static final int ENTRY_OVERHEAD_BYTES = 296;
+    private static final int STAMP_STRIPES = 1024;
+
+    private enum Region {
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private static final class Node {
+        private final String key;
+        private volatile LicenseRecord record;
+        private volatile long expiresAtNanos;
+        private long weight;
+        private Region region;
+        private Node prev;
+        private Node next;
+
+        private Node(String key) {
+            this.key = key;
+        }
+    }
+
+    // Doubly linked LRU list, least recent at the head.
+    private static final class Queue {
+        private Node head;
+        private Node tail;
+        private long weight;
+
+        private void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        private void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        private void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    private final Map<String, Node> data = new ConcurrentHashMap<>();
+    private final ReentrantLock policy = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final boolean weighByBytes;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long ttlNanos;
+    private final Queue window = new Queue();
+    private final Queue probation = new Queue();
+    private final Queue protectedQueue = new Queue();
+    // Bumped by every write, so a load that read storage before the write does not cache what it read.
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    RecordCache(RecordCacheSettings settings) {
+        this.weighByBytes = settings.maxBytes() > 0;
+        this.maximumWeight = Math.max(1L, weighByBytes ? settings.maxBytes() : settings.maxEntries());
+        this.windowMaximum = Math.max(1L, maximumWeight * WINDOW_PERCENT / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * PROTECTED_PERCENT / 100;
+        this.ttlNanos = settings.ttl().toNanos();
+        long expectedEntries = weighByBytes ? maximumWeight / ENTRY_OVERHEAD_BYTES : maximumWeight;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    LicenseRecord get(String key) {
+        Node node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (expired(node)) {
+            misses.increment();
+            expire(node);
+            return null;
+        }
+        hits.increment();
+        if (policy.tryLock()) {
+            try {
+                sketch.increment(key);
+                if (node.region != null) {
+                    onHit(node);
+                }
+            } finally {
+                policy.unlock();
+            }
+        }
+        return node.record;
+    }
+
+    // Taken before reading storage and handed to load().
+    long stamp(String key) {
+        return stamps.get(stripe(key));
+    }
+
+    void load(LicenseRecord record, long stamp) {
+        String key = record.key();
+        policy.lock();
+        try {
+            sketch.increment(key);
+            if (stamps.get(stripe(key)) != stamp) {
+                return;
+            }
+            Node node = data.get(key);
+            if (node != null) {
+                replace(node, record);
+                return;
+            }
+            node = new Node(key);
+            node.record = record;
+            node.expiresAtNanos = expiresAt();
+            node.weight = weigh(record);
+            node.region = Region.WINDOW;
+            data.put(key, node);
+            window.addLast(node);
+            evict();
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    // Write-through for a key this server wrote. Keys that are not cached stay out, so bulk
+    // writes do not churn the cache; they are cached on their first read.
+    void update(LicenseRecord record) {
+        policy.lock();
+        try {
+            stamps.incrementAndGet(stripe(record.key()));
+            Node node = data.get(record.key());
+            if (node != null) {
+                replace(node, record);
+            }
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    void revoked(String key) {
+        policy.lock();
+        try {
+            stamps.incrementAndGet(stripe(key));
+            Node node = data.get(key);
+            if (node != null) {
+                replace(node, node.record.withRevoked(true));
+            }
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    void invalidate(String key) {
+        policy.lock();
+        try {
+            stamps.incrementAndGet(stripe(key));
+            Node node = data.remove(key);
+            if (node != null) {
+                queue(node.region).remove(node);
+                node.region = null;
+            }
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    RecordCacheStats stats() {
+        long entries;
+        long weight;
+        policy.lock();
+        try {
+            entries = data.size();
+            weight = window.weight + probation.weight + protectedQueue.weight;
+        } finally {
+            policy.unlock();
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        return new RecordCacheStats(
+                entries,
+                weighByBytes,
+                weight,
+                maximumWeight,
+                hitCount,
+                missCount,
+                lookups == 0 ? 0.0 : (double) hitCount / lookups,
+                evictions.sum(),
+                rejected.sum()
+        );
+    }
+
+    private boolean expired(Node node) {
+        return ttlNanos > 0 && System.nanoTime() - node.expiresAtNanos >= 0;
+    }
+
+    // An expired entry would otherwise keep its place, and its weight, until the policy evicted it.
+    // A write may have refreshed it meanwhile, so the expiry is checked again under the lock.
+    private void expire(Node node) {
+        policy.lock();
+        try {
+            if (node.region != null && expired(node) && data.remove(node.key, node)) {
+                queue(node.region).remove(node);
+                node.region = null;
+            }
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    private void onHit(Node node) {
+        switch (node.region) {
+            case WINDOW -> window.moveToLast(node);
+            case PROBATION -> {
+                probation.remove(node);
+                node.region = Region.PROTECTED;
+                protectedQueue.addLast(node);
+                demoteProtected();
+            }
+            case PROTECTED -> protectedQueue.moveToLast(node);
+        }
+    }
+
+    private void replace(Node node, LicenseRecord record) {
+        Queue queue = queue(node.region);
+        queue.remove(node);
+        node.record = record;
+        node.expiresAtNanos = expiresAt();
+        node.weight = weigh(record);
+        queue.addLast(node);
+        demoteProtected();
+        evict();
+    }
+
+    private void demoteProtected() {
+        while (protectedQueue.weight > protectedMaximum && protectedQueue.head != null) {
+            Node node = protectedQueue.head;
+            protectedQueue.remove(node);
+            node.region = Region.PROBATION;
+            probation.addLast(node);
+        }
+    }
+
+    // Each entry pushed out of the window competes with the least recently used entry of the main
+    // region, and whichever key the sketch has seen less often is evicted.
+    private void evict() {
+        long mainMaximum = maximumWeight - windowMaximum;
+        while (window.weight > windowMaximum && window.head != null) {
+            Node candidate = window.head;
+            window.remove(candidate);
+            candidate.region = Region.PROBATION;
+            probation.addLast(candidate);
+            while (probation.weight + protectedQueue.weight > mainMaximum) {
+                Node victim = probation.head != candidate ? probation.head : protectedQueue.head;
+                if (victim == null || candidate.weight > mainMaximum) {
+                    drop(candidate);
+                    rejected.increment();
+                    break;
+                }
+                if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    drop(victim);
+                } else {
+                    drop(candidate);
+                    rejected.increment();
+                    break;
+                }
+            }
+        }
+        // An update that grew a main entry can push the main region over without any candidate.
+        while (probation.weight + protectedQueue.weight > mainMaximum) {
+            Node victim = probation.head != null ? probation.head : protectedQueue.head;
+            drop(victim);
+        }
+    }
+
+    private void drop(Node node) {
+        queue(node.region).remove(node);
+        node.region = null;
+        data.remove(node.key, node);
+        evictions.increment();
+    }
+
+    private Queue queue(Region region) {
+        return switch (region) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            case PROTECTED -> protectedQueue;
+        };
+    }
+
+    private long expiresAt() {
+        return ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0L;
+    }
+
+    private long weigh(LicenseRecord record) {
+        if (!weighByBytes) {
+            return 1L;
+        }
+        return ENTRY_OVERHEAD_BYTES + record.key().length() + record.pluginId().length() + record.owner().length();
+    }
+
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+    }
+}
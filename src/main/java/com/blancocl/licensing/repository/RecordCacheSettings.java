@@ -0,0 +1,11 @@
+package com.blancocl.licensing.repository;
+
+import java.time.Duration;
+
+// maxBytes > 0 bounds the cache by estimated size instead of by maxEntries. A zero ttl keeps
+// entries until they are evicted, which is only safe when this server makes every write.
+public record RecordCacheSettings(boolean enabled, long maxEntries, long maxBytes, Duration ttl) {
+    public static RecordCacheSettings disabled() {
+        return new RecordCacheSettings(false, 0L, 0L, Duration.ZERO);
+    }
+}
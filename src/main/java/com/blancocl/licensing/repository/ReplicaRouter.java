@@ -0,0 +1,241 @@
+package com.blancocl.licensing.repository;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Spreads reads round-robin over healthy read replicas; writes always go to the primary. A replica
+// is taken out of rotation when a read on it fails, or when a health check finds it unreachable or
+// lagging by more than maxLag; the check puts it back once it has recovered. Keys this server wrote
+// are read from the primary until every replica still in rotation must have caught up, which is
+// maxLag plus one check interval. Listings are not about particular keys, so for the same window
+// after any write here they go to the primary too.
+public final class ReplicaRouter implements AutoCloseable {
+    // Past this many tracked keys, all reads go to the primary for one window instead.
+    private static final int MAX_TRACKED_WRITES = 100_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // MySQL before 8.0.22 and MariaDB before 10.5.1 only know the older statement.
+    private static final List<String> STATUS_QUERIES = List.of("SHOW REPLICA STATUS", "SHOW SLAVE STATUS");
+
+    private static final class Replica {
+        private final String name;
+        private final JdbcConnectionPool pool;
+        private volatile boolean healthy = true;
+        private boolean lagUnknownLogged;
+
+        private Replica(String name, JdbcConnectionPool pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+    }
+
+    private final Logger logger;
+    private final JdbcConnectionPool primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagSeconds;
+    private final long readYourWritesNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    // Key -> System.nanoTime() until which it is read from the primary.
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<>();
+    private volatile long primaryOnlyUntil = System.nanoTime();
+    private volatile long listingsPrimaryUntil = System.nanoTime();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final ScheduledExecutorService healthCheck;
+
+    public ReplicaRouter(
+            Logger logger,
+            JdbcConnectionPool primary,
+            String username,
+            String password,
+            JdbcPoolSettings poolSettings,
+            ReplicaSettings settings
+    ) {
+        this.logger = logger;
+        this.primary = primary;
+        this.maxLagSeconds = Math.max(0L, settings.maxLag().toSeconds());
+        this.readYourWritesNanos = settings.maxLag().plus(settings.healthCheckInterval()).toNanos();
+        for (int i = 0; i < settings.jdbcUrls().size(); i++) {
+            replicas.add(new Replica("replica-" + (i + 1), new JdbcConnectionPool(
+                    logger, settings.jdbcUrls().get(i), username, password, poolSettings,
+                    List.of("SET SESSION TRANSACTION READ ONLY"))));
+        }
+        this.healthCheck = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("PaperLicensing-ReplicaHealth").daemon().factory());
+        long intervalMs = Math.max(1000L, settings.healthCheckInterval().toMillis());
+        healthCheck.scheduleWithFixedDelay(this::checkSafely, 0L, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs a read on a replica unless one of the keys was written here recently. A failed replica
+    // read is retried once on the primary.
+    <T> T read(Collection<String> keys, JdbcWork<T> work) throws SQLException {
+        Replica replica = readsFromPrimary(keys) ? null : pick();
+        if (replica != null) {
+            try (PooledConnection connection = replica.pool.borrow()) {
+                T result = work.apply(connection);
+                replicaReads.increment();
+                return result;
+            } catch (SQLException e) {
+                replica.healthy = false;
+                failovers.increment();
+                logger.warning("Read on MySQL " + replica.name + " failed, taking it out of rotation: " + e.getMessage());
+            }
+        }
+        try (PooledConnection connection = primary.borrow()) {
+            T result = work.apply(connection);
+            primaryReads.increment();
+            return result;
+        }
+    }
+
+    void wrote(Collection<String> keys) {
+        long until = System.nanoTime() + readYourWritesNanos;
+        listingsPrimaryUntil = until;
+        if (recentWrites.size() + keys.size() > MAX_TRACKED_WRITES) {
+            primaryOnlyUntil = until;
+            recentWrites.clear();
+            return;
+        }
+        for (String key : keys) {
+            recentWrites.put(key, until);
+        }
+    }
+
+    public String stats() {
+        long healthy = replicas.stream().filter(replica -> replica.healthy).count();
+        return healthy + "/" + replicas.size() + " replicas healthy, " + replicaReads.sum() + " replica reads, "
+                + primaryReads.sum() + " primary reads, " + failovers.sum() + " failovers";
+    }
+
+    @Override
+    public void close() {
+        healthCheck.shutdownNow();
+        logger.info("Closing MySQL replica pools: " + stats());
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    private boolean readsFromPrimary(Collection<String> keys) {
+        long now = System.nanoTime();
+        if (now - primaryOnlyUntil < 0) {
+            return true;
+        }
+        if (keys.isEmpty()) {
+            return now - listingsPrimaryUntil < 0;
+        }
+        if (recentWrites.isEmpty()) {
+            return false;
+        }
+        for (String key : keys) {
+            Long until = recentWrites.get(key);
+            if (until != null && now - until < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Replica pick() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private void checkSafely() {
+        try {
+            long now = System.nanoTime();
+            recentWrites.values().removeIf(until -> now - until >= 0);
+            for (Replica replica : replicas) {
+                check(replica);
+            }
+        } catch (RuntimeException e) {
+            logger.warning("MySQL replica health check failed: " + e.getMessage());
+        }
+    }
+
+    private void check(Replica replica) {
+        String problem;
+        try (PooledConnection connection = replica.pool.borrow()) {
+            problem = connection.connection().isValid(VALIDATION_TIMEOUT_SECONDS) ? lagProblem(replica, connection) : "connection is not valid";
+        } catch (SQLException e) {
+            problem = e.getMessage();
+        }
+
+        boolean healthy = problem == null;
+        if (healthy != replica.healthy) {
+            if (healthy) {
+                logger.info("MySQL " + replica.name + " is healthy again and back in rotation.");
+            } else {
+                logger.warning("MySQL " + replica.name + " taken out of rotation: " + problem);
+            }
+        }
+        replica.healthy = healthy;
+    }
+
+    // Seconds_Behind_Source is NULL while replication is stopped. A server that reports no
+    // replication status at all, or allows neither query, stays in rotation without a lag check,
+    // and that is logged once per replica.
+    private String lagProblem(Replica replica, PooledConnection connection) {
+        SQLException failure = null;
+        for (String query : STATUS_QUERIES) {
+            try (Statement st = connection.connection().createStatement();
+                 ResultSet rs = st.executeQuery(query)) {
+                if (!rs.next()) {
+                    return lagUnknown(replica, "it reports no replication status");
+                }
+                String column = lagColumn(rs.getMetaData());
+                if (column == null) {
+                    return lagUnknown(replica, "its replication status has no lag column");
+                }
+                long lag = rs.getLong(column);
+                if (rs.wasNull()) {
+                    return "replication is stopped";
+                }
+                return lag > maxLagSeconds ? "replication lag is " + lag + " s" : null;
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+        return lagUnknown(replica, failure.getMessage());
+    }
+
+    private String lagUnknown(Replica replica, String reason) {
+        if (!replica.lagUnknownLogged) {
+            replica.lagUnknownLogged = true;
+            logger.warning("Cannot read the replication lag of MySQL " + replica.name + " (" + reason
+                    + "); it stays in rotation without a lag check.");
+        }
+        return null;
+    }
+
+    // MySQL before 8.0.22 and MariaDB still name the column after the master.
+    private static String lagColumn(ResultSetMetaData metaData) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            String name = metaData.getColumnLabel(i);
+            if ("Seconds_Behind_Source".equalsIgnoreCase(name) || "Seconds_Behind_Master".equalsIgnoreCase(name)) {
+                return name;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.blancocl.licensing.repository;
+
+import java.time.Duration;
+import java.util.List;
+
+public record ReplicaSettings(List<String> jdbcUrls, Duration healthCheckInterval, Duration maxLag) {
+    public ReplicaSettings {
+        jdbcUrls = jdbcUrls.stream().map(String::trim).filter(url -> !url.isEmpty()).toList();
+    }
+
+    public static ReplicaSettings none() {
+        return new ReplicaSettings(List.of(), Duration.ofSeconds(5), Duration.ofSeconds(10));
+    }
+
+    public boolean enabled() {
+        return !jdbcUrls.isEmpty();
+    }
+}
@@ -0,0 +1,16 @@
+package com.blancocl.licensing.repository;
+
+public record SqliteWalSettings(boolean enabled, SqliteWriteMode writeMode, int maxBatchSize) {
+    public SqliteWalSettings {
+        writeMode = writeMode == null ? SqliteWriteMode.DURABLE : writeMode;
+        maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public static SqliteWalSettings defaults() {
+        return new SqliteWalSettings(true, SqliteWriteMode.DURABLE, 512);
+    }
+
+    public static SqliteWalSettings disabled() {
+        return new SqliteWalSettings(false, SqliteWriteMode.DURABLE, 1);
+    }
+}
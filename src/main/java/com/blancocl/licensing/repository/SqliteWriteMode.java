@@ -0,0 +1,22 @@
+package com.blancocl.licensing.repository;
+
+// DURABLE record writes return once their batch has committed. QUEUED single-record upserts return
+// as soon as they are queued. Writes that report a result (upsertAll, insertAll, revoke, delete)
+// always wait, so the write-behind, change feed and snapshot import only count committed rows. The
+// mode is chosen per server: callers reach storage through LicenseRepository, which has no
+// per-call durability option.
+public enum SqliteWriteMode {
+    DURABLE,
+    QUEUED;
+
+    public static SqliteWriteMode fromConfig(String raw) {
+        if (raw == null) {
+            return DURABLE;
+        }
+        try {
+            return SqliteWriteMode.valueOf(raw.trim().toUpperCase());
+        } catch (IllegalArgumentException ignored) {
+            return DURABLE;
+        }
+    }
+}
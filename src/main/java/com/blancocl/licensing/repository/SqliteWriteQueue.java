@@ -0,0 +1,198 @@
+package com.blancocl.licensing.repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+// The only writer of a SQLite database in WAL mode. Writes are queued, and one platform thread
+// applies everything queued so far, up to maxBatchSize, in a single transaction. Concurrent writes
+// therefore share one commit and one WAL sync instead of paying for one each. Readers keep their
+// own connections, which WAL lets run alongside the writer. The queue holds a bounded number of
+// writes; once it is full, callers wait for room and fail if none frees up in time.
+public final class SqliteWriteQueue implements AutoCloseable {
+    private static final class Pending<T> {
+        private final JdbcWork<T> write;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private T value;
+
+        private Pending(JdbcWork<T> write) {
+            this.write = write;
+        }
+
+        private void apply(PooledConnection connection) throws SQLException {
+            value = write.apply(connection);
+        }
+
+        private void complete() {
+            result.complete(value);
+        }
+
+        private void fail(SQLException error) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private static final Pending<Void> STOP = new Pending<>(connection -> null);
+    private static final int QUEUED_BATCHES = 16;
+    private static final long QUEUE_WAIT_SECONDS = 10;
+
+    private final Logger logger;
+    private final JdbcConnectionPool connection;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending<?>> queue;
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // Takes ownership of the connection pool, which should hold a single connection.
+    public SqliteWriteQueue(Logger logger, JdbcConnectionPool connection, int maxBatchSize) {
+        this.logger = logger;
+        this.connection = connection;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.queue = new LinkedBlockingQueue<>(this.maxBatchSize * QUEUED_BATCHES);
+        this.thread = Thread.ofPlatform().name("PaperLicensing-SqliteWriter").daemon().start(this::run);
+    }
+
+    // The future completes once the write has committed.
+    <T> CompletableFuture<T> submit(JdbcWork<T> write) {
+        return submit(write, (value, error) -> {
+        });
+    }
+
+    // whenDone is attached before the write is queued, so it runs before any later write is
+    // answered.
+    <T> CompletableFuture<T> submit(JdbcWork<T> write, BiConsumer<? super T, ? super Throwable> whenDone) {
+        Pending<T> pending = new Pending<>(write);
+        pending.result.whenComplete(whenDone);
+        if (closed) {
+            pending.fail(new SQLException("SQLite writer is closed"));
+            return pending.result;
+        }
+        try {
+            if (!queue.offer(pending, QUEUE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                pending.fail(new SQLException("SQLite write queue stayed full for " + QUEUE_WAIT_SECONDS + " seconds"));
+                return pending.result;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.fail(new SQLException("interrupted while queueing a SQLite write", e));
+            return pending.result;
+        }
+        // Closed while queueing: the writer may already have stopped. Whoever removes the write
+        // from the queue fails or runs it, so it is never left pending.
+        if (closed && queue.remove(pending)) {
+            pending.fail(new SQLException("SQLite writer is closed"));
+        }
+        return pending.result;
+    }
+
+    <T> T await(JdbcWork<T> write) throws SQLException {
+        try {
+            return submit(write).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SQLException sqlException ? sqlException : new SQLException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for the SQLite writer", e);
+        }
+    }
+
+    // Commits everything queued before the call. The writer thread closes its connection once it
+    // stops, so a commit still running after the timeout is never cut off underneath it.
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (!queue.offer(STOP, QUEUE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                thread.interrupt();
+            }
+            thread.join(TimeUnit.SECONDS.toMillis(QUEUE_WAIT_SECONDS));
+            if (thread.isAlive()) {
+                logger.warning("Timed out waiting for the SQLite writer to drain its queue; its connection closes once it stops.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("SQLite writer committed " + writes.sum() + " writes in " + commits.sum() + " transactions.");
+    }
+
+    private void run() {
+        List<Pending<?>> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            stopping = batch.removeIf(pending -> pending == STOP);
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+            batch.clear();
+        }
+
+        Pending<?> left;
+        while ((left = queue.poll()) != null) {
+            left.fail(new SQLException("SQLite writer is closed"));
+        }
+        connection.close();
+    }
+
+    // A failed batch is rolled back as a whole and each write is retried on its own, so one bad
+    // write only fails its own caller.
+    private void commit(List<Pending<?>> batch) {
+        SQLException failure = applyAll(batch);
+        if (failure == null) {
+            writes.add(batch.size());
+            commits.increment();
+            return;
+        }
+        if (batch.size() == 1) {
+            batch.get(0).fail(failure);
+            return;
+        }
+        for (Pending<?> pending : batch) {
+            commit(List.of(pending));
+        }
+    }
+
+    // Returns the failure after rolling back, or null once the batch has committed and every
+    // caller has been answered.
+    private SQLException applyAll(List<Pending<?>> batch) {
+        try (PooledConnection writer = connection.borrow()) {
+            Connection raw = writer.connection();
+            raw.setAutoCommit(false);
+            try {
+                for (Pending<?> pending : batch) {
+                    pending.apply(writer);
+                }
+                raw.commit();
+            } catch (SQLException | RuntimeException e) {
+                raw.rollback();
+                throw e;
+            } finally {
+                raw.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            return e;
+        } catch (RuntimeException e) {
+            return new SQLException(e);
+        }
+        for (Pending<?> pending : batch) {
+            pending.complete();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.blancocl.licensing.repository;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Fixed set of locks picked by key hash, so writes to one key are serialized without a global
+// monitor and unrelated keys only wait on each other when they share a stripe. ReentrantLock
+// rather than synchronized, so virtual threads blocked here do not pin their carrier thread.
+public final class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(2, stripes) - 1) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public Lock forKey(String key) {
+        return stripes[stripe(key)];
+    }
+
+    // Takes the stripes of every key in ascending order, so two multi-key callers cannot deadlock.
+    // Returns the held stripes for unlockAll.
+    public int[] lockAll(Collection<String> keys) {
+        int[] held = keys.stream().mapToInt(this::stripe).distinct().sorted().toArray();
+        for (int stripe : held) {
+            stripes[stripe].lock();
+        }
+        return held;
+    }
+
+    public void unlockAll(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            stripes[held[i]].unlock();
+        }
+    }
+
+    private int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -1,32 +1,136 @@
 package com.blancocl.licensing.repository;
 
 import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
-import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
 public final class YamlLicenseRepository implements LicenseRepository {
-    private final JavaPlugin plugin;
-    private final File storageFile;
-    private final Map<String, LicenseRecord> licenses = new ConcurrentHashMap<>();
+    private static final String OP_UPSERT = "upsert";
+    private static final String OP_REVOKE = "revoke";
+    private static final String OP_DELETE = "delete";
+    private static final int KEY_LOCK_STRIPES = 64;
 
-    public YamlLicenseRepository(JavaPlugin plugin) {
-        this.plugin = plugin;
-        this.storageFile = new File(plugin.getDataFolder(), "licenses.yml");
-        load();
+    private final Logger logger;
+    private final File dataFolder;
+    private final File snapshotFile;
+    private final File legacyFile;
+    private final File journalFile;
+    private final File compactingFile;
+    private final long maxJournalBytes;
+    private final long maxJournalAgeNanos;
+    private final CompactLicenseIndex licenses = new CompactLicenseIndex();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ScheduledExecutorService compactor;
+    // A key's lock covers its index change and journal append, so the journal replays each key's
+    // writes in the order they were applied. Different keys only share the short journal lock.
+    private final StripedLocks keyLocks = new StripedLocks(KEY_LOCK_STRIPES);
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private BufferedWriter journal;
+    private long journalBytes;
+    private long journalStartedNanos;
+
+    public YamlLicenseRepository(Logger logger, File dataFolder, long maxJournalBytes, Duration maxJournalAge) {
+        this.logger = logger;
+        this.dataFolder = dataFolder;
+        this.snapshotFile = new File(dataFolder, "licenses.snapshot");
+        this.legacyFile = new File(dataFolder, "licenses.yml");
+        this.journalFile = new File(dataFolder, "licenses.journal");
+        this.compactingFile = new File(dataFolder, "licenses.journal.compacting");
+        this.maxJournalBytes = Math.max(1L, maxJournalBytes);
+        this.maxJournalAgeNanos = Math.max(1L, maxJournalAge.toNanos());
+        boolean migrating = load();
+        recoverInterruptedCompaction();
+        if (migrating) {
+            migrateLegacySnapshot();
+        }
+        openJournal();
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("PaperLicensing-YamlCompactor").daemon().factory());
+        long checkIntervalMs = Math.max(1000L, maxJournalAge.toMillis());
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void upsert(LicenseRecord record) {
+        upsertAll(List.of(record));
     }
 
     @Override
-    public synchronized void upsert(LicenseRecord record) {
-        licenses.put(record.key(), record);
-        save();
+    public boolean upsertAll(Collection<LicenseRecord> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+
+        List<String> keys = new ArrayList<>(records.size());
+        for (LicenseRecord record : records) {
+            keys.add(record.key());
+        }
+        List<String> entries = new ArrayList<>(records.size());
+        Map<String, LicenseRecord> previous = new LinkedHashMap<>();
+        Map<String, Long> previousRevokedAt = new HashMap<>();
+        boolean stored;
+        int[] held = keyLocks.lockAll(keys);
+        try {
+            for (LicenseRecord record : records) {
+                if (!previousRevokedAt.containsKey(record.key())) {
+                    previous.put(record.key(), licenses.get(record.key()));
+                    previousRevokedAt.put(record.key(), licenses.revokedAt(record.key()));
+                }
+                licenses.put(record);
+                entries.add(upsertEntry(record, licenses.revokedAt(record.key())));
+            }
+            stored = append(entries);
+            // An index change the journal does not have would be lost on restart, so it is undone
+            // and the caller can retry the whole batch.
+            if (!stored) {
+                for (Map.Entry<String, LicenseRecord> entry : previous.entrySet()) {
+                    if (entry.getValue() == null) {
+                        licenses.remove(entry.getKey());
+                    } else {
+                        licenses.put(entry.getValue(), previousRevokedAt.get(entry.getKey()));
+                    }
+                }
+            }
+        } finally {
+            keyLocks.unlockAll(held);
+        }
+        compactIfNeeded();
+        return stored;
     }
 
     @Override
@@ -35,22 +139,128 @@ public final class YamlLicenseRepository implements LicenseRepository {
     }
 
     @Override
-    public synchronized boolean revoke(String key) {
-        LicenseRecord existing = licenses.get(key);
-        if (existing == null || existing.revoked()) {
-            return false;
+    public boolean revoke(String key) {
+        long revokedAt = Instant.now().getEpochSecond();
+        Lock lock = keyLocks.forKey(key);
+        lock.lock();
+        try {
+            if (!licenses.revoke(key, revokedAt)) {
+                return false;
+            }
+            if (!append(List.of(revokeEntry(key, revokedAt)))) {
+                licenses.put(licenses.get(key).withRevoked(false));
+                return false;
+            }
+        } finally {
+            lock.unlock();
         }
-        licenses.put(key, existing.withRevoked(true));
-        save();
+        compactIfNeeded();
         return true;
     }
 
-    private void load() {
-        if (!storageFile.exists()) {
-            return;
+    @Override
+    public List<LicenseRecord> findExpiring(Instant after, String afterKey, Instant until, int limit) {
+        return licenses.expiring(after.getEpochSecond(), afterKey, until.getEpochSecond(), limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByPlugin(String pluginId, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return licenses.byPluginId(pluginId, status, now.getEpochSecond(), afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPageByOwner(String owner, LicenseStatus status, Instant now, String afterKey, int limit) {
+        return licenses.byOwner(owner, status, now.getEpochSecond(), afterKey, limit);
+    }
+
+    @Override
+    public List<LicenseRecord> findPurgeable(Instant cutoff, int limit) {
+        return licenses.purgeable(cutoff.getEpochSecond(), limit);
+    }
+
+    @Override
+    public int delete(Collection<String> keys) {
+        List<String> entries = new ArrayList<>();
+        List<LicenseRecord> removed = new ArrayList<>();
+        List<Long> removedRevokedAt = new ArrayList<>();
+        int[] held = keyLocks.lockAll(keys);
+        try {
+            for (String key : keys) {
+                LicenseRecord record = licenses.get(key);
+                long revokedAt = licenses.revokedAt(key);
+                if (record != null && licenses.remove(key)) {
+                    entries.add(deleteEntry(key));
+                    removed.add(record);
+                    removedRevokedAt.add(revokedAt);
+                }
+            }
+            // Like upsertAll, deletes the journal does not have would come back on restart, so they
+            // are undone.
+            if (!entries.isEmpty() && !append(entries)) {
+                for (int i = 0; i < removed.size(); i++) {
+                    licenses.put(removed.get(i), removedRevokedAt.get(i));
+                }
+                return 0;
+            }
+        } finally {
+            keyLocks.unlockAll(held);
         }
+        compactIfNeeded();
+        return entries.size();
+    }
+
+    @Override
+    public boolean forEachKey(Consumer<String> action) {
+        licenses.snapshot().forEachKey(action);
+        return true;
+    }
 
-        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(storageFile);
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for licenses.snapshot compaction to finish.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        journalLock.lock();
+        try {
+            if (journalBytes > 0 && compacting.compareAndSet(false, true)) {
+                try {
+                    compact();
+                } finally {
+                    compacting.set(false);
+                }
+            }
+            closeJournal();
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    // Returns true when the data came from a licenses.yml written by an older version, which is
+    // then rewritten as licenses.snapshot.
+    private boolean load() {
+        boolean migrating = false;
+        if (snapshotFile.exists()) {
+            replay(snapshotFile);
+        } else if (legacyFile.exists()) {
+            loadLegacySnapshot();
+            migrating = true;
+        }
+        truncateTornTail(compactingFile);
+        replay(compactingFile);
+        truncateTornTail(journalFile);
+        replay(journalFile);
+        return migrating;
+    }
+
+    // The YAML tree is only built once, to read a licenses.yml left by an older version.
+    private void loadLegacySnapshot() {
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(legacyFile);
         ConfigurationSection section = yaml.getConfigurationSection("licenses");
         if (section == null) {
             return;
@@ -67,36 +277,347 @@ public final class YamlLicenseRepository implements LicenseRepository {
             long issuedEpoch = node.getLong("issuedAt", Instant.now().getEpochSecond());
             long expiresEpoch = node.getLong("expiresAt", -1L);
             boolean revoked = node.getBoolean("revoked", false);
+            long revokedEpoch = node.getLong("revokedAt", -1L);
 
             Instant issuedAt = Instant.ofEpochSecond(issuedEpoch);
             Instant expiresAt = expiresEpoch < 0 ? null : Instant.ofEpochSecond(expiresEpoch);
 
-            licenses.put(key, new LicenseRecord(key, pluginId, owner, issuedAt, expiresAt, revoked));
+            licenses.put(new LicenseRecord(key, pluginId, owner, issuedAt, expiresAt, revoked), revokedAt(revokedEpoch));
+        }
+    }
+
+    private void replay(File file) {
+        if (!file.exists()) {
+            return;
+        }
+
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    apply(JsonParser.parseString(line).getAsJsonObject());
+                } catch (JsonParseException | IllegalStateException | UnsupportedOperationException
+                         | NumberFormatException e) {
+                    skipped++;
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to read " + file.getName() + ": " + e.getMessage());
+        }
+
+        if (skipped > 0) {
+            logger.warning("Skipped " + skipped + " unreadable entries in " + file.getName() + ".");
+        }
+    }
+
+    private void apply(JsonObject entry) {
+        String key = required(entry, "key").getAsString();
+        String op = required(entry, "op").getAsString();
+        if (OP_REVOKE.equals(op)) {
+            licenses.revoke(key, revokedAt(entry.has("revokedAt") ? entry.get("revokedAt").getAsLong() : -1L));
+            return;
+        }
+        if (OP_DELETE.equals(op)) {
+            licenses.remove(key);
+            return;
+        }
+        if (!OP_UPSERT.equals(op)) {
+            return;
+        }
+
+        long expiresEpoch = required(entry, "expiresAt").getAsLong();
+        Instant expiresAt = expiresEpoch < 0 ? null : Instant.ofEpochSecond(expiresEpoch);
+        licenses.put(new LicenseRecord(
+                key,
+                required(entry, "pluginId").getAsString(),
+                required(entry, "owner").getAsString(),
+                Instant.ofEpochSecond(required(entry, "issuedAt").getAsLong()),
+                expiresAt,
+                required(entry, "revoked").getAsBoolean()
+        ), revokedAt(entry.has("revokedAt") ? entry.get("revokedAt").getAsLong() : -1L));
+    }
+
+    // A missing field makes the entry unreadable, like a parse error, rather than aborting the load.
+    private static JsonElement required(JsonObject entry, String field) {
+        JsonElement value = entry.get(field);
+        if (value == null || value.isJsonNull()) {
+            throw new JsonParseException("missing " + field);
+        }
+        return value;
+    }
+
+    // A crash mid-append can leave a partial last line. It is cut off before the file is replayed
+    // or appended to, so the next entry does not get glued onto it.
+    private void truncateTornTail(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            long position = end;
+            while (position > 0) {
+                int chunk = (int) Math.min(buffer.capacity(), position);
+                position -= chunk;
+                buffer.clear().limit(chunk);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = chunk - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        long complete = position + i + 1;
+                        if (complete < end) {
+                            channel.truncate(complete);
+                            logger.warning("Dropped a partial entry at the end of " + file.getName() + ".");
+                        }
+                        return;
+                    }
+                }
+            }
+            if (end > 0) {
+                channel.truncate(0);
+                logger.warning("Dropped a partial entry at the end of " + file.getName() + ".");
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to check the end of " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    // Entries written before revocation times were recorded start their retention window now.
+    private static long revokedAt(long epochSecond) {
+        return epochSecond < 0 ? Instant.now().getEpochSecond() : epochSecond;
+    }
+
+    private String upsertEntry(LicenseRecord record, long revokedAt) {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("op", OP_UPSERT);
+        entry.addProperty("key", record.key());
+        entry.addProperty("pluginId", record.pluginId());
+        entry.addProperty("owner", record.owner());
+        entry.addProperty("issuedAt", record.issuedAt().getEpochSecond());
+        entry.addProperty("expiresAt", record.expiresAt() == null ? -1L : record.expiresAt().getEpochSecond());
+        entry.addProperty("revoked", record.revoked());
+        if (revokedAt != CompactLicenseIndex.NOT_REVOKED) {
+            entry.addProperty("revokedAt", revokedAt);
         }
+        return entry.toString();
     }
 
-    private void save() {
-        if (!plugin.getDataFolder().exists() && !plugin.getDataFolder().mkdirs()) {
-            plugin.getLogger().warning("Could not create plugin data folder.");
+    private String revokeEntry(String key, long revokedAt) {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("op", OP_REVOKE);
+        entry.addProperty("key", key);
+        entry.addProperty("revokedAt", revokedAt);
+        return entry.toString();
+    }
+
+    private String deleteEntry(String key) {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("op", OP_DELETE);
+        entry.addProperty("key", key);
+        return entry.toString();
+    }
+
+    // Returns false when the lines may not have reached the journal.
+    private boolean append(List<String> lines) {
+        journalLock.lock();
+        try {
+            if (journal == null) {
+                logger.severe("License journal is not open; change to licenses.snapshot was not persisted.");
+                return false;
+            }
+            if (journalBytes == 0) {
+                journalStartedNanos = System.nanoTime();
+            }
+            for (String line : lines) {
+                journal.write(line);
+                journal.write('\n');
+                journalBytes += utf8Length(line) + 1L;
+            }
+            journal.flush();
+            return true;
+        } catch (IOException e) {
+            logger.severe("Failed to append to licenses.journal: " + e.getMessage());
+            return false;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private static long utf8Length(String line) {
+        long bytes = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= 0x800) {
+                // Surrogate pairs are four bytes for two chars, like two three-byte chars minus two.
+                bytes += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                bytes += 1;
+            }
+        }
+        return bytes;
+    }
+
+    private void compactIfNeeded() {
+        boolean due;
+        journalLock.lock();
+        try {
+            due = journalBytes >= maxJournalBytes
+                    || (journalBytes > 0 && System.nanoTime() - journalStartedNanos >= maxJournalAgeNanos);
+        } finally {
+            journalLock.unlock();
+        }
+        if (!due || !compacting.compareAndSet(false, true)) {
             return;
         }
 
-        YamlConfiguration yaml = new YamlConfiguration();
-        ConfigurationSection section = yaml.createSection("licenses");
+        try {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            compacting.set(false);
+        }
+    }
 
-        for (LicenseRecord record : licenses.values()) {
-            ConfigurationSection node = section.createSection(record.key());
-            node.set("pluginId", record.pluginId());
-            node.set("owner", record.owner());
-            node.set("issuedAt", record.issuedAt().getEpochSecond());
-            node.set("expiresAt", record.expiresAt() == null ? -1L : record.expiresAt().getEpochSecond());
-            node.set("revoked", record.revoked());
+    // Rotates the journal under the journal lock, then writes the snapshot without blocking writers.
+    // A write applied to the index before the snapshot but appended after the rotation is replayed
+    // on top of the snapshot, which is harmless because every journal entry is idempotent.
+    // The rotated journal is only deleted once the snapshot covering it has been moved into place.
+    private void compact() {
+        CompactLicenseIndex.Snapshot snapshot;
+        journalLock.lock();
+        try {
+            closeJournal();
+            try {
+                rotateJournal();
+            } catch (IOException e) {
+                logger.severe("Failed to rotate licenses.journal: " + e.getMessage());
+                openJournal();
+                return;
+            }
+            openJournal();
+            snapshot = licenses.snapshot();
+        } finally {
+            journalLock.unlock();
         }
 
+        if (writeSnapshot(snapshot)) {
+            try {
+                Files.deleteIfExists(compactingFile.toPath());
+            } catch (IOException e) {
+                logger.warning("Failed to delete " + compactingFile.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void rotateJournal() throws IOException {
+        if (!journalFile.exists()) {
+            return;
+        }
+        if (compactingFile.exists()) {
+            Files.write(compactingFile.toPath(), Files.readAllBytes(journalFile.toPath()), StandardOpenOption.APPEND);
+            Files.delete(journalFile.toPath());
+            return;
+        }
+        Files.move(journalFile.toPath(), compactingFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void recoverInterruptedCompaction() {
+        if (!compactingFile.exists()) {
+            return;
+        }
+        if (writeSnapshot(licenses.snapshot())) {
+            try {
+                Files.deleteIfExists(compactingFile.toPath());
+                Files.deleteIfExists(journalFile.toPath());
+            } catch (IOException e) {
+                logger.warning("Failed to clean up license journal files: " + e.getMessage());
+            }
+        }
+    }
+
+    // Once the data is in licenses.snapshot, the old file is kept as licenses.yml.migrated rather
+    // than deleted. If the snapshot cannot be written, licenses.yml stays and is read again next start.
+    private void migrateLegacySnapshot() {
+        if (!writeSnapshot(licenses.snapshot())) {
+            return;
+        }
+        try {
+            Files.move(legacyFile.toPath(), new File(dataFolder, "licenses.yml.migrated").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Migrated licenses.yml to licenses.snapshot.");
+        } catch (IOException e) {
+            logger.warning("Failed to rename licenses.yml after migrating it: " + e.getMessage());
+        }
+    }
+
+    // The snapshot holds one upsert entry per license in the journal's format, streamed straight from
+    // the index, so writing it never builds the whole license set as a second in-memory tree.
+    private boolean writeSnapshot(CompactLicenseIndex.Snapshot records) {
+        if (!dataFolder.exists() && !dataFolder.mkdirs()) {
+            logger.warning("Could not create plugin data folder.");
+            return false;
+        }
+
+        File tempFile = new File(dataFolder, "licenses.snapshot.tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                records.forEachWithRevokedAt((record, revokedAt) -> {
+                    try {
+                        writer.write(upsertEntry(record, revokedAt));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            logger.severe("Failed to save licenses.snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void openJournal() {
+        if (!dataFolder.exists() && !dataFolder.mkdirs()) {
+            logger.warning("Could not create plugin data folder.");
+            return;
+        }
+
+        try {
+            journal = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            journalBytes = journalFile.length();
+            journalStartedNanos = System.nanoTime();
+        } catch (IOException e) {
+            journal = null;
+            logger.severe("Failed to open licenses.journal: " + e.getMessage());
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
         try {
-            yaml.save(storageFile);
+            journal.close();
         } catch (IOException e) {
-            plugin.getLogger().severe("Failed to save licenses.yml: " + e.getMessage());
+            logger.warning("Failed to close licenses.journal: " + e.getMessage());
         }
+        journal = null;
     }
 }
@@ -5,20 +5,37 @@ import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// Mac instances are not thread-safe and costly to create. Callers run on virtual threads that live
+// for one task, so a ThreadLocal would rebuild the Mac on nearly every call; instead a few states
+// are pooled and shared. New ones are cloned from an initialized prototype rather than looked up
+// and keyed again.
 public final class HmacLicenseSigner {
+    private static final int MAX_POOLED_STATES = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
     private static final String HMAC_ALG = "HmacSHA256";
     private static final SecureRandom RANDOM = new SecureRandom();
     private static final char[] ALPHABET = "ABCDEFGHJKLMNPQRSTUVWXYZ23456789".toCharArray();
+    private static final int SIGNATURE_BYTES = 16;
+    private static final int SIGNATURE_CHARS = 22;
+    private static final byte[] BASE64_URL_VALUES = base64UrlValues();
 
-    private final byte[] secret;
+    private final SecretKeySpec keySpec;
+    private final Mac prototype;
+    private final Queue<SignerState> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
 
     public HmacLicenseSigner(String secret) {
         if (secret == null || secret.length() < 16) {
             throw new IllegalArgumentException("license signing secret must be at least 16 characters");
         }
-        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.keySpec = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALG);
+        this.prototype = newMac();
     }
 
     public String generate(String pluginId) {
@@ -33,20 +50,90 @@ public final class HmacLicenseSigner {
         if (sep <= 0 || sep == key.length() - 1) {
             return false;
         }
-        String nonce = key.substring(0, sep);
+        if (key.length() - sep - 1 != SIGNATURE_CHARS) {
+            return false;
+        }
+
+        String normalizedPluginId = normalizePluginId(pluginId);
+        SignerState current = acquire();
+        try {
+            byte[] payload = current.payload(normalizedPluginId.length() + 1 + sep);
+            int length = writeAscii(normalizedPluginId, 0, normalizedPluginId.length(), payload, 0);
+            if (length < 0) {
+                return verifySlow(normalizedPluginId, key, sep);
+            }
+            payload[length++] = ':';
+            int nonceLength = writeAscii(key, 0, sep, payload, length);
+            if (nonceLength < 0) {
+                return verifySlow(normalizedPluginId, key, sep);
+            }
+            length += nonceLength;
+
+            if (!decodeSignature(key, sep + 1, current.incoming)) {
+                return false;
+            }
+
+            try {
+                current.mac.update(payload, 0, length);
+                current.mac.doFinal(current.digest, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("could not create HMAC", e);
+            }
+            return constantTimeEquals(current.incoming, current.digest, SIGNATURE_BYTES);
+        } finally {
+            release(current);
+        }
+    }
+
+    private boolean verifySlow(String normalizedPluginId, String key, int sep) {
+        String expectedSig = sign(normalizedPluginId + ":" + key.substring(0, sep));
         String incomingSig = key.substring(sep + 1);
-        String expectedSig = sign(normalizePluginId(pluginId) + ":" + nonce);
-        return constantTimeEquals(incomingSig, expectedSig);
+        int diff = 0;
+        for (int i = 0; i < SIGNATURE_CHARS; i++) {
+            diff |= incomingSig.charAt(i) ^ expectedSig.charAt(i);
+        }
+        return diff == 0;
     }
 
     private String sign(String payload) {
+        SignerState current = acquire();
+        try {
+            byte[] full = current.mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(full, SIGNATURE_BYTES));
+        } finally {
+            release(current);
+        }
+    }
+
+    private SignerState acquire() {
+        SignerState current = pool.poll();
+        if (current != null) {
+            pooled.decrementAndGet();
+            return current;
+        }
+        try {
+            return new SignerState((Mac) prototype.clone());
+        } catch (CloneNotSupportedException e) {
+            return new SignerState(newMac());
+        }
+    }
+
+    // A state dropped mid-operation is reset before it is reused. Beyond the pool size, states
+    // are left to the garbage collector.
+    private void release(SignerState current) {
+        current.mac.reset();
+        if (pooled.incrementAndGet() <= MAX_POOLED_STATES) {
+            pool.offer(current);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    private Mac newMac() {
         try {
             Mac mac = Mac.getInstance(HMAC_ALG);
-            mac.init(new SecretKeySpec(secret, HMAC_ALG));
-            byte[] full = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-            byte[] truncated = new byte[16];
-            System.arraycopy(full, 0, truncated, 0, truncated.length);
-            return Base64.getUrlEncoder().withoutPadding().encodeToString(truncated);
+            mac.init(keySpec);
+            return mac;
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException("could not create HMAC", e);
         }
@@ -64,14 +151,82 @@ public final class HmacLicenseSigner {
         return pluginId == null ? "" : pluginId.trim().toLowerCase();
     }
 
-    private boolean constantTimeEquals(String a, String b) {
-        if (a.length() != b.length()) {
+    private static int writeAscii(String source, int from, int to, byte[] target, int offset) {
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            if (c >= 0x80) {
+                return -1;
+            }
+            target[offset + i - from] = (byte) c;
+        }
+        return to - from;
+    }
+
+    // Decodes the 22 unpadded base64url chars of a 16 byte signature. The last char only carries
+    // two data bits, so its four trailing bits must be zero to match the canonical encoding.
+    private static boolean decodeSignature(String key, int offset, byte[] target) {
+        int out = 0;
+        int i = offset;
+        for (int group = 0; group < 5; group++) {
+            int a = base64UrlValue(key.charAt(i++));
+            int b = base64UrlValue(key.charAt(i++));
+            int c = base64UrlValue(key.charAt(i++));
+            int d = base64UrlValue(key.charAt(i++));
+            if ((a | b | c | d) < 0) {
+                return false;
+            }
+            int bits = (a << 18) | (b << 12) | (c << 6) | d;
+            target[out++] = (byte) (bits >> 16);
+            target[out++] = (byte) (bits >> 8);
+            target[out++] = (byte) bits;
+        }
+        int a = base64UrlValue(key.charAt(i++));
+        int b = base64UrlValue(key.charAt(i));
+        if ((a | b) < 0 || (b & 0x0F) != 0) {
             return false;
         }
+        target[out] = (byte) ((a << 2) | (b >> 4));
+        return true;
+    }
+
+    private static int base64UrlValue(char c) {
+        return c < BASE64_URL_VALUES.length ? BASE64_URL_VALUES[c] : -1;
+    }
+
+    private static byte[] base64UrlValues() {
+        byte[] values = new byte[128];
+        Arrays.fill(values, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            values[alphabet.charAt(i)] = (byte) i;
+        }
+        return values;
+    }
+
+    private static boolean constantTimeEquals(byte[] a, byte[] b, int length) {
         int diff = 0;
-        for (int i = 0; i < a.length(); i++) {
-            diff |= a.charAt(i) ^ b.charAt(i);
+        for (int i = 0; i < length; i++) {
+            diff |= a[i] ^ b[i];
         }
         return diff == 0;
     }
+
+    private static final class SignerState {
+        private final Mac mac;
+        private final byte[] digest;
+        private final byte[] incoming = new byte[SIGNATURE_BYTES];
+        private byte[] payload = new byte[128];
+
+        private SignerState(Mac mac) {
+            this.mac = mac;
+            this.digest = new byte[mac.getMacLength()];
+        }
+
+        private byte[] payload(int capacity) {
+            if (payload.length < capacity) {
+                payload = new byte[Math.max(capacity, payload.length * 2)];
+            }
+            return payload;
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package com.blancocl.licensing.service;
+
+import com.blancocl.licensing.remote.ChangeFeedPage;
+import com.blancocl.licensing.remote.PanelLicenseClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public final class ChangeFeedSync {
+    private static final int MAX_PAGES_PER_POLL = 100;
+
+    private final Logger logger;
+    private final PanelLicenseClient panelClient;
+    private final HybridLicenseService licenseService;
+    private final File cursorFile;
+    private final Duration interval;
+    private final int pageSize;
+    private final ScheduledExecutorService scheduler;
+    private volatile String cursor;
+
+    public ChangeFeedSync(
+            Logger logger,
+            PanelLicenseClient panelClient,
+            HybridLicenseService licenseService,
+            File cursorFile,
+            Duration interval,
+            int pageSize
+    ) {
+        this.logger = logger;
+        this.panelClient = panelClient;
+        this.licenseService = licenseService;
+        this.cursorFile = cursorFile;
+        this.interval = interval;
+        this.pageSize = Math.max(1, pageSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("PaperLicensing-ChangeFeed").daemon().factory());
+    }
+
+    // The cursor is read here rather than at construction so a snapshot import that finishes
+    // first can hand over its change cursor through the same file.
+    public void start() {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        this.cursor = readCursor();
+        long intervalMs = Math.max(1000L, interval.toMillis());
+        try {
+            scheduler.scheduleWithFixedDelay(this::pollSafely, 0L, intervalMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // Closed concurrently while starting.
+        }
+    }
+
+    public void close() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for the license change feed to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            logger.warning("License change feed poll failed: " + e.getMessage());
+        }
+    }
+
+    private void poll() {
+        long startedAt = System.nanoTime();
+        int applied = 0;
+
+        for (int page = 0; page < MAX_PAGES_PER_POLL; page++) {
+            Optional<ChangeFeedPage> result = panelClient.fetchChanges(cursor, pageSize);
+            if (result.isEmpty()) {
+                return;
+            }
+
+            // The cursor only moves past changes that are stored, so a failed write is fetched again
+            // on the next poll instead of being skipped.
+            ChangeFeedPage changes = result.get();
+            if (!changes.records().isEmpty()) {
+                if (!licenseService.applyRemoteRecords(changes.records())) {
+                    logger.warning("Failed to store " + changes.records().size() + " license changes from the panel; retrying on the next poll.");
+                    return;
+                }
+                applied += changes.records().size();
+            }
+            if (changes.cursor() != null && !changes.cursor().equals(cursor)) {
+                cursor = changes.cursor();
+                writeCursor(cursor);
+            }
+            if (!changes.hasMore()) {
+                licenseService.markCaughtUp(startedAt);
+                break;
+            }
+        }
+
+        if (applied > 0) {
+            logger.fine("Applied " + applied + " license changes from the panel.");
+        }
+    }
+
+    private String readCursor() {
+        if (!cursorFile.exists()) {
+            return null;
+        }
+        try {
+            String value = Files.readString(cursorFile.toPath(), StandardCharsets.UTF_8).trim();
+            return value.isEmpty() ? null : value;
+        } catch (IOException e) {
+            logger.warning("Failed to read " + cursorFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeCursor(String value) {
+        File tempFile = new File(cursorFile.getParentFile(), cursorFile.getName() + ".tmp");
+        try {
+            Files.writeString(tempFile.toPath(), value, StandardCharsets.UTF_8);
+            Files.move(tempFile.toPath(), cursorFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Failed to persist " + cursorFile.getName() + ": " + e.getMessage());
+        }
+    }
+}
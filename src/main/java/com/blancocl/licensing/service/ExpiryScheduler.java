@@ -0,0 +1,230 @@
+package com.blancocl.licensing.service;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.repository.LicenseRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Hashed timing wheel with one-second ticks covering the next `horizon`. Expiries inside the
+// horizon are paged in from the repository's expiry index, and the window is extended every half
+// horizon, so memory holds only the licenses about to expire. Licenses written after their window
+// was loaded are added through track(). Each expiry is re-read before it is reported, so renewals,
+// revocations and purges need no explicit cancellation.
+public final class ExpiryScheduler {
+    private static final int PAGE_SIZE = 500;
+
+    private record Entry(String key, long expiresAt) {
+    }
+
+    private final Logger logger;
+    private final LicenseRepository repository;
+    private final Consumer<LicenseRecord> listener;
+    private final int wheelSize;
+    private final List<Entry>[] buckets;
+    // The expiry each key is scheduled for; an entry whose expiry no longer matches is skipped.
+    private final Map<String, Long> scheduled = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    // Guarded by buckets. Every wheel entry fires in (currentTick, currentTick + wheelSize], and
+    // expiries up to loadedUntil are either on the wheel or already reported.
+    private long currentTick;
+    private long loadedUntil;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ExpiryScheduler(
+            Logger logger,
+            LicenseRepository repository,
+            Duration horizon,
+            Consumer<LicenseRecord> listener
+    ) {
+        this.logger = logger;
+        this.repository = repository;
+        this.listener = listener;
+        this.wheelSize = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(0L, horizon.toSeconds()));
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.scheduler = wheelSize == 0 ? null : Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("PaperLicensing-Expiry").daemon().factory());
+    }
+
+    public static ExpiryScheduler disabled() {
+        return new ExpiryScheduler(null, null, Duration.ZERO, record -> {
+        });
+    }
+
+    public boolean enabled() {
+        return wheelSize > 0;
+    }
+
+    public void start() {
+        if (!enabled() || scheduler.isShutdown()) {
+            return;
+        }
+        long now = Instant.now().getEpochSecond();
+        synchronized (buckets) {
+            currentTick = now;
+            loadedUntil = now;
+        }
+        long loadIntervalSeconds = Math.max(1L, wheelSize / 2);
+        try {
+            scheduler.scheduleWithFixedDelay(this::loadSafely, 0L, loadIntervalSeconds, TimeUnit.SECONDS);
+            scheduler.scheduleAtFixedRate(this::tickSafely, 1L, 1L, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // Closed concurrently while starting.
+        }
+    }
+
+    // Called for every license written locally; a renewal reschedules the key and a revocation
+    // drops it.
+    public void track(LicenseRecord record) {
+        if (!enabled()) {
+            return;
+        }
+        if (record.revoked() || record.expiresAt() == null) {
+            scheduled.remove(record.key());
+            return;
+        }
+        long expiresAt = record.expiresAt().getEpochSecond();
+        synchronized (buckets) {
+            if (expiresAt > loadedUntil) {
+                // The loader picks it up when its window comes round.
+                scheduled.remove(record.key());
+                return;
+            }
+            schedule(record.key(), expiresAt);
+        }
+    }
+
+    public int scheduledCount() {
+        return scheduled.size();
+    }
+
+    public void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for the license expiry scheduler to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Caller holds the buckets lock. A license fires on the first tick after its expiry second,
+    // which is when LicenseRecord.isExpired starts returning true.
+    private void schedule(String key, long expiresAt) {
+        long fireAt = expiresAt + 1;
+        if (fireAt <= currentTick) {
+            scheduled.remove(key);
+            return;
+        }
+        scheduled.put(key, expiresAt);
+        buckets[(int) Math.floorMod(fireAt, (long) wheelSize)].add(new Entry(key, expiresAt));
+    }
+
+    private void loadSafely() {
+        try {
+            load();
+        } catch (RuntimeException e) {
+            logger.warning("Loading upcoming license expiries failed: " + e.getMessage());
+        }
+    }
+
+    // The window is widened before the repository is paged, so a license written concurrently is
+    // either tracked straight onto the wheel or found by the page query; duplicates collapse when
+    // they fire.
+    private void load() {
+        long from;
+        long until;
+        synchronized (buckets) {
+            from = loadedUntil;
+            until = currentTick + wheelSize - 1;
+            if (until <= from) {
+                return;
+            }
+            loadedUntil = until;
+        }
+
+        Instant after = Instant.ofEpochSecond(from);
+        String afterKey = "";
+        int loaded = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<LicenseRecord> page = repository.findExpiring(
+                    after, afterKey, Instant.ofEpochSecond(until, 999_999_999L), PAGE_SIZE);
+            synchronized (buckets) {
+                for (LicenseRecord record : page) {
+                    schedule(record.key(), record.expiresAt().getEpochSecond());
+                }
+            }
+            loaded += page.size();
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+            LicenseRecord last = page.get(page.size() - 1);
+            after = last.expiresAt();
+            afterKey = last.key();
+        }
+        if (loaded > 0) {
+            logger.fine("Scheduled " + loaded + " license expiries up to " + Instant.ofEpochSecond(until) + ".");
+        }
+    }
+
+    private void tickSafely() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            logger.warning("License expiry tick failed: " + e.getMessage());
+        }
+    }
+
+    private void tick() {
+        long now = Instant.now().getEpochSecond();
+        List<Entry> due = new ArrayList<>();
+        synchronized (buckets) {
+            // After a long pause every bucket is due at most once.
+            long steps = Math.min(now - currentTick, wheelSize);
+            for (long i = 1; i <= steps; i++) {
+                List<Entry> bucket = buckets[(int) Math.floorMod(currentTick + i, (long) wheelSize)];
+                due.addAll(bucket);
+                bucket.clear();
+            }
+            currentTick = Math.max(currentTick, now);
+        }
+
+        for (Entry entry : due) {
+            if (!scheduled.remove(entry.key(), entry.expiresAt())) {
+                continue;
+            }
+            Optional<LicenseRecord> current = repository.find(entry.key());
+            if (current.isEmpty() || current.get().revoked() || current.get().expiresAt() == null) {
+                continue;
+            }
+            long expiresAt = current.get().expiresAt().getEpochSecond();
+            if (expiresAt != entry.expiresAt()) {
+                track(current.get());
+                continue;
+            }
+            try {
+                listener.accept(current.get());
+            } catch (RuntimeException e) {
+                logger.warning("License expiry listener failed for " + current.get().pluginId() + ": " + e.getMessage());
+            }
+        }
+    }
+}
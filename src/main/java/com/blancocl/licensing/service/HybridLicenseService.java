@@ -1,133 +1,808 @@
 package com.blancocl.licensing.service;
 
+import com.blancocl.licensing.api.FallbackPath;
+import com.blancocl.licensing.api.LicenseIssueResult;
 import com.blancocl.licensing.api.LicenseValidationResult;
 import com.blancocl.licensing.api.PluginLicenseService;
+import com.blancocl.licensing.metrics.LatencyHistogram;
+import com.blancocl.licensing.metrics.LicenseMetrics;
 import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.model.LicenseStatus;
 import com.blancocl.licensing.remote.PanelLicenseClient;
 import com.blancocl.licensing.remote.RemoteValidationResponse;
 import com.blancocl.licensing.repository.LicenseRepository;
+import com.blancocl.licensing.repository.StripedLocks;
 import com.blancocl.licensing.security.HmacLicenseSigner;
-import org.bukkit.plugin.java.JavaPlugin;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public final class HybridLicenseService implements PluginLicenseService {
+    // Owners signed per task, so a large batch is spread over a few tasks rather than one per key.
+    private static final int SIGN_CHUNK_SIZE = 256;
+    private static final int KEY_LOCK_STRIPES = 256;
+
+    // A validation result with the expiry of the license it was decided from, if one was seen, so
+    // a cached VALID never outlives the license.
+    private record Validation(LicenseValidationResult result, Instant expiresAt) {
+        private static Validation of(LicenseValidationResult result) {
+            return new Validation(result, null);
+        }
+
+        private static Validation of(LicenseValidationResult result, LicenseRecord record) {
+            return new Validation(result, record == null ? null : record.expiresAt());
+        }
+    }
+
     private final LicenseRepository repository;
     private final HmacLicenseSigner signer;
     private final LicenseMode mode;
     private final PanelLicenseClient panelClient;
+    private final Executor executor;
+    private final ValidationResultCache validationCache;
+    private final RecordWriteBehind writeBehind;
+    private final StaleWhileRevalidate staleWhileRevalidate;
+    private final ExpiryScheduler expiryScheduler;
+    private final LicenseMetrics metrics;
+    private final StripedLocks keyLocks = new StripedLocks(KEY_LOCK_STRIPES);
+    private final LatencyHistogram issueLatency;
+    private final LatencyHistogram issueAsyncLatency;
+    private final LatencyHistogram issueBatchLatency;
+    private final LatencyHistogram issueBatchAsyncLatency;
+    private final LatencyHistogram validateLatency;
+    private final LatencyHistogram validateAsyncLatency;
+    private final LatencyHistogram validateAllLatency;
+    private final LatencyHistogram revokeLatency;
+    private final LatencyHistogram revokeAsyncLatency;
+    private final LatencyHistogram getLatency;
+    private final LatencyHistogram getAsyncLatency;
 
     public HybridLicenseService(
-            JavaPlugin plugin,
             LicenseRepository repository,
             HmacLicenseSigner signer,
             LicenseMode mode,
-            PanelLicenseClient panelClient
+            PanelLicenseClient panelClient,
+            Executor executor,
+            ValidationResultCache validationCache,
+            RecordWriteBehind writeBehind,
+            StaleWhileRevalidate staleWhileRevalidate,
+            ExpiryScheduler expiryScheduler,
+            LicenseMetrics metrics
     ) {
         this.repository = repository;
         this.signer = signer;
         this.mode = mode;
         this.panelClient = panelClient;
+        this.executor = executor;
+        this.validationCache = validationCache;
+        this.writeBehind = writeBehind;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.expiryScheduler = expiryScheduler;
+        this.metrics = metrics;
+        this.issueLatency = metrics.histogram("issue");
+        this.issueAsyncLatency = metrics.histogram("issueAsync");
+        this.issueBatchLatency = metrics.histogram("issueBatch");
+        this.issueBatchAsyncLatency = metrics.histogram("issueBatchAsync");
+        this.validateLatency = metrics.histogram("validate");
+        this.validateAsyncLatency = metrics.histogram("validateAsync");
+        this.validateAllLatency = metrics.histogram("validateAll");
+        this.revokeLatency = metrics.histogram("revoke");
+        this.revokeAsyncLatency = metrics.histogram("revokeAsync");
+        this.getLatency = metrics.histogram("get");
+        this.getAsyncLatency = metrics.histogram("getAsync");
+    }
+
+    // Needs no lock: every issue writes a freshly generated key.
+    @Override
+    public LicenseRecord issueLicense(String pluginId, String owner, int validDays) {
+        long startedAt = System.nanoTime();
+        try {
+            String normalizedPluginId = normalizePluginId(pluginId);
+            LicenseRecord localRecord = issueLocal(normalizedPluginId, owner, validDays);
+
+            if (!usesPanel()) {
+                return localRecord;
+            }
+            return resolveIssued(localRecord, panelClient.issue(normalizedPluginId, owner, validDays));
+        } finally {
+            issueLatency.recordSince(startedAt);
+        }
     }
 
     @Override
-    public synchronized LicenseRecord issueLicense(String pluginId, String owner, int validDays) {
+    public List<LicenseIssueResult> issueLicenses(String pluginId, List<String> owners, int validDays) {
+        long startedAt = System.nanoTime();
+        try {
+            return issueLicensesLater(pluginId, owners, validDays).join();
+        } finally {
+            issueBatchLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public LicenseValidationResult validate(String pluginId, String key) {
+        long startedAt = System.nanoTime();
+        LicenseValidationResult result = validateNow(pluginId, key);
+        metrics.recordResult(result);
+        validateLatency.recordSince(startedAt);
+        return result;
+    }
+
+    private LicenseValidationResult validateNow(String pluginId, String key) {
         String normalizedPluginId = normalizePluginId(pluginId);
 
-        Instant now = Instant.now();
-        Instant expiresAt = validDays <= 0 ? null : now.plus(validDays, ChronoUnit.DAYS);
-        String key = signer.generate(normalizedPluginId);
-        LicenseRecord localRecord = new LicenseRecord(key, normalizedPluginId, owner, now, expiresAt, false);
+        if (!signer.verify(normalizedPluginId, key)) {
+            return LicenseValidationResult.SIGNATURE_INVALID;
+        }
 
-        repository.upsert(localRecord);
+        Optional<LicenseValidationResult> cached = validationCache.get(normalizedPluginId, key);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        long generation = validationCache.generation(key);
+        return remember(normalizedPluginId, key, generation, validateUncached(normalizedPluginId, key));
+    }
+
+    @Override
+    public Map<String, LicenseValidationResult> validateAll(Map<String, String> keysByPluginId) {
+        long startedAt = System.nanoTime();
+        Map<String, LicenseValidationResult> results = validateAllNow(keysByPluginId);
+        results.values().forEach(metrics::recordResult);
+        validateAllLatency.recordSince(startedAt);
+        return results;
+    }
+
+    private Map<String, LicenseValidationResult> validateAllNow(Map<String, String> keysByPluginId) {
+        Map<String, LicenseValidationResult> results = new LinkedHashMap<>();
+        Map<String, String> unresolved = new LinkedHashMap<>();
+        Map<String, String> requestedIds = new HashMap<>();
+        Map<String, Long> generations = new HashMap<>();
+
+        for (Map.Entry<String, String> entry : keysByPluginId.entrySet()) {
+            String pluginId = entry.getKey();
+            String key = entry.getValue();
+            String normalizedPluginId = normalizePluginId(pluginId);
+            results.put(pluginId, null);
+
+            if (key == null || !signer.verify(normalizedPluginId, key)) {
+                results.put(pluginId, LicenseValidationResult.SIGNATURE_INVALID);
+                continue;
+            }
 
-        if (panelClient != null && mode != LicenseMode.LOCAL) {
-            Optional<LicenseRecord> panelRecord = panelClient.issue(normalizedPluginId, owner, validDays);
-            panelRecord.ifPresent(repository::upsert);
-            if (panelRecord.isPresent()) {
-                return panelRecord.get();
+            Optional<LicenseValidationResult> cached = validationCache.get(normalizedPluginId, key);
+            if (cached.isPresent()) {
+                results.put(pluginId, cached.get());
+            } else if (requestedIds.putIfAbsent(normalizedPluginId, pluginId) == null) {
+                generations.put(normalizedPluginId, validationCache.generation(key));
+                unresolved.put(normalizedPluginId, key);
+            } else {
+                results.put(pluginId, validateNow(pluginId, key));
             }
         }
 
-        return localRecord;
+        if (unresolved.isEmpty()) {
+            return results;
+        }
+
+        Map<String, Validation> resolved = usesPanel()
+                ? resolveBatchValidation(unresolved, panelClient.validateBatch(unresolved))
+                : validateLocalAll(unresolved);
+        for (Map.Entry<String, String> entry : unresolved.entrySet()) {
+            String normalizedPluginId = entry.getKey();
+            Validation validation = resolved.getOrDefault(normalizedPluginId, Validation.of(LicenseValidationResult.REMOTE_ERROR));
+            results.put(requestedIds.get(normalizedPluginId), remember(
+                    normalizedPluginId, entry.getValue(), generations.get(normalizedPluginId), validation));
+        }
+        return results;
     }
 
     @Override
-    public LicenseValidationResult validate(String pluginId, String key) {
+    public boolean revoke(String key) {
+        long startedAt = System.nanoTime();
+        try {
+            validationCache.invalidate(key);
+            boolean localRevoked = revokeLocal(key);
+
+            if (!usesPanel()) {
+                validationCache.invalidate(key);
+                return localRevoked;
+            }
+            boolean remoteRevoked = panelClient.revoke(key);
+            validationCache.invalidate(key);
+            return resolveRevoke(localRevoked, remoteRevoked);
+        } finally {
+            revokeLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public Optional<LicenseRecord> get(String key) {
+        long startedAt = System.nanoTime();
+        try {
+            return getNow(key);
+        } finally {
+            getLatency.recordSince(startedAt);
+        }
+    }
+
+    private Optional<LicenseRecord> getNow(String key) {
+        if (!usesPanel()) {
+            return writeBehind.find(key);
+        }
+
+        Optional<LicenseRecord> local = servableLocal(key, () -> panelClient.getAsync(key));
+        return local.isPresent() ? local : resolveGet(key, panelClient.get(key));
+    }
+
+    // Listings read local storage, which in REMOTE mode holds only the licenses this server has
+    // issued or seen from the panel. Buffered writes are flushed first, so a listing includes every
+    // write made before it started.
+    @Override
+    public Stream<LicenseRecord> findByPlugin(String pluginId, LicenseStatus status) {
+        writeBehind.flush();
+        return repository.findByPlugin(normalizePluginId(pluginId), status);
+    }
+
+    @Override
+    public Stream<LicenseRecord> findByOwner(String owner, LicenseStatus status) {
+        writeBehind.flush();
+        return repository.findByOwner(owner, status);
+    }
+
+    @Override
+    public Stream<LicenseRecord> findExpiringBefore(Instant until) {
+        writeBehind.flush();
+        return repository.findExpiringBefore(until);
+    }
+
+    @Override
+    public CompletableFuture<LicenseRecord> issueLicenseAsync(String pluginId, String owner, int validDays) {
+        long startedAt = System.nanoTime();
+        return issueLicenseLater(pluginId, owner, validDays)
+                .whenComplete((record, error) -> issueAsyncLatency.recordSince(startedAt));
+    }
+
+    private CompletableFuture<LicenseRecord> issueLicenseLater(String pluginId, String owner, int validDays) {
+        String normalizedPluginId = normalizePluginId(pluginId);
+        CompletableFuture<LicenseRecord> local = CompletableFuture.supplyAsync(
+                () -> issueLocal(normalizedPluginId, owner, validDays), executor);
+
+        if (!usesPanel()) {
+            return local;
+        }
+        return local.thenCompose(localRecord -> panelClient.issueAsync(normalizedPluginId, owner, validDays)
+                .thenApplyAsync(panelRecord -> resolveIssued(localRecord, panelRecord), executor));
+    }
+
+    @Override
+    public CompletableFuture<List<LicenseIssueResult>> issueLicensesAsync(String pluginId, List<String> owners, int validDays) {
+        long startedAt = System.nanoTime();
+        return issueLicensesLater(pluginId, owners, validDays)
+                .whenComplete((results, error) -> issueBatchAsyncLatency.recordSince(startedAt));
+    }
+
+    // Keys are signed in parallel chunks and stored with one insertAll, which JDBC runs as a single
+    // batched transaction. The panel then gets one batch request for the owners stored locally.
+    private CompletableFuture<List<LicenseIssueResult>> issueLicensesLater(String pluginId, List<String> owners, int validDays) {
+        if (owners.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        String normalizedPluginId = normalizePluginId(pluginId);
+        Instant now = Instant.now();
+        Instant expiresAt = validDays <= 0 ? null : now.plus(validDays, ChronoUnit.DAYS);
+        List<CompletableFuture<List<LicenseRecord>>> chunks = new ArrayList<>();
+        for (int start = 0; start < owners.size(); start += SIGN_CHUNK_SIZE) {
+            List<String> chunk = owners.subList(start, Math.min(owners.size(), start + SIGN_CHUNK_SIZE));
+            chunks.add(CompletableFuture.supplyAsync(() -> signAll(normalizedPluginId, chunk, now, expiresAt), executor));
+        }
+
+        CompletableFuture<List<LicenseIssueResult>> local = CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new))
+                .thenApplyAsync(ignored -> {
+                    List<LicenseRecord> records = new ArrayList<>(owners.size());
+                    chunks.forEach(chunk -> records.addAll(chunk.join()));
+                    return storeIssued(owners, records);
+                }, executor);
+
+        if (!usesPanel()) {
+            return local;
+        }
+        return local.thenCompose(results -> issueOnPanel(normalizedPluginId, validDays, results));
+    }
+
+    @Override
+    public CompletableFuture<LicenseValidationResult> validateAsync(String pluginId, String key) {
+        long startedAt = System.nanoTime();
+        return validateLater(pluginId, key).whenComplete((result, error) -> {
+            if (result != null) {
+                metrics.recordResult(result);
+            }
+            validateAsyncLatency.recordSince(startedAt);
+        });
+    }
+
+    private CompletableFuture<LicenseValidationResult> validateLater(String pluginId, String key) {
         String normalizedPluginId = normalizePluginId(pluginId);
 
         if (!signer.verify(normalizedPluginId, key)) {
-            return LicenseValidationResult.SIGNATURE_INVALID;
+            return CompletableFuture.completedFuture(LicenseValidationResult.SIGNATURE_INVALID);
         }
 
-        if (mode == LicenseMode.LOCAL || panelClient == null) {
-            return validateLocal(normalizedPluginId, key);
+        Optional<LicenseValidationResult> cached = validationCache.get(normalizedPluginId, key);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
         }
 
-        RemoteValidationResponse remote = panelClient.validate(normalizedPluginId, key);
+        long generation = validationCache.generation(key);
+        CompletableFuture<Validation> result = usesPanel() && !usesStaleWhileRevalidate()
+                ? panelClient.validateAsync(normalizedPluginId, key)
+                        .thenApplyAsync(remote -> resolveValidation(normalizedPluginId, key, remote), executor)
+                : CompletableFuture.supplyAsync(() -> validateUncached(normalizedPluginId, key), executor);
+        return result.thenApply(value -> remember(normalizedPluginId, key, generation, value));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> revokeAsync(String key) {
+        long startedAt = System.nanoTime();
+        return revokeLater(key).whenComplete((revoked, error) -> revokeAsyncLatency.recordSince(startedAt));
+    }
+
+    private CompletableFuture<Boolean> revokeLater(String key) {
+        validationCache.invalidate(key);
+        CompletableFuture<Boolean> local = CompletableFuture.supplyAsync(() -> revokeLocal(key), executor);
+
+        CompletableFuture<Boolean> result = usesPanel()
+                ? local.thenCombine(panelClient.revokeAsync(key), this::resolveRevoke)
+                : local;
+        return result.whenComplete((revoked, error) -> validationCache.invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Optional<LicenseRecord>> getAsync(String key) {
+        long startedAt = System.nanoTime();
+        return getLater(key).whenComplete((record, error) -> getAsyncLatency.recordSince(startedAt));
+    }
+
+    private CompletableFuture<Optional<LicenseRecord>> getLater(String key) {
+        if (!usesPanel()) {
+            return CompletableFuture.supplyAsync(() -> writeBehind.find(key), executor);
+        }
+        if (usesStaleWhileRevalidate()) {
+            return CompletableFuture.supplyAsync(() -> getNow(key), executor);
+        }
+        return panelClient.getAsync(key).thenApplyAsync(remote -> resolveGet(key, remote), executor);
+    }
+
+    private LicenseRecord issueLocal(String pluginId, String owner, int validDays) {
+        Instant now = Instant.now();
+        Instant expiresAt = validDays <= 0 ? null : now.plus(validDays, ChronoUnit.DAYS);
+        String key = signer.generate(pluginId);
+        LicenseRecord localRecord = new LicenseRecord(key, pluginId, owner, now, expiresAt, false);
+
+        repository.upsert(localRecord);
+        validationCache.invalidate(key);
+        expiryScheduler.track(localRecord);
+        return localRecord;
+    }
+
+    // Null owners get a null record so the list stays aligned with the input.
+    private List<LicenseRecord> signAll(String pluginId, List<String> owners, Instant now, Instant expiresAt) {
+        List<LicenseRecord> records = new ArrayList<>(owners.size());
+        for (String owner : owners) {
+            records.add(owner == null ? null : new LicenseRecord(signer.generate(pluginId), pluginId, owner, now, expiresAt, false));
+        }
+        return records;
+    }
+
+    private List<LicenseIssueResult> storeIssued(List<String> owners, List<LicenseRecord> records) {
+        List<LicenseRecord> issuable = new ArrayList<>(records.size());
+        for (LicenseRecord record : records) {
+            if (record != null) {
+                issuable.add(record);
+            }
+        }
+        boolean stored = repository.insertAll(issuable);
+
+        List<LicenseIssueResult> results = new ArrayList<>(owners.size());
+        for (int i = 0; i < owners.size(); i++) {
+            LicenseRecord record = records.get(i);
+            if (record == null) {
+                results.add(LicenseIssueResult.failed(owners.get(i), "owner is missing"));
+            } else if (!stored) {
+                results.add(LicenseIssueResult.failed(owners.get(i), "storage write failed"));
+            } else {
+                validationCache.invalidate(record.key());
+                expiryScheduler.track(record);
+                results.add(LicenseIssueResult.issued(owners.get(i), record));
+            }
+        }
+        return results;
+    }
+
+    // Like single issues, an owner the panel did not issue for keeps its local license.
+    private CompletableFuture<List<LicenseIssueResult>> issueOnPanel(String pluginId, int validDays, List<LicenseIssueResult> results) {
+        List<Integer> positions = new ArrayList<>();
+        List<String> owners = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).succeeded()) {
+                positions.add(i);
+                owners.add(results.get(i).owner());
+            }
+        }
+        if (owners.isEmpty()) {
+            return CompletableFuture.completedFuture(results);
+        }
+
+        return panelClient.issueBatchAsync(pluginId, owners, validDays).thenApplyAsync(panelRecords -> {
+            List<LicenseIssueResult> resolved = new ArrayList<>(results);
+            List<LicenseRecord> accepted = new ArrayList<>();
+            for (int i = 0; i < positions.size(); i++) {
+                Optional<LicenseRecord> panelRecord = panelRecords.get(i);
+                if (panelRecord.isEmpty()) {
+                    metrics.recordFallback(FallbackPath.ISSUE_LOCAL_ON_REMOTE_FAILURE);
+                    continue;
+                }
+                accepted.add(panelRecord.get());
+                resolved.set(positions.get(i), LicenseIssueResult.issued(owners.get(i), panelRecord.get()));
+            }
+            int[] held = keyLocks.lockAll(keysOf(accepted));
+            try {
+                List<LicenseRecord> storable = withoutUndoneRevocations(accepted);
+                repository.upsertAll(storable);
+                storable.forEach(expiryScheduler::track);
+            } finally {
+                keyLocks.unlockAll(held);
+            }
+            for (LicenseRecord record : accepted) {
+                validationCache.invalidate(record.key());
+            }
+            return resolved;
+        }, executor);
+    }
+
+    private LicenseRecord resolveIssued(LicenseRecord localRecord, Optional<LicenseRecord> panelRecord) {
+        if (panelRecord.isEmpty()) {
+            metrics.recordFallback(FallbackPath.ISSUE_LOCAL_ON_REMOTE_FAILURE);
+            return localRecord;
+        }
+        LicenseRecord record = panelRecord.get();
+        Lock lock = keyLocks.forKey(record.key());
+        lock.lock();
+        try {
+            if (!undoesRevocation(record)) {
+                repository.upsert(record);
+                expiryScheduler.track(record);
+            }
+        } finally {
+            lock.unlock();
+        }
+        validationCache.invalidate(record.key());
+        return record;
+    }
+
+    private Validation resolveValidation(String pluginId, String key, RemoteValidationResponse remote) {
         if (remote.result() == LicenseValidationResult.REMOTE_ERROR) {
-            return mode == LicenseMode.HYBRID
-                    ? validateLocal(normalizedPluginId, key)
-                    : LicenseValidationResult.REMOTE_ERROR;
+            if (mode != LicenseMode.HYBRID) {
+                return Validation.of(LicenseValidationResult.REMOTE_ERROR);
+            }
+            metrics.recordFallback(FallbackPath.VALIDATE_LOCAL_ON_REMOTE_ERROR);
+            return validateLocal(pluginId, key);
         }
 
         if (remote.record() != null) {
-            repository.upsert(remote.record());
+            acceptRemoteRecord(remote.record());
         }
-        return remote.result();
+        return Validation.of(remote.result(), remote.record());
     }
 
-    @Override
-    public synchronized boolean revoke(String key) {
-        boolean localRevoked = repository.revoke(key);
+    private Map<String, Validation> resolveBatchValidation(
+            Map<String, String> keysByPluginId,
+            Map<String, RemoteValidationResponse> remote
+    ) {
+        Map<String, Validation> results = new HashMap<>();
+        Map<String, String> fallback = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> entry : keysByPluginId.entrySet()) {
+            RemoteValidationResponse response = remote.get(entry.getKey());
+            if (response == null || response.result() == LicenseValidationResult.REMOTE_ERROR) {
+                fallback.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            if (response.record() != null) {
+                acceptRemoteRecord(response.record());
+            }
+            results.put(entry.getKey(), Validation.of(response.result(), response.record()));
+        }
 
-        if (panelClient == null || mode == LicenseMode.LOCAL) {
-            return localRevoked;
+        if (!fallback.isEmpty()) {
+            if (mode == LicenseMode.HYBRID) {
+                metrics.recordFallback(FallbackPath.VALIDATE_ALL_LOCAL_ON_REMOTE_ERROR, fallback.size());
+                results.putAll(validateLocalAll(fallback));
+            } else {
+                fallback.keySet().forEach(pluginId -> results.put(pluginId, Validation.of(LicenseValidationResult.REMOTE_ERROR)));
+            }
         }
+        return results;
+    }
 
-        boolean remoteRevoked = panelClient.revoke(key);
+    private boolean resolveRevoke(boolean localRevoked, boolean remoteRevoked) {
         if (mode == LicenseMode.REMOTE) {
             return remoteRevoked;
         }
-
+        if (!remoteRevoked && localRevoked) {
+            metrics.recordFallback(FallbackPath.REVOKE_LOCAL_ON_REMOTE_FAILURE);
+        }
         return remoteRevoked || localRevoked;
     }
 
-    @Override
-    public Optional<LicenseRecord> get(String key) {
-        if (panelClient != null && mode != LicenseMode.LOCAL) {
-            Optional<LicenseRecord> remote = panelClient.get(key);
-            if (remote.isPresent()) {
-                repository.upsert(remote.get());
-                return remote;
+    private Optional<LicenseRecord> resolveGet(String key, Optional<LicenseRecord> remote) {
+        if (remote.isPresent()) {
+            acceptRemoteRecord(remote.get());
+            return remote;
+        }
+        if (mode == LicenseMode.REMOTE) {
+            return Optional.empty();
+        }
+        metrics.recordFallback(FallbackPath.GET_LOCAL_ON_REMOTE_MISS);
+        return writeBehind.find(key);
+    }
+
+    private Validation validateUncached(String pluginId, String key) {
+        if (!usesPanel()) {
+            return validateLocal(pluginId, key);
+        }
+        Optional<LicenseRecord> local = servableLocal(key,
+                () -> panelClient.validateAsync(pluginId, key).thenApply(RemoteValidationResponse::optionalRecord));
+        return local.isPresent()
+                ? evaluateLocal(pluginId, local.get())
+                : resolveValidation(pluginId, key, panelClient.validate(pluginId, key));
+    }
+
+    // In HYBRID mode with stale-while-revalidate enabled, a locally stored record synced from the
+    // panel recently enough is served directly. Stale records are still served, but trigger one
+    // background refresh per key. A refresh that comes back without a record stops the local one
+    // from being served, so the next request asks the panel.
+    private Optional<LicenseRecord> servableLocal(
+            String key,
+            Supplier<CompletableFuture<Optional<LicenseRecord>>> refresh
+    ) {
+        if (!usesStaleWhileRevalidate()) {
+            return Optional.empty();
+        }
+
+        StaleWhileRevalidate.Freshness freshness = staleWhileRevalidate.classify(key);
+        if (freshness == StaleWhileRevalidate.Freshness.EXPIRED) {
+            return Optional.empty();
+        }
+
+        Optional<LicenseRecord> local = writeBehind.find(key);
+        if (local.isPresent()) {
+            metrics.recordFallback(freshness == StaleWhileRevalidate.Freshness.FRESH
+                    ? FallbackPath.SERVED_FRESH_LOCAL
+                    : FallbackPath.SERVED_STALE_LOCAL);
+        }
+        if (local.isPresent() && freshness == StaleWhileRevalidate.Freshness.STALE && staleWhileRevalidate.beginRefresh(key)) {
+            refresh.get()
+                    .thenAcceptAsync(record -> {
+                        if (record.isPresent()) {
+                            acceptRemoteRecord(record.get());
+                        } else {
+                            staleWhileRevalidate.forget(key);
+                        }
+                        validationCache.invalidate(key);
+                    }, executor)
+                    .whenComplete((ignored, error) -> staleWhileRevalidate.endRefresh(key));
+        }
+        return local;
+    }
+
+    private void acceptRemoteRecord(LicenseRecord record) {
+        Lock lock = keyLocks.forKey(record.key());
+        lock.lock();
+        try {
+            if (undoesRevocation(record)) {
+                return;
             }
-            if (mode == LicenseMode.REMOTE) {
-                return Optional.empty();
+            writeBehind.submit(record);
+            staleWhileRevalidate.markSynced(record.key());
+            expiryScheduler.track(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Revocation is final. A panel response read before a concurrent revoke still carries the
+    // unrevoked record, so under the key's lock it must not replace the revoked local one.
+    private boolean undoesRevocation(LicenseRecord record) {
+        if (record.revoked()) {
+            return false;
+        }
+        return writeBehind.find(record.key()).map(LicenseRecord::revoked).orElse(false);
+    }
+
+    private List<LicenseRecord> withoutUndoneRevocations(Collection<LicenseRecord> records) {
+        List<String> unrevoked = new ArrayList<>();
+        for (LicenseRecord record : records) {
+            if (!record.revoked()) {
+                unrevoked.add(record.key());
             }
         }
+        if (unrevoked.isEmpty()) {
+            return new ArrayList<>(records);
+        }
 
-        return repository.find(key);
+        Map<String, LicenseRecord> local = writeBehind.findAll(unrevoked);
+        List<LicenseRecord> storable = new ArrayList<>(records.size());
+        for (LicenseRecord record : records) {
+            LicenseRecord current = local.get(record.key());
+            if (record.revoked() || current == null || !current.revoked()) {
+                storable.add(record);
+            }
+        }
+        return storable;
     }
 
-    private LicenseValidationResult validateLocal(String pluginId, String key) {
-        Optional<LicenseRecord> record = repository.find(key);
-        if (record.isEmpty()) {
-            return LicenseValidationResult.NOT_FOUND;
+    private static List<String> keysOf(Collection<LicenseRecord> records) {
+        List<String> keys = new ArrayList<>(records.size());
+        for (LicenseRecord record : records) {
+            keys.add(record.key());
         }
+        return keys;
+    }
 
-        LicenseRecord value = record.get();
+    // Holds the key's lock for the local steps only, never across the panel call or a full flush.
+    // Submits for the key wait on the same lock, so storing the key's own buffered version first
+    // leaves no older version to land after the revoke.
+    private boolean revokeLocal(String key) {
+        Lock lock = keyLocks.forKey(key);
+        lock.lock();
+        try {
+            staleWhileRevalidate.forget(key);
+            if (!writeBehind.flush(key)) {
+                return false;
+            }
+            writeBehind.forget(key);
+            return repository.revoke(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, Validation> validateLocalAll(Map<String, String> keysByPluginId) {
+        Map<String, LicenseRecord> records = writeBehind.findAll(keysByPluginId.values());
+        Map<String, Validation> results = new HashMap<>();
+        for (Map.Entry<String, String> entry : keysByPluginId.entrySet()) {
+            results.put(entry.getKey(), evaluateLocal(entry.getKey(), records.get(entry.getValue())));
+        }
+        return results;
+    }
+
+    private Validation validateLocal(String pluginId, String key) {
+        return evaluateLocal(pluginId, writeBehind.find(key).orElse(null));
+    }
+
+    private Validation evaluateLocal(String pluginId, LicenseRecord value) {
+        if (value == null) {
+            return Validation.of(LicenseValidationResult.NOT_FOUND);
+        }
         if (!value.pluginId().equalsIgnoreCase(pluginId)) {
-            return LicenseValidationResult.WRONG_PLUGIN;
+            return Validation.of(LicenseValidationResult.WRONG_PLUGIN);
         }
         if (value.revoked()) {
-            return LicenseValidationResult.REVOKED;
+            return Validation.of(LicenseValidationResult.REVOKED);
         }
         if (value.isExpired(Instant.now())) {
-            return LicenseValidationResult.EXPIRED;
+            return Validation.of(LicenseValidationResult.EXPIRED);
         }
-        return LicenseValidationResult.VALID;
+        return Validation.of(LicenseValidationResult.VALID, value);
+    }
+
+    private LicenseValidationResult remember(String pluginId, String key, long generation, Validation validation) {
+        return validationCache.remember(pluginId, key, generation, validation.result(), validation.expiresAt());
+    }
+
+    // Returns false when the records could not be stored yet; they stay queued for the next flush.
+    public boolean applyRemoteRecords(Collection<LicenseRecord> records) {
+        for (LicenseRecord record : records) {
+            acceptRemoteRecord(record);
+            validationCache.invalidate(record.key());
+        }
+        return writeBehind.flush();
+    }
+
+    // Bulk path for snapshot imports: writes go straight to the repository so a full license set
+    // never passes through the write-behind buffers or per-key sync bookkeeping. Returns false when
+    // the records could not be stored.
+    public boolean importRecords(Collection<LicenseRecord> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+        boolean stored;
+        int[] held = keyLocks.lockAll(keysOf(records));
+        try {
+            List<LicenseRecord> storable = withoutUndoneRevocations(records);
+            stored = writeBehind.writeThrough(storable);
+            storable.forEach(expiryScheduler::track);
+        } finally {
+            keyLocks.unlockAll(held);
+        }
+        for (LicenseRecord record : records) {
+            validationCache.invalidate(record.key());
+        }
+        return stored;
+    }
+
+    // Cached VALID results for an expired license must not outlive its expiry.
+    public void expired(LicenseRecord record) {
+        validationCache.invalidate(record.key());
+    }
+
+    // Purged keys are dropped from every local layer, so they validate as NOT_FOUND afterwards.
+    // Under the keys' locks, each buffered version is stored and the record read again, and only
+    // records unchanged since the purge query found them are deleted. A renewal that landed in
+    // between is kept, and the next purge run judges it afresh.
+    public int purgeRecords(Collection<LicenseRecord> records) {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = keysOf(records);
+        List<String> purgeable = new ArrayList<>(keys.size());
+        int deleted;
+        int[] held = keyLocks.lockAll(keys);
+        try {
+            for (String key : keys) {
+                writeBehind.flush(key);
+            }
+            Map<String, LicenseRecord> current = writeBehind.findAll(keys);
+            for (LicenseRecord record : records) {
+                if (record.equals(current.get(record.key()))) {
+                    purgeable.add(record.key());
+                }
+            }
+            if (purgeable.isEmpty()) {
+                return 0;
+            }
+            for (String key : purgeable) {
+                writeBehind.forget(key);
+                staleWhileRevalidate.forget(key);
+            }
+            deleted = repository.delete(purgeable);
+        } finally {
+            keyLocks.unlockAll(held);
+        }
+        for (String key : purgeable) {
+            validationCache.invalidate(key);
+        }
+        return deleted;
+    }
+
+    public void markCaughtUp(long syncedAtNanos) {
+        staleWhileRevalidate.markAllSynced(syncedAtNanos);
+    }
+
+    public void close() {
+        writeBehind.close();
+    }
+
+    private boolean usesPanel() {
+        return panelClient != null && mode != LicenseMode.LOCAL;
+    }
+
+    private boolean usesStaleWhileRevalidate() {
+        return mode == LicenseMode.HYBRID && panelClient != null && staleWhileRevalidate.enabled();
     }
 
     private String normalizePluginId(String pluginId) {
@@ -0,0 +1,18 @@
+package com.blancocl.licensing.service;
+
+public enum PurgeMode {
+    OFF,
+    DELETE,
+    ARCHIVE;
+
+    public static PurgeMode fromConfig(String raw) {
+        if (raw == null) {
+            return OFF;
+        }
+        try {
+            return PurgeMode.valueOf(raw.trim().toUpperCase());
+        } catch (IllegalArgumentException ignored) {
+            return OFF;
+        }
+    }
+}
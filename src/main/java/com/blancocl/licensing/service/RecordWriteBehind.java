@@ -0,0 +1,224 @@
+package com.blancocl.licensing.service;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.repository.LicenseRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+public final class RecordWriteBehind {
+    private static final int MAX_TRACKED_RECORDS = 50_000;
+
+    private final Logger logger;
+    private final LicenseRepository repository;
+    private final int batchSize;
+    private final Map<String, LicenseRecord> pending = new ConcurrentHashMap<>();
+    private final Map<String, LicenseRecord> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, LicenseRecord> persisted = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LicenseRecord> eldest) {
+            return size() > MAX_TRACKED_RECORDS;
+        }
+    };
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher;
+
+    public RecordWriteBehind(Logger logger, LicenseRepository repository, int batchSize, Duration flushInterval) {
+        this.logger = logger;
+        this.repository = repository;
+        this.batchSize = Math.max(1, batchSize);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("PaperLicensing-WriteBehind").daemon().factory());
+
+        long intervalMs = Math.max(10L, flushInterval.toMillis());
+        flusher.scheduleWithFixedDelay(this::flushSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void submit(LicenseRecord record) {
+        synchronized (persisted) {
+            if (record.equals(persisted.get(record.key()))) {
+                pending.remove(record.key());
+                return;
+            }
+        }
+
+        pending.put(record.key(), record);
+        if (pending.size() >= batchSize && flushQueued.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushQueued.set(false);
+                    flushSafely();
+                });
+            } catch (RuntimeException e) {
+                flushQueued.set(false);
+            }
+        }
+    }
+
+    public Optional<LicenseRecord> find(String key) {
+        LicenseRecord record = pending.get(key);
+        if (record == null) {
+            record = inFlight.get(key);
+        }
+        return record != null ? Optional.of(record) : repository.find(key);
+    }
+
+    public Map<String, LicenseRecord> findAll(Collection<String> keys) {
+        Map<String, LicenseRecord> found = new HashMap<>();
+        List<String> remaining = new ArrayList<>();
+        for (String key : keys) {
+            LicenseRecord record = pending.get(key);
+            if (record == null) {
+                record = inFlight.get(key);
+            }
+            if (record != null) {
+                found.put(key, record);
+            } else {
+                remaining.add(key);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            found.putAll(repository.findAll(remaining));
+        }
+        return found;
+    }
+
+    public void forget(String key) {
+        synchronized (persisted) {
+            persisted.remove(key);
+        }
+    }
+
+    // Returns false when a batch could not be stored. Its records go back to pending, unless a newer
+    // version of them was submitted meanwhile, and the next flush retries them.
+    public boolean flush() {
+        synchronized (flushLock) {
+            while (!pending.isEmpty()) {
+                List<LicenseRecord> batch = drainBatch();
+                if (batch.isEmpty()) {
+                    return true;
+                }
+
+                boolean stored = false;
+                try {
+                    stored = repository.upsertAll(batch);
+                    if (stored) {
+                        synchronized (persisted) {
+                            for (LicenseRecord record : batch) {
+                                persisted.put(record.key(), record);
+                            }
+                        }
+                    }
+                } finally {
+                    for (LicenseRecord record : batch) {
+                        if (!stored) {
+                            pending.putIfAbsent(record.key(), record);
+                        }
+                        inFlight.remove(record.key(), record);
+                    }
+                }
+                if (!stored) {
+                    logger.warning("Kept " + batch.size() + " license write(s) queued after a failed write; retrying on the next flush.");
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Stores only the buffered version of one key, if there is one. A batch already being written is
+    // waited for, so no older version of the key can land after this returns.
+    public boolean flush(String key) {
+        synchronized (flushLock) {
+            LicenseRecord record = pending.remove(key);
+            if (record == null) {
+                return true;
+            }
+
+            boolean stored = false;
+            try {
+                stored = repository.upsertAll(List.of(record));
+                if (stored) {
+                    synchronized (persisted) {
+                        persisted.put(key, record);
+                    }
+                }
+            } finally {
+                if (!stored) {
+                    pending.putIfAbsent(key, record);
+                }
+            }
+            if (!stored) {
+                logger.warning("Kept the license write for " + key + " queued after a failed write; retrying on the next flush.");
+            }
+            return stored;
+        }
+    }
+
+    // Writes records straight to the repository without buffering them. The write cannot interleave
+    // with a flush, and the persisted versions of these keys are dropped, so a later submit of an
+    // older version is not mistaken for one already stored.
+    public boolean writeThrough(Collection<LicenseRecord> records) {
+        synchronized (flushLock) {
+            boolean stored = repository.upsertAll(records);
+            synchronized (persisted) {
+                for (LicenseRecord record : records) {
+                    persisted.remove(record.key());
+                }
+            }
+            return stored;
+        }
+    }
+
+    public void close() {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for the license write-behind flusher to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!flush()) {
+            logger.severe(pending.size() + " license write(s) could not be persisted before shutdown.");
+        }
+    }
+
+    private List<LicenseRecord> drainBatch() {
+        List<LicenseRecord> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        for (Map.Entry<String, LicenseRecord> entry : pending.entrySet()) {
+            if (batch.size() >= batchSize) {
+                break;
+            }
+            LicenseRecord record = entry.getValue();
+            inFlight.put(entry.getKey(), record);
+            if (pending.remove(entry.getKey(), record)) {
+                batch.add(record);
+            } else {
+                inFlight.remove(entry.getKey(), record);
+            }
+        }
+        return batch;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.severe("Failed to flush pending license writes: " + e.getMessage());
+        }
+    }
+}
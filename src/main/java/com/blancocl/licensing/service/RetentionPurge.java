@@ -0,0 +1,159 @@
+package com.blancocl.licensing.service;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.repository.LicenseRepository;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Removes licenses that expired, or were revoked, more than `retention` ago. Each pass works in
+// batches with a pause in between so storage is never locked up for long. In ARCHIVE mode a batch
+// is appended to a JSON-lines file and synced before it is deleted, so a crash can only archive a
+// record twice, never lose it.
+public final class RetentionPurge {
+    private static final long BATCH_PAUSE_MS = 100L;
+    private static final Duration INITIAL_DELAY = Duration.ofMinutes(1);
+
+    private final Logger logger;
+    private final LicenseRepository repository;
+    private final HybridLicenseService licenseService;
+    private final PurgeMode mode;
+    private final File archiveFile;
+    private final Duration retention;
+    private final Duration interval;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    public RetentionPurge(
+            Logger logger,
+            LicenseRepository repository,
+            HybridLicenseService licenseService,
+            PurgeMode mode,
+            File archiveFile,
+            Duration retention,
+            Duration interval,
+            int batchSize
+    ) {
+        this.logger = logger;
+        this.repository = repository;
+        this.licenseService = licenseService;
+        this.mode = mode;
+        this.archiveFile = archiveFile;
+        this.retention = retention;
+        this.interval = interval;
+        this.batchSize = Math.max(1, batchSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("PaperLicensing-Purge").daemon().factory());
+    }
+
+    public void start() {
+        if (mode == PurgeMode.OFF || scheduler.isShutdown()) {
+            return;
+        }
+        long intervalMs = Math.max(60_000L, interval.toMillis());
+        try {
+            scheduler.scheduleWithFixedDelay(this::purgeSafely, INITIAL_DELAY.toMillis(), intervalMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // Closed concurrently while starting.
+        }
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for the license purge to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void purgeSafely() {
+        try {
+            purge();
+        } catch (RuntimeException e) {
+            logger.warning("License purge failed: " + e.getMessage());
+        }
+    }
+
+    private void purge() {
+        long startedAt = System.nanoTime();
+        Instant cutoff = Instant.now().minus(retention);
+        int purged = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<LicenseRecord> batch = repository.findPurgeable(cutoff, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            if (mode == PurgeMode.ARCHIVE && !archive(batch)) {
+                break;
+            }
+
+            int deleted = licenseService.purgeRecords(batch);
+            purged += deleted;
+            // A batch that deletes nothing would come back unchanged on the next query.
+            if (deleted == 0 || batch.size() < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(BATCH_PAUSE_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (purged > 0) {
+            logger.info((mode == PurgeMode.ARCHIVE ? "Archived and purged " : "Purged ") + purged
+                    + " licenses that lapsed before " + cutoff + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms.");
+        }
+    }
+
+    private boolean archive(List<LicenseRecord> batch) {
+        String archivedAt = Instant.now().toString();
+        StringBuilder lines = new StringBuilder();
+        for (LicenseRecord record : batch) {
+            JsonObject line = new JsonObject();
+            line.addProperty("key", record.key());
+            line.addProperty("pluginId", record.pluginId());
+            line.addProperty("owner", record.owner());
+            line.addProperty("issuedAt", record.issuedAt().toString());
+            line.addProperty("expiresAt", record.expiresAt() == null ? null : record.expiresAt().toString());
+            line.addProperty("revoked", record.revoked());
+            line.addProperty("archivedAt", archivedAt);
+            lines.append(line).append('\n');
+        }
+
+        File parent = archiveFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            logger.severe("Could not create license archive folder " + parent + "; purge skipped.");
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(archiveFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+            return true;
+        } catch (IOException e) {
+            logger.severe("Failed to archive purged licenses; purge skipped: " + e.getMessage());
+            return false;
+        }
+    }
+}
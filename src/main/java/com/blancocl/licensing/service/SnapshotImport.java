@@ -0,0 +1,220 @@
+package com.blancocl.licensing.service;
+
+import com.blancocl.licensing.model.LicenseRecord;
+import com.blancocl.licensing.remote.PanelLicenseClient;
+import com.blancocl.licensing.remote.SnapshotPage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public final class SnapshotImport {
+    private static final int MAX_ATTEMPTS_PER_PAGE = 5;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Logger logger;
+    private final PanelLicenseClient panelClient;
+    private final HybridLicenseService licenseService;
+    private final File cursorFile;
+    private final File doneFile;
+    private final File changeCursorFile;
+    private final int pageSize;
+    private final int batchSize;
+    private volatile boolean cancelled;
+    private Thread worker;
+
+    private long importStartedAt;
+    private long lastProgressAt;
+    private long imported;
+    private long pageImported;
+    private boolean pageFailed;
+
+    public SnapshotImport(
+            Logger logger,
+            PanelLicenseClient panelClient,
+            HybridLicenseService licenseService,
+            File dataFolder,
+            String changeCursorFileName,
+            int pageSize,
+            int batchSize
+    ) {
+        this.logger = logger;
+        this.panelClient = panelClient;
+        this.licenseService = licenseService;
+        this.cursorFile = new File(dataFolder, "snapshot.cursor");
+        this.doneFile = new File(dataFolder, "snapshot.done");
+        this.changeCursorFile = new File(dataFolder, changeCursorFileName);
+        this.pageSize = Math.max(1, pageSize);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public boolean completed() {
+        return doneFile.exists();
+    }
+
+    public synchronized void start(Runnable onFinished) {
+        if (worker != null) {
+            return;
+        }
+        worker = Thread.ofPlatform().name("PaperLicensing-SnapshotImport").daemon().start(() -> {
+            try {
+                run();
+            } catch (RuntimeException e) {
+                logger.warning("License snapshot import failed: " + e.getMessage());
+            }
+            if (!cancelled) {
+                onFinished.run();
+            }
+        });
+    }
+
+    public void close() {
+        cancelled = true;
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+        }
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            if (thread.isAlive()) {
+                logger.warning("Timed out waiting for the license snapshot import to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        cursorFile.getParentFile().mkdirs();
+        String cursor = readFile(cursorFile);
+        boolean resumed = cursor != null;
+        importStartedAt = System.nanoTime();
+        lastProgressAt = importStartedAt;
+        logger.info(resumed ? "Resuming license snapshot import." : "Starting license snapshot import.");
+
+        boolean firstPage = true;
+        while (!cancelled) {
+            Optional<SnapshotPage> result = fetchWithRetry(cursor);
+            if (result.isEmpty()) {
+                if (!cancelled) {
+                    logger.warning("License snapshot import stopped after " + imported
+                            + " records; it resumes on the next start.");
+                }
+                return;
+            }
+
+            SnapshotPage page = result.get();
+            // The change cursor marks where the feed stood when the snapshot began, so only a
+            // fresh import may move it; a resumed import keeps the one stored with its first page.
+            if (firstPage && !resumed && page.changeCursor() != null) {
+                writeFile(changeCursorFile, page.changeCursor());
+            }
+            firstPage = false;
+
+            if (!page.hasMore()) {
+                break;
+            }
+            if (page.cursor() == null || page.cursor().equals(cursor)) {
+                logger.warning("Panel snapshot returned hasMore without advancing the cursor; stopping import.");
+                return;
+            }
+            cursor = page.cursor();
+            writeFile(cursorFile, cursor);
+        }
+        if (cancelled) {
+            return;
+        }
+
+        licenseService.markCaughtUp(importStartedAt);
+        writeFile(doneFile, String.valueOf(System.currentTimeMillis()));
+        try {
+            Files.deleteIfExists(cursorFile.toPath());
+        } catch (IOException e) {
+            logger.warning("Failed to delete " + cursorFile.getName() + ": " + e.getMessage());
+        }
+        logger.info("License snapshot import finished: " + imported + " records, " + throughput(System.nanoTime()) + " records/s.");
+    }
+
+    // A page counts as fetched only once every one of its batches is stored, so neither the cursor
+    // nor snapshot.done can move past records that never reached storage.
+    private Optional<SnapshotPage> fetchWithRetry(String cursor) {
+        long backoffMs = 1000L;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS_PER_PAGE && !cancelled; attempt++) {
+            pageImported = 0;
+            pageFailed = false;
+            Optional<SnapshotPage> page = panelClient.fetchSnapshot(cursor, pageSize, batchSize, this::importBatch);
+            if (page.isPresent() && !pageFailed) {
+                imported += pageImported;
+                return page;
+            }
+            if (pageFailed) {
+                logger.warning("Failed to store part of a license snapshot page; fetching it again.");
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            }
+            backoffMs = Math.min(30000L, backoffMs * 2);
+        }
+        return Optional.empty();
+    }
+
+    // Runs on the thread reading the response body, one bounded batch at a time. Once a batch fails,
+    // the rest of the page is skipped; the whole page is fetched again.
+    private void importBatch(List<LicenseRecord> batch) {
+        if (cancelled || pageFailed) {
+            return;
+        }
+        if (!licenseService.importRecords(batch)) {
+            pageFailed = true;
+            return;
+        }
+        pageImported += batch.size();
+
+        long now = System.nanoTime();
+        if (now - lastProgressAt >= PROGRESS_INTERVAL_NANOS) {
+            lastProgressAt = now;
+            logger.info("License snapshot import: " + (imported + pageImported) + " records, " + throughput(now) + " records/s.");
+        }
+    }
+
+    private long throughput(long now) {
+        long elapsedMs = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(now - importStartedAt));
+        return (imported + pageImported) * 1000L / elapsedMs;
+    }
+
+    private String readFile(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String value = Files.readString(file.toPath(), StandardCharsets.UTF_8).trim();
+            return value.isEmpty() ? null : value;
+        } catch (IOException e) {
+            logger.warning("Failed to read " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeFile(File file, String value) {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            Files.writeString(tempFile.toPath(), value, StandardCharsets.UTF_8);
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Failed to persist " + file.getName() + ": " + e.getMessage());
+        }
+    }
+}
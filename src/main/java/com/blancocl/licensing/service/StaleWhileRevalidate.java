@@ -0,0 +1,130 @@
+package com.blancocl.licensing.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class StaleWhileRevalidate {
+    public enum Freshness {
+        FRESH,
+        STALE,
+        EXPIRED
+    }
+
+    private static final int MAX_TRACKED_KEYS = 100_000;
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // A key either synced at atNanos, or was forgotten at atNanos and must not be served until it
+    // syncs again or a later catch-up vouches for it.
+    private record Sync(long atNanos, boolean synced) {
+    }
+
+    private final long freshNanos;
+    private final long maxStaleNanos;
+    private final Map<String, Sync> syncs = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+    private volatile long allSyncedAtNanos;
+    private volatile boolean allSynced;
+    private volatile long trustedAfterNanos = System.nanoTime();
+    private volatile long lastPrunedNanos = trustedAfterNanos - PRUNE_INTERVAL_NANOS;
+
+    public StaleWhileRevalidate(Duration freshFor, Duration maxStale) {
+        this.freshNanos = Math.max(0L, freshFor.toNanos());
+        this.maxStaleNanos = Math.max(freshNanos, maxStale.toNanos());
+    }
+
+    public static StaleWhileRevalidate disabled() {
+        return new StaleWhileRevalidate(Duration.ZERO, Duration.ZERO);
+    }
+
+    public boolean enabled() {
+        return freshNanos > 0;
+    }
+
+    public Freshness classify(String key) {
+        Sync sync = syncs.get(key);
+        long syncedAt;
+        if (allSynced && (sync == null || allSyncedAtNanos - sync.atNanos() > 0)) {
+            syncedAt = allSyncedAtNanos;
+        } else if (sync != null && sync.synced()) {
+            syncedAt = sync.atNanos();
+        } else {
+            return Freshness.EXPIRED;
+        }
+        long age = System.nanoTime() - syncedAt;
+        if (age <= freshNanos) {
+            return Freshness.FRESH;
+        }
+        return age <= maxStaleNanos ? Freshness.STALE : Freshness.EXPIRED;
+    }
+
+    // Once the map is full, new keys are simply not tracked and go to the panel as before.
+    public void markSynced(String key) {
+        if (enabled() && (syncs.containsKey(key) || hasRoom())) {
+            syncs.put(key, new Sync(System.nanoTime(), true));
+        }
+    }
+
+    // Called when a change feed has delivered every change up to syncedAtNanos, which vouches for
+    // all locally stored records at once.
+    public void markAllSynced(long syncedAtNanos) {
+        if (enabled() && syncedAtNanos - trustedAfterNanos > 0) {
+            allSyncedAtNanos = syncedAtNanos;
+            allSynced = true;
+        }
+    }
+
+    // A forgotten key must not be served on the strength of an earlier catch-up, so it is recorded
+    // rather than removed. If there is no room for that, every key is distrusted until the next
+    // catch-up that starts afterwards.
+    public void forget(String key) {
+        if (!enabled()) {
+            return;
+        }
+        if (syncs.containsKey(key) || hasRoom()) {
+            syncs.put(key, new Sync(System.nanoTime(), false));
+            return;
+        }
+        trustedAfterNanos = System.nanoTime();
+        allSynced = false;
+        syncs.clear();
+    }
+
+    public boolean beginRefresh(String key) {
+        return refreshing.add(key);
+    }
+
+    public void endRefresh(String key) {
+        refreshing.remove(key);
+    }
+
+    private boolean hasRoom() {
+        if (syncs.size() < MAX_TRACKED_KEYS) {
+            return true;
+        }
+        // A full map of entries that are all still needed would otherwise be rescanned per call.
+        long now = System.nanoTime();
+        if (now - lastPrunedNanos > PRUNE_INTERVAL_NANOS && pruning.compareAndSet(false, true)) {
+            try {
+                prune(now);
+                lastPrunedNanos = now;
+            } finally {
+                pruning.set(false);
+            }
+        }
+        return syncs.size() < MAX_TRACKED_KEYS;
+    }
+
+    // Drops entries that no longer change how their key classifies: syncs too old to serve, and
+    // anything older than the last catch-up.
+    private void prune(long now) {
+        boolean caughtUp = allSynced;
+        long caughtUpAt = allSyncedAtNanos;
+        syncs.values().removeIf(sync -> (caughtUp && caughtUpAt - sync.atNanos() > 0)
+                || (sync.synced() && now - sync.atNanos() > maxStaleNanos));
+    }
+}
@@ -3,7 +3,8 @@ package com.blancocl.licensing.service;
 public enum StorageType {
     YAML,
     SQLITE,
-    MYSQL;
+    MYSQL,
+    MMAP;
 
     public static StorageType fromConfig(String raw) {
         if (raw == null) {
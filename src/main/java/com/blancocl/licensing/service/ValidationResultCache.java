@@ -0,0 +1,161 @@
+package com.blancocl.licensing.service;
+
+import com.blancocl.licensing.api.LicenseValidationResult;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Lookups read a concurrent map without locking. The LRU order lives in a separate access-ordered
+// map that holds the same entries and is only touched under the policy lock. Like RecordCache, a
+// hit that finds the lock taken skips its reordering instead of waiting, so the eviction order
+// only samples accesses under contention and validations never queue behind each other.
+public final class ValidationResultCache {
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final int maxEntries;
+    private final long validTtlNanos;
+    private final long terminalTtlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Entry> order;
+    private final ReentrantLock policy = new ReentrantLock();
+    // Bumped by invalidate. A validation takes its key's generation before it starts and is only
+    // remembered if nothing invalidated the key meanwhile, so a validation that raced a revoke
+    // cannot cache VALID after the revoke's invalidation.
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public ValidationResultCache(int maxEntries, Duration validTtl, Duration terminalTtl) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.validTtlNanos = validTtl.toNanos();
+        this.terminalTtlNanos = terminalTtl.toNanos();
+        this.order = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= ValidationResultCache.this.maxEntries) {
+                    return false;
+                }
+                entries.remove(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public static ValidationResultCache disabled() {
+        return new ValidationResultCache(0, Duration.ZERO, Duration.ZERO);
+    }
+
+    public Optional<LicenseValidationResult> get(String pluginId, String key) {
+        if (maxEntries == 0) {
+            return Optional.empty();
+        }
+
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.pluginId().equals(pluginId)) {
+            return Optional.empty();
+        }
+        if (System.nanoTime() - entry.expiresAtNanos() >= 0) {
+            policy.lock();
+            try {
+                if (entries.remove(key, entry)) {
+                    order.remove(key);
+                }
+            } finally {
+                policy.unlock();
+            }
+            return Optional.empty();
+        }
+        if (policy.tryLock()) {
+            try {
+                order.get(key);
+            } finally {
+                policy.unlock();
+            }
+        }
+        return Optional.of(entry.result());
+    }
+
+    // Taken before the validation whose result is passed to remember.
+    public long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    // A VALID result is kept no longer than the license's expiresAt, when it has one.
+    public LicenseValidationResult remember(
+            String pluginId,
+            String key,
+            long generation,
+            LicenseValidationResult result,
+            Instant expiresAt
+    ) {
+        long ttl = ttlFor(result);
+        if (result == LicenseValidationResult.VALID && expiresAt != null) {
+            long untilExpiry = Duration.between(Instant.now(), expiresAt).toNanos();
+            ttl = Math.min(ttl, untilExpiry);
+        }
+        if (maxEntries == 0 || ttl <= 0) {
+            return result;
+        }
+
+        Entry entry = new Entry(pluginId, result, System.nanoTime() + ttl);
+        policy.lock();
+        try {
+            if (generations.get(stripe(key)) == generation) {
+                entries.put(key, entry);
+                order.put(key, entry);
+            }
+        } finally {
+            policy.unlock();
+        }
+        return result;
+    }
+
+    public void invalidate(String key) {
+        if (key == null) {
+            return;
+        }
+        policy.lock();
+        try {
+            generations.incrementAndGet(stripe(key));
+            entries.remove(key);
+            order.remove(key);
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    public void clear() {
+        policy.lock();
+        try {
+            for (int i = 0; i < GENERATION_STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            entries.clear();
+            order.clear();
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    private long ttlFor(LicenseValidationResult result) {
+        return switch (result) {
+            case VALID -> validTtlNanos;
+            case REVOKED, EXPIRED, WRONG_PLUGIN, NOT_FOUND -> terminalTtlNanos;
+            case SIGNATURE_INVALID, REMOTE_ERROR -> 0L;
+        };
+    }
+
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    // One entry per key: a key belongs to a single plugin, so a lookup for another plugin id is a miss
+    // rather than a second entry, which keeps invalidation by key O(1).
+    private record Entry(String pluginId, LicenseValidationResult result, long expiresAtNanos) {
+    }
+}